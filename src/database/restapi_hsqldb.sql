@@ -0,0 +1,12 @@
+CREATE TABLE ofRestApiKey (
+  keyPrefix     VARCHAR(32)     NOT NULL,
+  keyHash       CHAR(64)        NOT NULL,
+  name          VARCHAR(255),
+  scopes        VARCHAR(1024)   NOT NULL,
+  creationDate  BIGINT          NOT NULL,
+  expiryDate    BIGINT,
+  lastUsedDate  BIGINT,
+  CONSTRAINT ofRestApiKey_pk PRIMARY KEY (keyPrefix)
+);
+
+INSERT INTO ofVersion (name, version) VALUES ('restapi', 1);
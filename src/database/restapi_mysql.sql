@@ -0,0 +1,12 @@
+CREATE TABLE ofRestApiKey (
+  keyPrefix     VARCHAR(32)     NOT NULL,
+  keyHash       CHAR(64)        NOT NULL,
+  name          VARCHAR(255)    NULL,
+  scopes        VARCHAR(1024)   NOT NULL,
+  creationDate  BIGINT          NOT NULL,
+  expiryDate    BIGINT          NULL,
+  lastUsedDate  BIGINT          NULL,
+  PRIMARY KEY (keyPrefix)
+);
+
+INSERT INTO ofVersion (name, version) VALUES ('restapi', 1);
@@ -0,0 +1,12 @@
+CREATE TABLE ofRestApiKey (
+  keyPrefix     VARCHAR2(32)    NOT NULL,
+  keyHash       CHAR(64)        NOT NULL,
+  name          VARCHAR2(255),
+  scopes        VARCHAR2(1024)  NOT NULL,
+  creationDate  NUMBER(19)      NOT NULL,
+  expiryDate    NUMBER(19),
+  lastUsedDate  NUMBER(19),
+  CONSTRAINT ofRestApiKey_pk PRIMARY KEY (keyPrefix)
+);
+
+INSERT INTO ofVersion (name, version) VALUES ('restapi', 1);
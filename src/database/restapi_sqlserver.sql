@@ -0,0 +1,12 @@
+CREATE TABLE ofRestApiKey (
+  keyPrefix     NVARCHAR(32)    NOT NULL,
+  keyHash       NCHAR(64)       NOT NULL,
+  name          NVARCHAR(255)   NULL,
+  scopes        NVARCHAR(1024)  NOT NULL,
+  creationDate  BIGINT          NOT NULL,
+  expiryDate    BIGINT          NULL,
+  lastUsedDate  BIGINT          NULL,
+  CONSTRAINT ofRestApiKey_pk PRIMARY KEY (keyPrefix)
+);
+
+INSERT INTO ofVersion (name, version) VALUES ('restapi', 1);
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jivesoftware.openfire.plugin.rest;
+
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.jivesoftware.openfire.XMPPServer;
+import org.jivesoftware.util.NamedThreadFactory;
+import org.jivesoftware.util.SystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Priority;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.Context;
+import java.io.IOException;
+import java.security.Principal;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes a line to the access log for every request: its method, route, path, status, latency and caller.
+ *
+ * Requests only capture what is needed to write the line. Formatting and writing happen on a background thread, which
+ * drains a bounded queue. When the queue is full, lines are dropped rather than slowing down requests, and the amount
+ * of dropped lines is logged.
+ *
+ * Lines are written to a dedicated logger, {@value #ACCESS_LOGGER_NAME}, which can be routed to its own appender in
+ * the logging configuration of Openfire.
+ */
+@PreMatching
+@Priority(Priorities.AUTHENTICATION - 200)
+public class AccessLogFilter implements ContainerRequestFilter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AccessLogFilter.class);
+
+    public static final String ACCESS_LOGGER_NAME = "org.jivesoftware.openfire.plugin.rest.access";
+
+    private static final Logger ACCESS_LOG = LoggerFactory.getLogger(ACCESS_LOGGER_NAME);
+
+    public static final SystemProperty<Boolean> ENABLED = SystemProperty.Builder.ofType(Boolean.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.accesslog.enabled")
+        .setDefaultValue(false)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Integer> QUEUE_SIZE = SystemProperty.Builder.ofType(Integer.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.accesslog.queue-size")
+        .setDefaultValue(10000)
+        .setMinValue(100)
+        .setDynamic(false)
+        .build();
+
+    /** The name of the request property that holds the access log entry of a request. */
+    private static final String ENTRY_PROPERTY = AccessLogFilter.class.getName() + ".entry";
+
+    private static final LongAdder dropped = new LongAdder();
+
+    private static volatile BlockingQueue<Entry> queue;
+
+    private static ExecutorService writer;
+
+    /** The http request. */
+    @Context
+    private HttpServletRequest httpRequest;
+
+    /** The plugin. */
+    private RESTServicePlugin plugin = (RESTServicePlugin) XMPPServer.getInstance().getPluginManager()
+            .getPlugin("restapi");
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        if (!ENABLED.getValue() || !ACCESS_LOG.isInfoEnabled()) {
+            return;
+        }
+        requestContext.setProperty(ENTRY_PROPERTY, new Entry(
+            requestContext.getMethod(),
+            requestContext.getUriInfo().getRequestUri().getRawPath(),
+            plugin.getClientAddress(httpRequest),
+            getBasicUsername(requestContext.getHeaderString("authorization"))));
+    }
+
+    /**
+     * Returns the username that was provided for HTTP Basic authentication. Only the username is retained: the header
+     * itself holds credentials, which must not be kept around until the line is written.
+     *
+     * @param authorization the value of the Authorization header (can be null)
+     * @return the username, or null when the request does not use HTTP Basic authentication
+     */
+    private static String getBasicUsername(String authorization) {
+        if (authorization != null && authorization.regionMatches(true, 0, "basic ", 0, 6)) {
+            final String[] usernameAndPassword = BasicAuth.decode(authorization);
+            if (usernameAndPassword != null && usernameAndPassword.length == 2) {
+                return usernameAndPassword[0];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stops writing to the access log. Lines that have not been written yet are discarded.
+     */
+    public static synchronized void shutdown() {
+        if (writer != null) {
+            writer.shutdownNow();
+            writer = null;
+            queue = null;
+        }
+    }
+
+    private static void enqueue(Entry entry) {
+        BlockingQueue<Entry> entries = queue;
+        if (entries == null) {
+            entries = start();
+        }
+        if (!entries.offer(entry)) {
+            dropped.increment();
+        }
+    }
+
+    private static synchronized BlockingQueue<Entry> start() {
+        if (writer == null) {
+            final BlockingQueue<Entry> entries = new ArrayBlockingQueue<>(QUEUE_SIZE.getValue());
+            writer = Executors.newSingleThreadExecutor(new NamedThreadFactory("restapi-access-log-", true, null, null, null));
+            writer.execute(() -> write(entries));
+            queue = entries;
+        }
+        return queue;
+    }
+
+    private static void write(BlockingQueue<Entry> entries) {
+        final StringBuilder line = new StringBuilder(128);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final Entry entry = entries.take();
+                line.setLength(0);
+                entry.appendTo(line);
+                ACCESS_LOG.info(line.toString());
+
+                final long count = entries.isEmpty() ? dropped.sumThenReset() : 0;
+                if (count > 0) {
+                    LOG.warn("Dropped {} access log entries, as they were produced faster than they could be written.", count);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Completes the access log entry of a request when it has finished, which includes writing the response body.
+     * Unlike a response filter, this is also invoked for requests that fail with an exception that is not mapped to a
+     * response.
+     */
+    public static class Listener implements ApplicationEventListener {
+
+        @Override
+        public void onEvent(ApplicationEvent event) {
+        }
+
+        @Override
+        public RequestEventListener onRequest(RequestEvent requestEvent) {
+            return event -> {
+                if (event.getType() != RequestEvent.Type.FINISHED) {
+                    return;
+                }
+                final ContainerRequest request = event.getContainerRequest();
+                final Object entry = request.getProperty(ENTRY_PROPERTY);
+                if (entry == null) {
+                    return;
+                }
+                request.removeProperty(ENTRY_PROPERTY);
+
+                final Entry finished = (Entry) entry;
+                final ContainerResponse response = event.getContainerResponse();
+                finished.finish(
+                    RouteClassifier.getRoute(request).getGroup(),
+                    response == null ? 500 : response.getStatus(),
+                    request.getSecurityContext() == null ? null : request.getSecurityContext().getUserPrincipal());
+                enqueue(finished);
+            };
+        }
+    }
+
+    /**
+     * What is known about a request, captured while it is processed so that it can be formatted later.
+     */
+    private static final class Entry {
+        private final long startTime = System.nanoTime();
+        private final String method;
+        private final String path;
+        private final String client;
+        private final String basicUsername;
+        private String route;
+        private int status;
+        private long latency;
+        private String principal;
+
+        private Entry(String method, String path, String client, String basicUsername) {
+            this.method = method;
+            this.path = path;
+            this.client = client;
+            this.basicUsername = basicUsername;
+        }
+
+        private void finish(String route, int status, Principal principal) {
+            this.latency = System.nanoTime() - startTime;
+            this.route = route;
+            this.status = status;
+            this.principal = principal == null ? null : principal.getName();
+        }
+
+        /**
+         * Returns the name of the authenticated caller, or for HTTP Basic authentication the name that was provided
+         * (which is also logged when authentication failed).
+         */
+        private String getCaller() {
+            if (principal != null) {
+                return principal;
+            }
+            return basicUsername != null ? basicUsername : "-";
+        }
+
+        private void appendTo(StringBuilder line) {
+            line.append("method=").append(method)
+                .append(" route=").append(route)
+                .append(" path=").append(path)
+                .append(" status=").append(status)
+                .append(" latency_ms=").append(TimeUnit.NANOSECONDS.toMillis(latency))
+                .append(" caller=");
+            appendSanitized(line, getCaller());
+            line.append(" client=");
+            appendSanitized(line, client);
+        }
+
+        /**
+         * Appends a value that is provided by the client, replacing whitespace and control characters so that it
+         * cannot be mistaken for other fields or lines.
+         */
+        private static void appendSanitized(StringBuilder line, String value) {
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                line.append(c <= ' ' || c == 0x7f ? '_' : c);
+            }
+        }
+    }
+}
@@ -25,6 +25,7 @@ import javax.ws.rs.container.ContainerRequestFilter;
 import javax.ws.rs.container.PreMatching;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.SecurityContext;
 
 import org.jivesoftware.openfire.XMPPServer;
 import org.jivesoftware.openfire.admin.AdminManager;
@@ -32,10 +33,12 @@ import org.jivesoftware.openfire.auth.AuthFactory;
 import org.jivesoftware.openfire.auth.ConnectionException;
 import org.jivesoftware.openfire.auth.InternalUnauthenticatedException;
 import org.jivesoftware.openfire.auth.UnauthorizedException;
+import org.jivesoftware.openfire.plugin.rest.controller.ApiKeyController;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.security.Principal;
 
 /**
  * The Class AuthFilter.
@@ -57,13 +60,9 @@ public class AuthFilter implements ContainerRequestFilter {
 
     @Override
     public void filter(ContainerRequestContext containerRequest) throws IOException {
-        if (containerRequest.getUriInfo().getRequestUri().getPath().equals("/plugins/restapi/v1/openapi.yaml")) {
-            LOG.debug("Authentication was bypassed for openapi.yaml file (documentation)");
-            return;
-        }
-
-        if (isStatusEndpoint(containerRequest.getUriInfo().getRequestUri().getPath())) {
-            LOG.debug("Authentication was bypassed for a status endpoint");
+        final RouteClassifier.Route route = RouteClassifier.getRoute(containerRequest);
+        if (route.getAccess() == RouteClassifier.Access.PUBLIC) {
+            LOG.debug("Authentication was bypassed for a public endpoint: {}", route);
             return;
         }
 
@@ -79,27 +78,14 @@ public class AuthFilter implements ContainerRequestFilter {
         }
         
         // To be backwards compatible to userservice 1.*
-        if (containerRequest.getUriInfo().getRequestUri().getPath().contains("restapi/v1/userservice")) {
+        if (route.getAccess() == RouteClassifier.Access.LEGACY) {
             LOG.info("Deprecated 'userservice' endpoint was used. Please switch to the new endpoints");
             return;
         }
 
-        if (!plugin.getAllowedIPs().isEmpty()) {
-            // Get client's IP address
-            String ipAddress = httpRequest.getHeader("x-forwarded-for");
-            if (ipAddress == null) {
-                ipAddress = httpRequest.getHeader("X_FORWARDED_FOR");
-                if (ipAddress == null) {
-                    ipAddress = httpRequest.getHeader("X-Forward-For");
-                    if (ipAddress == null) {
-                        ipAddress = httpRequest.getRemoteAddr();
-                    }
-                }
-            }
-            if (!plugin.getAllowedIPs().contains(ipAddress)) {
-                LOG.warn("REST API rejected service for IP address: " + ipAddress);
-                throw new WebApplicationException(Status.UNAUTHORIZED);
-            }
+        if (!plugin.isAllowedClient(httpRequest)) {
+            LOG.warn("REST API rejected service for IP address: " + plugin.getClientAddress(httpRequest));
+            throw new WebApplicationException(Status.UNAUTHORIZED);
         }
         
         // Get the authentication passed in HTTP headers parameters
@@ -109,7 +95,18 @@ public class AuthFilter implements ContainerRequestFilter {
             throw new WebApplicationException(Status.UNAUTHORIZED);
         }
 
-        // HTTP Basic Auth or Shared Secret key
+        // API keys can be used with every authentication type
+        if (auth.regionMatches(true, 0, "ApiKey ", 0, 7)) {
+            final ScopedPrincipal principal = ApiKeyController.getInstance().authenticate(auth.substring(7).trim());
+            if (principal == null) {
+                LOG.warn("Unknown or expired API key");
+                throw new WebApplicationException(Status.UNAUTHORIZED);
+            }
+            authorize(containerRequest, route, principal, "ApiKey");
+            return;
+        }
+
+        // HTTP Basic Auth, bearer token or Shared Secret key
         if ("basic".equals(plugin.getHttpAuth())) {
             String[] usernameAndPassword = BasicAuth.decode(auth);
 
@@ -138,6 +135,24 @@ public class AuthFilter implements ContainerRequestFilter {
                 LOG.error("Authentication went wrong", e);
                 throw new WebApplicationException(Status.UNAUTHORIZED);
             }
+        } else if ("jwt".equals(plugin.getHttpAuth())) {
+            if (!auth.regionMatches(true, 0, "Bearer ", 0, 7)) {
+                LOG.warn("Authorization header does not contain a bearer token");
+                throw new WebApplicationException(Status.UNAUTHORIZED);
+            }
+
+            final ScopedPrincipal principal = JwtAuth.verify(auth.substring(7).trim());
+            if (principal == null) {
+                LOG.warn("Invalid or expired bearer token");
+                throw new WebApplicationException(Status.UNAUTHORIZED);
+            }
+
+            if (!AdminManager.getInstance().isUserAdmin(principal.getName(), true)) {
+                LOG.warn("Bearer of the token is not an admin: " + principal.getName());
+                throw new WebApplicationException(Status.UNAUTHORIZED);
+            }
+
+            authorize(containerRequest, route, principal, "Bearer");
         } else {
             if (!auth.equals(plugin.getSecret())) {
                 LOG.warn("Wrong secret key authorization. Provided key: " + auth);
@@ -146,10 +161,37 @@ public class AuthFilter implements ContainerRequestFilter {
         }
     }
 
-    private boolean isStatusEndpoint(String path){
-        return path.equals("/plugins/restapi/v1/system/liveness") ||
-            path.startsWith("/plugins/restapi/v1/system/liveness/") ||
-            path.equals("/plugins/restapi/v1/system/readiness") ||
-            path.startsWith("/plugins/restapi/v1/system/readiness/");
+    /**
+     * Checks if the scopes of an authenticated caller allow the request, and makes the caller available through the
+     * security context of the request.
+     */
+    private static void authorize(ContainerRequestContext containerRequest, RouteClassifier.Route route, ScopedPrincipal principal, String scheme) {
+        if (!principal.isAllowed(route, containerRequest.getMethod())) {
+            LOG.warn("Scopes of " + principal + " do not allow request: " + containerRequest.getMethod() + " " + route);
+            throw new WebApplicationException(Status.FORBIDDEN);
+        }
+
+        final boolean secure = containerRequest.getSecurityContext().isSecure();
+        containerRequest.setSecurityContext(new SecurityContext() {
+            @Override
+            public Principal getUserPrincipal() {
+                return principal;
+            }
+
+            @Override
+            public boolean isUserInRole(String role) {
+                return principal.getScopes().contains(role);
+            }
+
+            @Override
+            public boolean isSecure() {
+                return secure;
+            }
+
+            @Override
+            public String getAuthenticationScheme() {
+                return scheme;
+            }
+        });
     }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jivesoftware.openfire.plugin.rest;
+
+import org.jivesoftware.openfire.plugin.rest.entity.MUCRoomEntities;
+import org.jivesoftware.openfire.plugin.rest.entity.SessionEntities;
+import org.jivesoftware.openfire.plugin.rest.entity.UserEntities;
+
+import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.namespace.QName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Writes the XML representation of entities that wrap a (potentially very large) list of other entities, one entity
+ * at a time.
+ *
+ * The start and end of the wrapper are written directly, and every entity in the list is marshalled as a separate
+ * fragment, which is flushed to the client periodically. The output is identical to that of marshalling the wrapper
+ * as a whole.
+ */
+@Provider
+@Produces(MediaType.APPLICATION_XML)
+public class CollectionXmlWriter implements MessageBodyWriter<Object> {
+
+    /** The entities that wrap a list, of which the XML representation is written by this class. */
+    private static final List<Class<?>> WRAPPERS = Arrays.asList(
+        MUCRoomEntities.class,
+        SessionEntities.class,
+        UserEntities.class
+    );
+
+    /** The declaration that is written by JAXB when marshalling a complete document. */
+    private static final byte[] XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>".getBytes(StandardCharsets.UTF_8);
+
+    /** The number of entities after which the output is flushed to the client. */
+    private static final int FLUSH_INTERVAL = 100;
+
+    private static final Map<Class<?>, Wrapper> wrappers = new HashMap<>();
+
+    private static final ConcurrentMap<Class<?>, JAXBContext> contexts = new ConcurrentHashMap<>();
+
+    static {
+        for (final Class<?> type : WRAPPERS) {
+            wrappers.put(type, Wrapper.of(type));
+        }
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        if (!wrappers.containsKey(type)) {
+            return false;
+        }
+        final String charset = mediaType.getParameters().get(MediaType.CHARSET_PARAMETER);
+        return charset == null || StandardCharsets.UTF_8.name().equalsIgnoreCase(charset);
+    }
+
+    @Override
+    public void writeTo(Object entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream output) throws IOException, WebApplicationException
+    {
+        final Wrapper wrapper = wrappers.get(type);
+        final List<?> items = wrapper.getItems(entity);
+
+        output.write(XML_DECLARATION);
+        if (items == null || items.isEmpty()) {
+            output.write(('<' + wrapper.name + "/>").getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        output.write(('<' + wrapper.name + '>').getBytes(StandardCharsets.UTF_8));
+        try {
+            final Marshaller marshaller = getContext(wrapper.itemType).createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+            int count = 0;
+            for (final Object item : items) {
+                if (item == null) {
+                    continue;
+                }
+                marshaller.marshal(wrapper.wrap(item), output);
+                if (++count % FLUSH_INTERVAL == 0) {
+                    output.flush();
+                }
+            }
+        } catch (JAXBException e) {
+            throw new InternalServerErrorException("Unable to write the XML representation of " + type.getSimpleName(), e);
+        }
+        output.write(("</" + wrapper.name + '>').getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static JAXBContext getContext(Class<?> type) throws JAXBException {
+        JAXBContext context = contexts.get(type);
+        if (context == null) {
+            context = JAXBContext.newInstance(type);
+            contexts.putIfAbsent(type, context);
+        }
+        return context;
+    }
+
+    /**
+     * Describes an entity that wraps a list of other entities: the name of its element, the getter of the list, and
+     * the element name and type of the entities in the list.
+     */
+    private static final class Wrapper {
+        private final String name;
+        private final Method getter;
+        private final QName itemName;
+        private final Class<?> itemType;
+
+        private Wrapper(String name, Method getter, QName itemName, Class<?> itemType) {
+            this.name = name;
+            this.getter = getter;
+            this.itemName = itemName;
+            this.itemType = itemType;
+        }
+
+        private static Wrapper of(Class<?> type) {
+            final XmlRootElement root = type.getAnnotation(XmlRootElement.class);
+            for (final Method method : type.getMethods()) {
+                final XmlElement element = method.getAnnotation(XmlElement.class);
+                if (element != null && Collection.class.isAssignableFrom(method.getReturnType())
+                    && method.getGenericReturnType() instanceof ParameterizedType)
+                {
+                    final Type itemType = ((ParameterizedType) method.getGenericReturnType()).getActualTypeArguments()[0];
+                    return new Wrapper(root.name(), method, new QName(element.name()), (Class<?>) itemType);
+                }
+            }
+            throw new IllegalArgumentException("Not an entity that wraps a list: " + type);
+        }
+
+        private List<?> getItems(Object entity) throws IOException {
+            try {
+                return (List<?>) getter.invoke(entity);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IOException("Unable to get the entities that are wrapped by " + entity, e);
+            }
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private JAXBElement<?> wrap(Object item) {
+            return new JAXBElement(itemName, itemType, item);
+        }
+    }
+}
@@ -17,32 +17,136 @@ package org.jivesoftware.openfire.plugin.rest;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
 import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.ext.ContextResolver;
 import javax.ws.rs.ext.Provider;
+import javax.xml.bind.annotation.XmlRootElement;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Replaces the default ObjectMapper behavior as provided by Jackson.
  *
+ * All instances share one mapper, so that the serializers and deserializers that Jackson builds (using reflection, for
+ * every type) are built only once. Properties are accessed through generated code instead of reflection: by Blackbird on
+ * Java 9 and later, and by Afterburner on Java 8, where Blackbird is not available.
+ *
  * @author Guus der Kinderen, guus.der.kinderen@gmail.com
  */
 @Provider
 public class CustomJacksonMapperProvider implements ContextResolver<ObjectMapper> {
 
+    private static final Logger LOG = LoggerFactory.getLogger(CustomJacksonMapperProvider.class);
+
+    private static final ObjectMapper MAPPER = createMapper();
+
+    private static final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    private static final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
     final ObjectMapper mapper;
 
     public CustomJacksonMapperProvider() {
-        mapper = new ObjectMapper();
+        mapper = MAPPER;
+    }
+
+    private static ObjectMapper createMapper() {
+        final ObjectMapper mapper = new ObjectMapper();
 
         mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
 
         // Configure Jackson to use JAXB annotations as the secondary, and Jackson annotations as the primary source.
         mapper.registerModule(new JaxbAnnotationModule().setPriority(JaxbAnnotationModule.Priority.SECONDARY));
+
+        // Blackbird requires the private lookups that were introduced in Java 9. Afterburner works on Java 8, but relies
+        // on access to class loader internals that later versions of Java restrict.
+        if (System.getProperty("java.specification.version", "").startsWith("1.")) {
+            mapper.registerModule(new AfterburnerModule());
+        } else {
+            mapper.registerModule(new BlackbirdModule());
+        }
+        return mapper;
     }
 
     @Override
     public ObjectMapper getContext(Class<?> type) {
         return mapper;
     }
+
+    /**
+     * Returns a writer for entities of a particular type, which is created only once.
+     *
+     * @param type the type of the entities
+     * @return a writer that uses the same configuration as the one used for regular JSON responses.
+     */
+    public static ObjectWriter getWriter(Class<?> type) {
+        return writers.computeIfAbsent(type, MAPPER::writerFor);
+    }
+
+    /**
+     * Returns a reader for entities of a particular type, which is created only once.
+     *
+     * @param type the type of the entities
+     * @return a reader that uses the same configuration as the one used for regular JSON requests.
+     */
+    public static ObjectReader getReader(Class<?> type) {
+        return readers.computeIfAbsent(type, MAPPER::readerFor);
+    }
+
+    /**
+     * Creates the readers and writers for all entities that are returned or accepted by the methods of services, so
+     * that the first requests that use these entities do not need to wait for Jackson to introspect them.
+     *
+     * @param services the classes that implement the endpoints
+     */
+    public static void warmUp(Collection<Class<?>> services) {
+        final long start = System.nanoTime();
+        final Set<Class<?>> returned = new LinkedHashSet<>();
+        final Set<Class<?>> accepted = new LinkedHashSet<>();
+        for (final Class<?> service : services) {
+            for (final Method method : service.getMethods()) {
+                if (isEntity(method.getReturnType())) {
+                    returned.add(method.getReturnType());
+                }
+                final Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+                for (int i = 0; i < parameterAnnotations.length; i++) {
+                    // Parameters without annotations hold the request body.
+                    if (parameterAnnotations[i].length == 0 && isEntity(method.getParameterTypes()[i])) {
+                        accepted.add(method.getParameterTypes()[i]);
+                    }
+                }
+            }
+        }
+        for (final Class<?> type : returned) {
+            try {
+                getWriter(type);
+            } catch (RuntimeException e) {
+                LOG.debug("Unable to create a JSON writer for {}", type, e);
+            }
+        }
+        for (final Class<?> type : accepted) {
+            try {
+                getReader(type);
+            } catch (RuntimeException e) {
+                LOG.debug("Unable to create a JSON reader for {}", type, e);
+            }
+        }
+        LOG.debug("Created JSON writers for {} and readers for {} entity types in {} ms.", returned.size(), accepted.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static boolean isEntity(Class<?> type) {
+        return type.isAnnotationPresent(XmlRootElement.class);
+    }
 }
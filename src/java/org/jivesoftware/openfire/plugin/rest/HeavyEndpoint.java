@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jivesoftware.openfire.plugin.rest;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an endpoint as 'heavy': one that can put considerable load on Openfire, for example because it iterates over
+ * all users, sessions or chat rooms. The amount of concurrent requests to heavy endpoints is limited by the
+ * {@link LoadSheddingFilter}.
+ *
+ * Whether a request is heavy can depend on its query parameters. Without any parameters defined, every request to the
+ * endpoint is heavy.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface HeavyEndpoint {
+
+    /**
+     * Query parameters that make a request heavy when any of them has the value 'true'.
+     *
+     * @return names of query parameters
+     */
+    String[] whenTrue() default {};
+
+    /**
+     * Query parameters that make a request not heavy when any of them is present (typically: filters).
+     *
+     * @return names of query parameters
+     */
+    String[] unlessPresent() default {};
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jivesoftware.openfire.plugin.rest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An immutable set of IPv4 and IPv6 address ranges (in CIDR notation, or single addresses), compiled into a binary
+ * radix trie.
+ *
+ * Every address is represented as a 128-bit IPv6 address. IPv4 addresses are mapped onto the IPv4-mapped IPv6
+ * address space (<tt>::ffff:0:0/96</tt>), which allows a single trie to hold both families. Matching an address
+ * walks at most 128 nodes, regardless of the amount of ranges in the list, and does not allocate any objects.
+ */
+public final class IpAllowList {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IpAllowList.class);
+
+    /** An allow list that does not contain any range. */
+    public static final IpAllowList EMPTY = new IpAllowList(new int[1], new int[1], new boolean[1], 0);
+
+    /** The eight 16-bit groups of the address that is being matched, reused for every match on the same thread. */
+    private static final ThreadLocal<int[]> SCRATCH = ThreadLocal.withInitial(() -> new int[8]);
+
+    private static final int IPV4 = 4;
+    private static final int IPV6 = 6;
+
+    /** Per node: the index of the child for a 0-bit, or 0 if there is none (the root, node 0, is never a child). */
+    private final int[] zero;
+
+    /** Per node: the index of the child for a 1-bit, or 0 if there is none. */
+    private final int[] one;
+
+    /** Per node: true if the path to this node is a prefix that is in the list. */
+    private final boolean[] terminal;
+
+    /** The amount of ranges in the list. */
+    private final int size;
+
+    private IpAllowList(int[] zero, int[] one, boolean[] terminal, int size) {
+        this.zero = zero;
+        this.one = one;
+        this.terminal = terminal;
+        this.size = size;
+    }
+
+    /**
+     * Compiles a collection of addresses and address ranges. Examples of valid entries are <tt>192.168.0.1</tt>,
+     * <tt>10.0.0.0/8</tt>, <tt>2001:db8::/32</tt> and <tt>::1</tt>. Entries that cannot be parsed are ignored (and
+     * logged).
+     *
+     * @param entries the addresses and ranges (can be null)
+     * @return the compiled list
+     */
+    public static IpAllowList parse(Collection<String> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return EMPTY;
+        }
+
+        final Builder builder = new Builder();
+        final int[] groups = new int[8];
+        for (final String entry : entries) {
+            if (entry == null || entry.trim().isEmpty()) {
+                continue;
+            }
+            final String value = entry.trim();
+            final int slash = value.indexOf('/');
+            final int family = parseAddress(value, 0, slash < 0 ? value.length() : slash, groups);
+            int prefixLength = family == IPV4 ? 32 : 128;
+            if (family > 0 && slash >= 0) {
+                prefixLength = parsePrefixLength(value, slash + 1, prefixLength);
+            }
+            if (family < 0 || prefixLength < 0) {
+                LOG.warn("Ignoring invalid IP address or range '{}' in REST API address list.", value);
+                continue;
+            }
+            builder.add(groups, family == IPV4 ? prefixLength + 96 : prefixLength);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns true if this list does not contain any range.
+     *
+     * @return true if this list is empty.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the amount of (distinct) ranges in this list.
+     *
+     * @return the amount of ranges.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if an address is in any of the ranges of this list.
+     *
+     * @param address the textual representation of an IPv4 or IPv6 address (can be null)
+     * @return true if the address is valid, and in any of the ranges of this list.
+     */
+    public boolean matches(String address) {
+        return address != null && matches(address, 0, address.length());
+    }
+
+    /**
+     * Checks if the address in the specified part of a string is in any of the ranges of this list. IPv6 addresses
+     * can be surrounded by brackets and have a zone identifier, IPv4 addresses can be followed by a port number.
+     * Surrounding whitespace is ignored.
+     *
+     * @param value the string that contains the address
+     * @param start the index of the first character of the address
+     * @param end the index after the last character of the address
+     * @return true if the address is valid, and in any of the ranges of this list.
+     */
+    public boolean matches(String value, int start, int end) {
+        if (size == 0) {
+            return false;
+        }
+        final int[] groups = SCRATCH.get();
+        if (parseAddress(value, start, end, groups) < 0) {
+            return false;
+        }
+        int node = 0;
+        for (int bit = 0; bit < 128; bit++) {
+            if (terminal[node]) {
+                return true;
+            }
+            node = ((groups[bit >>> 4] >>> (15 - (bit & 15))) & 1) == 0 ? zero[node] : one[node];
+            if (node == 0) {
+                return false;
+            }
+        }
+        return terminal[node];
+    }
+
+    /**
+     * Parses an IPv4 or IPv6 address into eight 16-bit groups. IPv4 addresses are mapped to IPv6.
+     *
+     * @return {@link #IPV4} or {@link #IPV6}, or -1 if the address is not valid.
+     */
+    private static int parseAddress(String value, int start, int end, int[] groups) {
+        while (start < end && Character.isWhitespace(value.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(value.charAt(end - 1))) {
+            end--;
+        }
+        if (start < end && value.charAt(start) == '[') {
+            final int close = value.indexOf(']', start);
+            if (close < 0 || close >= end) {
+                return -1;
+            }
+            start++;
+            end = close;
+        }
+        int colons = 0;
+        int lastColon = -1;
+        for (int i = start; i < end; i++) {
+            final char c = value.charAt(i);
+            if (c == '%') {
+                end = i;
+                break;
+            }
+            if (c == ':') {
+                colons++;
+                lastColon = i;
+            }
+        }
+
+        if (colons <= 1) {
+            // An IPv4 address, optionally followed by a port number.
+            final long ipv4 = parseIPv4(value, start, colons == 1 ? lastColon : end);
+            if (ipv4 < 0) {
+                return -1;
+            }
+            Arrays.fill(groups, 0, 5, 0);
+            groups[5] = 0xffff;
+            groups[6] = (int) (ipv4 >>> 16);
+            groups[7] = (int) (ipv4 & 0xffff);
+            return IPV4;
+        }
+
+        int count = 0;
+        int compressedAt = -1;
+        int i = start;
+        if (value.startsWith("::", i)) {
+            compressedAt = 0;
+            i += 2;
+        } else if (value.charAt(i) == ':') {
+            return -1;
+        }
+        while (i < end) {
+            int j = i;
+            int group = 0;
+            while (j < end && j - i <= 4) {
+                final int digit = Character.digit(value.charAt(j), 16);
+                if (digit < 0) {
+                    break;
+                }
+                group = (group << 4) | digit;
+                j++;
+            }
+            if (j < end && value.charAt(j) == '.') {
+                // An embedded IPv4 address, which must be the last part of the address.
+                final long ipv4 = count <= 6 ? parseIPv4(value, i, end) : -1;
+                if (ipv4 < 0) {
+                    return -1;
+                }
+                groups[count++] = (int) (ipv4 >>> 16);
+                groups[count++] = (int) (ipv4 & 0xffff);
+                break;
+            }
+            if (j == i || j - i > 4 || count == 8) {
+                return -1;
+            }
+            groups[count++] = group;
+            if (j == end) {
+                break;
+            }
+            if (value.charAt(j) != ':' || j + 1 == end) {
+                return -1;
+            }
+            i = j + 1;
+            if (value.charAt(i) == ':') {
+                if (compressedAt >= 0) {
+                    return -1;
+                }
+                compressedAt = count;
+                i++;
+            }
+        }
+
+        if (compressedAt >= 0) {
+            if (count == 8) {
+                return -1;
+            }
+            final int tail = count - compressedAt;
+            System.arraycopy(groups, compressedAt, groups, 8 - tail, tail);
+            Arrays.fill(groups, compressedAt, 8 - tail, 0);
+        } else if (count != 8) {
+            return -1;
+        }
+        return IPV6;
+    }
+
+    /**
+     * Parses a dotted-decimal IPv4 address.
+     *
+     * @return the 32-bit address, or -1 if the address is not valid.
+     */
+    private static long parseIPv4(String value, int start, int end) {
+        long result = 0;
+        int octets = 0;
+        int i = start;
+        while (octets < 4) {
+            int octet = 0;
+            int digits = 0;
+            while (i < end && digits < 3) {
+                final char c = value.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                octet = octet * 10 + (c - '0');
+                digits++;
+                i++;
+            }
+            if (digits == 0 || octet > 255) {
+                return -1;
+            }
+            result = (result << 8) | octet;
+            octets++;
+            if (octets < 4) {
+                if (i >= end || value.charAt(i) != '.') {
+                    return -1;
+                }
+                i++;
+            }
+        }
+        return i == end ? result : -1;
+    }
+
+    /**
+     * Parses the prefix length of a range.
+     *
+     * @return the prefix length, or -1 if it is not a number in the range [0, max].
+     */
+    private static int parsePrefixLength(String value, int start, int max) {
+        if (start == value.length() || value.length() - start > 3) {
+            return -1;
+        }
+        int result = 0;
+        for (int i = start; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result <= max ? result : -1;
+    }
+
+    /**
+     * Collects prefixes into growable arrays, which are trimmed when the list is built.
+     */
+    private static final class Builder {
+        private int[] zero = new int[64];
+        private int[] one = new int[64];
+        private boolean[] terminal = new boolean[64];
+        private int nodes = 1;
+        private int size;
+
+        private void add(int[] groups, int prefixLength) {
+            int node = 0;
+            for (int bit = 0; bit < prefixLength; bit++) {
+                if (terminal[node]) {
+                    // A shorter prefix that covers this one is already present.
+                    return;
+                }
+                final boolean set = ((groups[bit >>> 4] >>> (15 - (bit & 15))) & 1) == 1;
+                int child = set ? one[node] : zero[node];
+                if (child == 0) {
+                    child = newNode();
+                    if (set) {
+                        one[node] = child;
+                    } else {
+                        zero[node] = child;
+                    }
+                }
+                node = child;
+            }
+            if (!terminal[node]) {
+                terminal[node] = true;
+                size++;
+            }
+        }
+
+        private int newNode() {
+            if (nodes == terminal.length) {
+                final int capacity = nodes * 2;
+                zero = Arrays.copyOf(zero, capacity);
+                one = Arrays.copyOf(one, capacity);
+                terminal = Arrays.copyOf(terminal, capacity);
+            }
+            return nodes++;
+        }
+
+        private IpAllowList build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            return new IpAllowList(Arrays.copyOf(zero, nodes), Arrays.copyOf(one, nodes), Arrays.copyOf(terminal, nodes), size);
+        }
+    }
+}
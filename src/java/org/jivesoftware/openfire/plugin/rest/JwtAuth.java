@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jivesoftware.openfire.plugin.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jivesoftware.util.SystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Verifies JSON Web Tokens (RFC 7519) that are used as bearer tokens, without contacting any authentication backend.
+ *
+ * Tokens must be signed with HMAC-SHA256 ('HS256') using a shared secret, or with Ed25519 ('EdDSA') using a key pair of
+ * which the public key is configured. Tokens must identify an Openfire administrator in the 'sub' claim, must have an
+ * expiry time ('exp'), and define what the bearer is allowed to do in the 'scope' claim (see {@link ScopedPrincipal}).
+ */
+public class JwtAuth {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JwtAuth.class);
+
+    public static final SystemProperty<String> HMAC_SECRET = SystemProperty.Builder.ofType(String.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.jwt.hmac-secret")
+        .setDefaultValue("")
+        .setEncrypted(true)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<String> ED25519_PUBLIC_KEY = SystemProperty.Builder.ofType(String.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.jwt.ed25519-public-key")
+        .setDefaultValue("")
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<String> ISSUER = SystemProperty.Builder.ofType(String.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.jwt.issuer")
+        .setDefaultValue("")
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<String> AUDIENCE = SystemProperty.Builder.ofType(String.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.jwt.audience")
+        .setDefaultValue("")
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Duration> CLOCK_SKEW = SystemProperty.Builder.ofType(Duration.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.jwt.clock-skew")
+        .setDefaultValue(Duration.ofSeconds(60))
+        .setMinValue(Duration.ZERO)
+        .setChronoUnit(ChronoUnit.SECONDS)
+        .setDynamic(true)
+        .build();
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final ThreadLocal<Mac> HMAC_SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance("HmacSHA256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /** The keys that were created from the current values of the properties, replaced when these change. */
+    private static volatile Keys keys;
+
+    /**
+     * Instantiates a new JWT auth.
+     */
+    private JwtAuth() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Verifies the signature and claims of a token.
+     *
+     * @param token the encoded token (without the 'Bearer' prefix)
+     * @return the bearer of the token, or null if the token is not valid.
+     */
+    public static ScopedPrincipal verify(String token) {
+        final int firstDot = token.indexOf('.');
+        final int secondDot = token.indexOf('.', firstDot + 1);
+        if (firstDot < 0 || secondDot < 0 || token.indexOf('.', secondDot + 1) >= 0) {
+            LOG.debug("Token is not a JWS in compact serialization.");
+            return null;
+        }
+
+        try {
+            final Base64.Decoder decoder = Base64.getUrlDecoder();
+            final JsonNode header = MAPPER.readTree(decoder.decode(token.substring(0, firstDot)));
+            final byte[] signingInput = token.substring(0, secondDot).getBytes(StandardCharsets.US_ASCII);
+            final byte[] signature = decoder.decode(token.substring(secondDot + 1));
+            if (!verifySignature(header.path("alg").asText(), signingInput, signature)) {
+                return null;
+            }
+
+            final JsonNode claims = MAPPER.readTree(decoder.decode(token.substring(firstDot + 1, secondDot)));
+            return verifyClaims(claims);
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.debug("Token cannot be decoded.", e);
+            return null;
+        }
+    }
+
+    private static boolean verifySignature(String algorithm, byte[] signingInput, byte[] signature) {
+        final Keys current = getKeys();
+        try {
+            switch (algorithm) {
+                case "HS256":
+                    if (current.hmacKey == null) {
+                        LOG.debug("Token is signed with HS256, but no HMAC secret is configured.");
+                        return false;
+                    }
+                    final Mac mac = HMAC_SHA256.get();
+                    mac.init(current.hmacKey);
+                    if (!MessageDigest.isEqual(mac.doFinal(signingInput), signature)) {
+                        LOG.debug("Token has an invalid HS256 signature.");
+                        return false;
+                    }
+                    return true;
+                case "EdDSA":
+                    if (current.publicKey == null) {
+                        LOG.debug("Token is signed with EdDSA, but no Ed25519 public key is configured.");
+                        return false;
+                    }
+                    final Signature verifier = Signature.getInstance("Ed25519");
+                    verifier.initVerify(current.publicKey);
+                    verifier.update(signingInput);
+                    if (!verifier.verify(signature)) {
+                        LOG.debug("Token has an invalid EdDSA signature.");
+                        return false;
+                    }
+                    return true;
+                default:
+                    LOG.debug("Token uses an unsupported algorithm: {}", algorithm);
+                    return false;
+            }
+        } catch (GeneralSecurityException e) {
+            LOG.warn("Unable to verify the signature of a token.", e);
+            return false;
+        }
+    }
+
+    private static ScopedPrincipal verifyClaims(JsonNode claims) {
+        final long now = System.currentTimeMillis() / 1000;
+        final long skew = CLOCK_SKEW.getValue().getSeconds();
+
+        final String subject = claims.path("sub").asText("");
+        if (subject.isEmpty()) {
+            LOG.debug("Token has no subject.");
+            return null;
+        }
+        if (!claims.path("exp").canConvertToLong() || now > claims.path("exp").asLong() + skew) {
+            LOG.debug("Token of '{}' has no expiry time, or has expired.", subject);
+            return null;
+        }
+        if (claims.has("nbf") && now < claims.path("nbf").asLong() - skew) {
+            LOG.debug("Token of '{}' is not valid yet.", subject);
+            return null;
+        }
+        final String issuer = ISSUER.getValue();
+        if (issuer != null && !issuer.isEmpty() && !issuer.equals(claims.path("iss").asText())) {
+            LOG.debug("Token of '{}' has an unexpected issuer.", subject);
+            return null;
+        }
+        final String audience = AUDIENCE.getValue();
+        if (audience != null && !audience.isEmpty() && !contains(claims.path("aud"), audience)) {
+            LOG.debug("Token of '{}' is not intended for this audience.", subject);
+            return null;
+        }
+
+        final Set<String> scopes = new HashSet<>();
+        final JsonNode scope = claims.path("scope");
+        if (scope.isArray()) {
+            scope.forEach(value -> scopes.add(value.asText()));
+        } else if (scope.isTextual()) {
+            scopes.addAll(Arrays.asList(scope.asText().trim().split("\\s+")));
+        }
+        return new ScopedPrincipal(subject, scopes);
+    }
+
+    private static boolean contains(JsonNode node, String value) {
+        if (node.isArray()) {
+            for (final JsonNode element : node) {
+                if (value.equals(element.asText())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return value.equals(node.asText());
+    }
+
+    private static Keys getKeys() {
+        final String secret = HMAC_SECRET.getValue();
+        final String publicKey = ED25519_PUBLIC_KEY.getValue();
+        Keys current = keys;
+        if (current == null || !Objects.equals(current.secret, secret) || !Objects.equals(current.publicKeySource, publicKey)) {
+            current = new Keys(secret, publicKey);
+            keys = current;
+        }
+        return current;
+    }
+
+    /**
+     * Keys that are created from the configured properties, cached to prevent them from being recreated for every
+     * request.
+     */
+    private static class Keys {
+        private final String secret;
+        private final String publicKeySource;
+        private final SecretKeySpec hmacKey;
+        private final PublicKey publicKey;
+
+        private Keys(String secret, String publicKeySource) {
+            this.secret = secret;
+            this.publicKeySource = publicKeySource;
+            this.hmacKey = secret == null || secret.isEmpty() ? null : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+            PublicKey key = null;
+            if (publicKeySource != null && !publicKeySource.trim().isEmpty()) {
+                try {
+                    key = KeyFactory.getInstance("Ed25519").generatePublic(new X509EncodedKeySpec(Base64.getMimeDecoder().decode(publicKeySource.trim())));
+                } catch (GeneralSecurityException | IllegalArgumentException e) {
+                    LOG.warn("Unable to load the Ed25519 public key that is used to verify tokens (property '{}').", ED25519_PUBLIC_KEY.getKey(), e);
+                }
+            }
+            this.publicKey = key;
+        }
+    }
+}
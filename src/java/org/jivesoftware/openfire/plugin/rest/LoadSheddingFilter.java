@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jivesoftware.openfire.plugin.rest;
+
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.jivesoftware.openfire.plugin.rest.exceptions.ErrorResponse;
+import org.jivesoftware.openfire.plugin.rest.exceptions.ExceptionType;
+import org.jivesoftware.openfire.stats.i18nStatistic;
+import org.jivesoftware.util.SystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the amount of requests to {@link HeavyEndpoint heavy endpoints} that are processed at the same time, to
+ * protect Openfire when it is under pressure.
+ *
+ * The limit adapts to the observed latency of heavy requests (as measured by the {@link StatisticsFilter}), using an
+ * additive-increase/multiplicative-decrease algorithm: when the 95th percentile of recent latencies exceeds the target,
+ * the limit is reduced by a quarter. Otherwise, when the limit has been reached, it is increased by one. Requests that
+ * exceed the limit are rejected with a '503 Service Unavailable' response.
+ */
+@Priority(Priorities.USER)
+public class LoadSheddingFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadSheddingFilter.class);
+
+    public static final SystemProperty<Boolean> ENABLED = SystemProperty.Builder.ofType(Boolean.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.loadshedding.enabled")
+        .setDefaultValue(false)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Duration> LATENCY_TARGET = SystemProperty.Builder.ofType(Duration.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.loadshedding.latency-target")
+        .setDefaultValue(Duration.ofSeconds(2))
+        .setMinValue(Duration.ofMillis(10))
+        .setChronoUnit(ChronoUnit.MILLIS)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Integer> MIN_LIMIT = SystemProperty.Builder.ofType(Integer.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.loadshedding.min-limit")
+        .setDefaultValue(1)
+        .setMinValue(1)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Integer> MAX_LIMIT = SystemProperty.Builder.ofType(Integer.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.loadshedding.max-limit")
+        .setDefaultValue(16)
+        .setMinValue(1)
+        .setDynamic(true)
+        .build();
+
+    /** The amount of most recent latency samples from which the percentile is calculated. */
+    private static final int WINDOW_SIZE = 100;
+
+    /** The amount of samples after which the limit is reconsidered. */
+    private static final int ADJUST_INTERVAL = 10;
+
+    /** The name of the request property that holds the permit of a heavy request. */
+    private static final String PERMIT_PROPERTY = LoadSheddingFilter.class.getName() + ".permit";
+
+    private static final AtomicInteger inFlight = new AtomicInteger();
+
+    private static final LongAdder rejections = new LongAdder();
+
+    private static final long[] samples = new long[WINDOW_SIZE];
+
+    private static int sampleCount;
+
+    private static volatile int limit = MAX_LIMIT.getValue();
+
+    /** True if the limit was reached since it was last adjusted. */
+    private static volatile boolean limitReached;
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        if (!ENABLED.getValue() || !isHeavy(resourceInfo.getResourceMethod(), requestContext.getUriInfo().getQueryParameters())) {
+            return;
+        }
+
+        final int current = limit;
+        if (inFlight.incrementAndGet() > current) {
+            inFlight.decrementAndGet();
+            limitReached = true;
+            rejections.increment();
+            LOG.debug("Rejecting request to heavy endpoint, as {} requests are already being processed.", current);
+
+            final ErrorResponse errorResponse = new ErrorResponse();
+            errorResponse.setResource(requestContext.getUriInfo().getPath());
+            errorResponse.setMessage("The server is too busy to process this request.");
+            errorResponse.setException(ExceptionType.SERVICE_OVERLOADED);
+            requestContext.abortWith(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", 1)
+                .entity(errorResponse)
+                .build());
+            return;
+        }
+        if (inFlight.get() >= current) {
+            limitReached = true;
+        }
+        requestContext.setProperty(PERMIT_PROPERTY, new Permit());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+        final Object permit = requestContext.getProperty(PERMIT_PROPERTY);
+        if (permit != null && ((Permit) permit).release()) {
+            final long elapsed = StatisticsFilter.getElapsedNanos(requestContext);
+            if (elapsed >= 0 && responseContext.getStatusInfo().getFamily() != Response.Status.Family.SERVER_ERROR) {
+                addSample(elapsed);
+            }
+        }
+    }
+
+    static boolean isHeavy(Method method, MultivaluedMap<String, String> queryParameters) {
+        final HeavyEndpoint heavy = method == null ? null : method.getAnnotation(HeavyEndpoint.class);
+        if (heavy == null) {
+            return false;
+        }
+        for (final String parameter : heavy.unlessPresent()) {
+            final String value = queryParameters.getFirst(parameter);
+            if (value != null && !value.isEmpty()) {
+                return false;
+            }
+        }
+        if (heavy.whenTrue().length == 0) {
+            return true;
+        }
+        for (final String parameter : heavy.whenTrue()) {
+            if (Boolean.parseBoolean(queryParameters.getFirst(parameter))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records the latency of a heavy request, and adjusts the limit periodically.
+     */
+    private static synchronized void addSample(long elapsedNanos) {
+        samples[sampleCount % WINDOW_SIZE] = elapsedNanos;
+        sampleCount++;
+        if (sampleCount % ADJUST_INTERVAL != 0) {
+            return;
+        }
+        if (sampleCount >= 2 * WINDOW_SIZE) {
+            // Prevent overflow, while keeping the window full.
+            sampleCount -= WINDOW_SIZE;
+        }
+
+        final long[] window = Arrays.copyOf(samples, Math.min(sampleCount, WINDOW_SIZE));
+        Arrays.sort(window);
+        final long p95 = window[(int) Math.ceil(window.length * 0.95) - 1];
+
+        final int min = MIN_LIMIT.getValue();
+        final int max = Math.max(min, MAX_LIMIT.getValue());
+        final int current = limit;
+        int next = current;
+        if (p95 > LATENCY_TARGET.getValue().toNanos()) {
+            next = Math.max(min, current * 3 / 4);
+        } else if (limitReached) {
+            next = current + 1;
+        }
+        next = Math.min(max, Math.max(min, next));
+        if (next != current) {
+            LOG.debug("Changing the limit of concurrent requests to heavy endpoints from {} to {} (p95 latency: {} ms)", current, next, TimeUnit.NANOSECONDS.toMillis(p95));
+            limit = next;
+        }
+        limitReached = false;
+    }
+
+    /**
+     * Occupies a slot of the limit, until released.
+     */
+    private static class Permit {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        /**
+         * Releases the slot, if this has not been done before.
+         *
+         * @return true if the slot was released by this invocation.
+         */
+        private boolean release() {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Releases the slots of heavy requests that failed with an exception that is not mapped to a response, for which
+     * response filters are not invoked.
+     */
+    public static class PermitListener implements ApplicationEventListener {
+
+        @Override
+        public void onEvent(ApplicationEvent event) {
+        }
+
+        @Override
+        public RequestEventListener onRequest(RequestEvent requestEvent) {
+            return event -> {
+                if (event.getType() == RequestEvent.Type.FINISHED) {
+                    final Object permit = event.getContainerRequest().getProperty(PERMIT_PROPERTY);
+                    if (permit != null) {
+                        ((Permit) permit).release();
+                    }
+                }
+            };
+        }
+    }
+
+    public static Collection<LoadSheddingStatistic> generateAllStatisticInstances() {
+        final Collection<LoadSheddingStatistic> result = new ArrayList<>();
+        result.add(new LoadSheddingStatistic("rejected", i18nStatistic.Type.rate, rejections::sumThenReset));
+        result.add(new LoadSheddingStatistic("limit", i18nStatistic.Type.count, () -> limit));
+        return result;
+    }
+
+    public static class LoadSheddingStatistic extends i18nStatistic
+    {
+        public static final String GROUP = "restapi_loadshedding";
+
+        private final String name;
+
+        private final LongSupplier sampler;
+
+        public LoadSheddingStatistic(@Nonnull final String name, @Nonnull final Type type, @Nonnull final LongSupplier sampler)
+        {
+            super(GROUP + "." + name, "restapi", type);
+            this.name = name;
+            this.sampler = sampler;
+        }
+
+        @Override
+        public double sample()
+        {
+            return sampler.getAsLong();
+        }
+
+        @Override
+        public boolean isPartialSample()
+        {
+            return getStatType() == Type.rate;
+        }
+
+        public String getGroupName() {
+            return GROUP;
+        }
+
+        public String getKeyName() {
+            return GROUP + "_" + name;
+        }
+    }
+}
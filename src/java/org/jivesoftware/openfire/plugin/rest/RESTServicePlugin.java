@@ -19,13 +19,29 @@ package org.jivesoftware.openfire.plugin.rest;
 import org.jivesoftware.admin.AuthCheckFilter;
 import org.jivesoftware.openfire.container.Plugin;
 import org.jivesoftware.openfire.container.PluginManager;
+import org.jivesoftware.openfire.event.GroupEventDispatcher;
+import org.jivesoftware.openfire.event.UserEventDispatcher;
+import org.jivesoftware.openfire.muc.MUCEventDispatcher;
+import org.jivesoftware.openfire.plugin.rest.controller.ApiKeyController;
+import org.jivesoftware.openfire.plugin.rest.controller.MUCInvitationDispatcher;
+import org.jivesoftware.openfire.plugin.rest.controller.MUCRoomController;
+import org.jivesoftware.openfire.plugin.rest.controller.MUCRoomSnapshotCache;
+import org.jivesoftware.openfire.plugin.rest.controller.MessageController;
+import org.jivesoftware.openfire.plugin.rest.controller.SecurityAuditLogTailer;
+import org.jivesoftware.openfire.plugin.rest.exceptions.RESTExceptionMapper;
 import org.jivesoftware.openfire.plugin.rest.service.JerseyWrapper;
+import org.jivesoftware.openfire.plugin.rest.utils.EntityVersions;
+import org.jivesoftware.openfire.plugin.rest.utils.GroupResolver;
+import org.jivesoftware.openfire.plugin.rest.utils.ServiceLogger;
 import org.jivesoftware.openfire.stats.StatisticsManager;
 import org.jivesoftware.util.JiveGlobals;
 import org.jivesoftware.util.PropertyEventDispatcher;
 import org.jivesoftware.util.PropertyEventListener;
 import org.jivesoftware.util.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.servlet.http.HttpServletRequest;
 import java.io.File;
 import java.util.*;
 
@@ -34,7 +50,10 @@ import java.util.*;
  */
 public class RESTServicePlugin implements Plugin, PropertyEventListener {
 
+    private static final Logger Log = LoggerFactory.getLogger(RESTServicePlugin.class);
+
     private static final String CUSTOM_AUTH_FILTER_PROPERTY_NAME = "plugin.restapi.customAuthFilter";
+    private static final String TRUSTED_PROXIES_PROPERTY_NAME = "plugin.restapi.trustedProxies";
     public static final String SERVICE_LOGGING_ENABLED = "plugin.restapi.serviceLoggingEnabled";
 
     /** The secret. */
@@ -42,21 +61,24 @@ public class RESTServicePlugin implements Plugin, PropertyEventListener {
     
     /** The allowed i ps. */
     private Collection<String> allowedIPs;
+
+    /** The allowed IP addresses and ranges, compiled for fast matching, or null if all clients are allowed. */
+    private volatile IpAllowList allowedIPList = null;
+
+    /** The addresses of reverse proxies that are trusted to report the address of the client. */
+    private volatile IpAllowList trustedProxies = IpAllowList.EMPTY;
     
     /** The enabled. */
     private boolean enabled;
 
     public boolean isServiceLoggingEnabled() {
-        return serviceLoggingEnabled;
+        return ServiceLogger.ENABLED.getValue();
     }
 
     public void setServiceLoggingEnabled(boolean serviceLoggingEnabled) {
-        JiveGlobals.setProperty(SERVICE_LOGGING_ENABLED, Boolean.toString(serviceLoggingEnabled));
-        this.serviceLoggingEnabled = serviceLoggingEnabled;
+        ServiceLogger.ENABLED.setValue(serviceLoggingEnabled);
     }
 
-    private boolean serviceLoggingEnabled;
-
     /** The http auth. */
     private String httpAuth;
     
@@ -84,6 +106,18 @@ public class RESTServicePlugin implements Plugin, PropertyEventListener {
             StatisticsManager.getInstance().addStatistic(statistic.getKeyName(), statistic);
             registeredStatisticKeys.add(statistic.getKeyName());
         }
+        for (RateLimitFilter.RateLimitStatistic statistic : RateLimitFilter.generateAllStatisticInstances()) {
+            StatisticsManager.getInstance().addStatistic(statistic.getKeyName(), statistic);
+            registeredStatisticKeys.add(statistic.getKeyName());
+        }
+        for (LoadSheddingFilter.LoadSheddingStatistic statistic : LoadSheddingFilter.generateAllStatisticInstances()) {
+            StatisticsManager.getInstance().addStatistic(statistic.getKeyName(), statistic);
+            registeredStatisticKeys.add(statistic.getKeyName());
+        }
+        for (RESTExceptionMapper.ExceptionStatistic statistic : RESTExceptionMapper.generateAllStatisticInstances()) {
+            StatisticsManager.getInstance().addStatistic(statistic.getKeyName(), statistic);
+            registeredStatisticKeys.add(statistic.getKeyName());
+        }
 
         // See if the service is enabled or not.
         enabled = JiveGlobals.getBooleanProperty("plugin.restapi.enabled", false);
@@ -94,13 +128,31 @@ public class RESTServicePlugin implements Plugin, PropertyEventListener {
         // Get the list of IP addresses that can use this service. An empty list
         // means that this filter is disabled.
         allowedIPs = StringUtils.stringToCollection(JiveGlobals.getProperty("plugin.restapi.allowedIPs", ""));
+        allowedIPList = compileAllowedIPs(allowedIPs);
+
+        // Get the list of reverse proxies that are trusted to report the address of the client in
+        // the X-Forwarded-For header.
+        trustedProxies = IpAllowList.parse(StringUtils.stringToCollection(JiveGlobals.getProperty(TRUSTED_PROXIES_PROPERTY_NAME, "")));
 
-        setServiceLoggingEnabled(JiveGlobals.getBooleanProperty(SERVICE_LOGGING_ENABLED, false));
         // Listen to system property events
         PropertyEventDispatcher.addListener(this);
 
         // Exclude this servlet from requering the user to login
         AuthCheckFilter.addExclude(JerseyWrapper.SERVLET_URL);
+
+        // Keep snapshots of MUC rooms up to date
+        MUCEventDispatcher.addListener(MUCRoomSnapshotCache.getInstance());
+
+        // Keep resolved groups up to date
+        GroupEventDispatcher.addListener(GroupResolver.getInstance());
+
+        // Keep the versions that entity tags are created from up to date
+        UserEventDispatcher.addListener(EntityVersions.getInstance());
+        GroupEventDispatcher.addListener(EntityVersions.getInstance());
+        MUCEventDispatcher.addListener(EntityVersions.getInstance());
+
+        // Load API keys
+        ApiKeyController.getInstance().start();
     }
 
     /* (non-Javadoc)
@@ -118,6 +170,28 @@ public class RESTServicePlugin implements Plugin, PropertyEventListener {
         AuthCheckFilter.removeExclude(JerseyWrapper.SERVLET_URL);
         // Stop listening to system property events
         PropertyEventDispatcher.removeListener(this);
+        // Stop polling for new security audit log entries
+        SecurityAuditLogTailer.getInstance().shutdown();
+        // Stop delivering broadcasts
+        MessageController.getInstance().shutdown();
+        // Stop changing affiliations in parallel
+        MUCRoomController.getInstance().shutdown();
+        // Stop delivering invitations
+        MUCInvitationDispatcher.getInstance().shutdown();
+        // Stop keeping snapshots of MUC rooms
+        MUCEventDispatcher.removeListener(MUCRoomSnapshotCache.getInstance());
+        MUCRoomSnapshotCache.getInstance().clear();
+        // Stop caching resolved groups
+        GroupEventDispatcher.removeListener(GroupResolver.getInstance());
+        GroupResolver.getInstance().clear();
+        // Stop keeping the versions that entity tags are created from
+        UserEventDispatcher.removeListener(EntityVersions.getInstance());
+        GroupEventDispatcher.removeListener(EntityVersions.getInstance());
+        MUCEventDispatcher.removeListener(EntityVersions.getInstance());
+        // Stop tracking API key usage
+        ApiKeyController.getInstance().shutdown();
+        // Stop writing to the access log
+        AccessLogFilter.shutdown();
     }
 
     /**
@@ -193,6 +267,108 @@ public class RESTServicePlugin implements Plugin, PropertyEventListener {
     public void setAllowedIPs(Collection<String> allowedIPs) {
         JiveGlobals.setProperty("plugin.restapi.allowedIPs", StringUtils.collectionToString(allowedIPs));
         this.allowedIPs = allowedIPs;
+        this.allowedIPList = compileAllowedIPs(allowedIPs);
+    }
+
+    /**
+     * Compiles the allowed IP addresses and ranges.
+     *
+     * @param allowedIPs the configured addresses and ranges (can be null)
+     * @return the compiled list, or null if no addresses have been configured (meaning that all clients are allowed).
+     *         When addresses have been configured of which none are valid, the returned list is empty, which causes
+     *         all clients to be rejected.
+     */
+    private static IpAllowList compileAllowedIPs(Collection<String> allowedIPs) {
+        if (allowedIPs == null || allowedIPs.isEmpty()) {
+            return null;
+        }
+        final IpAllowList compiled = IpAllowList.parse(allowedIPs);
+        if (compiled.isEmpty()) {
+            Log.error("None of the allowed IP addresses of the REST API are valid: {}. All clients will be rejected.", allowedIPs);
+        }
+        return compiled;
+    }
+
+    /**
+     * Checks if a request originates from a client that is allowed to use the REST API. This is always the case when
+     * no allowed IP addresses have been configured.
+     *
+     * @param request the request to check
+     * @return true if the client is allowed to use the REST API.
+     */
+    public boolean isAllowedClient(HttpServletRequest request) {
+        return isAllowedClient(this.allowedIPList, getForwardedFor(request), request.getRemoteAddr(), this.trustedProxies);
+    }
+
+    /**
+     * Checks if the client of a request is in a list of allowed addresses.
+     *
+     * @param allowList the allowed addresses, or null if all clients are allowed
+     * @return true if the client is allowed to use the REST API.
+     * @see #locateClientAddress(String, String, IpAllowList)
+     */
+    static boolean isAllowedClient(IpAllowList allowList, String forwardedFor, String remoteAddr, IpAllowList proxies) {
+        if (allowList == null) {
+            return true;
+        }
+        final long range = locateClientAddress(forwardedFor, remoteAddr, proxies);
+        if (range < 0) {
+            return allowList.matches(remoteAddr);
+        }
+        return allowList.matches(forwardedFor, (int) (range >>> 32), (int) range);
+    }
+
+    /**
+     * Returns the address of the client that sent a request. Only when the request was received from a trusted proxy,
+     * the address is taken from the X-Forwarded-For header, as clients can put any address in that header.
+     *
+     * @param request the request
+     * @return the address of the client.
+     */
+    public String getClientAddress(HttpServletRequest request) {
+        final String forwardedFor = getForwardedFor(request);
+        final long range = locateClientAddress(forwardedFor, request.getRemoteAddr(), this.trustedProxies);
+        if (range < 0) {
+            return request.getRemoteAddr();
+        }
+        return forwardedFor.substring((int) (range >>> 32), (int) range).trim();
+    }
+
+    private static String getForwardedFor(HttpServletRequest request) {
+        String forwardedFor = request.getHeader("x-forwarded-for");
+        if (forwardedFor == null) {
+            forwardedFor = request.getHeader("X_FORWARDED_FOR");
+            if (forwardedFor == null) {
+                forwardedFor = request.getHeader("X-Forward-For");
+            }
+        }
+        return forwardedFor;
+    }
+
+    /**
+     * Finds the address of the client in an X-Forwarded-For header, which contains a comma-separated chain of
+     * addresses, where every proxy appends the address that it received the request from.
+     *
+     * The header is only used when the request was received from a trusted proxy, and the client is the right-most
+     * address that is not a trusted proxy. Without trusted proxies, the header is never used, as the client could have
+     * chosen any address.
+     *
+     * @return the start index (upper 32 bits) and end index (lower 32 bits) of the address in the header, or -1 if the
+     *         address that the request was received from should be used instead.
+     */
+    static long locateClientAddress(String forwardedFor, String remoteAddr, IpAllowList proxies) {
+        if (forwardedFor == null || forwardedFor.trim().isEmpty() || !proxies.matches(remoteAddr)) {
+            return -1;
+        }
+        int end = forwardedFor.length();
+        while (true) {
+            final int comma = forwardedFor.lastIndexOf(',', end - 1);
+            final int start = comma + 1;
+            if (comma < 0 || !proxies.matches(forwardedFor, start, end)) {
+                return ((long) start << 32) | end;
+            }
+            end = comma;
+        }
     }
 
     /**
@@ -246,6 +422,9 @@ public class RESTServicePlugin implements Plugin, PropertyEventListener {
             this.enabled = Boolean.parseBoolean((String) params.get("value"));
         } else if (property.equals("plugin.restapi.allowedIPs")) {
             this.allowedIPs = StringUtils.stringToCollection((String) params.get("value"));
+            this.allowedIPList = compileAllowedIPs(this.allowedIPs);
+        } else if (property.equals(TRUSTED_PROXIES_PROPERTY_NAME)) {
+            this.trustedProxies = IpAllowList.parse(StringUtils.stringToCollection((String) params.get("value")));
         } else if (property.equals("plugin.restapi.httpAuth")) {
             this.httpAuth = (String) params.get("value");
         } else if(property.equals(CUSTOM_AUTH_FILTER_PROPERTY_NAME)) {
@@ -263,6 +442,9 @@ public class RESTServicePlugin implements Plugin, PropertyEventListener {
             this.enabled = false;
         } else if (property.equals("plugin.restapi.allowedIPs")) {
             this.allowedIPs = Collections.emptyList();
+            this.allowedIPList = null;
+        } else if (property.equals(TRUSTED_PROXIES_PROPERTY_NAME)) {
+            this.trustedProxies = IpAllowList.EMPTY;
         } else if (property.equals("plugin.restapi.httpAuth")) {
             this.httpAuth = "basic";
         } else if(property.equals(CUSTOM_AUTH_FILTER_PROPERTY_NAME)) {
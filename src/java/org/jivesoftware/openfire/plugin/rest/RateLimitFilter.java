@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jivesoftware.openfire.plugin.rest;
+
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.jivesoftware.openfire.XMPPServer;
+import org.jivesoftware.openfire.plugin.rest.exceptions.ErrorResponse;
+import org.jivesoftware.openfire.plugin.rest.exceptions.ExceptionType;
+import org.jivesoftware.openfire.stats.i18nStatistic;
+import org.jivesoftware.util.SystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Priority;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the rate at which, and the amount of requests that are processed concurrently for, every client.
+ *
+ * A client is identified by the combination of its IP address and the class of endpoint that is requested (as
+ * determined by the {@link RouteClassifier}). The X-Forwarded-For header is only used for requests that are received
+ * from a trusted proxy. Every client has a token bucket that is refilled at a constant rate, and a maximum amount of
+ * requests in flight. Requests that exceed either limit are rejected with a '429 Too Many Requests' response that
+ * includes a 'Retry-After' header.
+ *
+ * This filter runs before the authentication filter, so that requests with invalid credentials are limited too. For
+ * that reason, nothing that is provided by the client itself (such as a username, or a forwarded address from an
+ * untrusted source) is used to identify it, as a client could use a new value for every request to get a new bucket.
+ */
+@PreMatching
+@Priority(Priorities.AUTHENTICATION)
+public class RateLimitFilter implements ContainerRequestFilter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RateLimitFilter.class);
+
+    public static final SystemProperty<Boolean> ENABLED = SystemProperty.Builder.ofType(Boolean.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.ratelimit.enabled")
+        .setDefaultValue(false)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Integer> RATE = SystemProperty.Builder.ofType(Integer.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.ratelimit.rate")
+        .setDefaultValue(50)
+        .setMinValue(1)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Integer> BURST = SystemProperty.Builder.ofType(Integer.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.ratelimit.burst")
+        .setDefaultValue(100)
+        .setMinValue(1)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Integer> MAX_IN_FLIGHT = SystemProperty.Builder.ofType(Integer.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.ratelimit.max-in-flight")
+        .setDefaultValue(10)
+        .setMinValue(1)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Integer> MAX_CLIENTS = SystemProperty.Builder.ofType(Integer.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.ratelimit.max-clients")
+        .setDefaultValue(10000)
+        .setMinValue(1)
+        .setDynamic(true)
+        .build();
+
+    /** The name of the request property that holds the bucket of which a request occupies an in-flight slot. */
+    private static final String BUCKET_PROPERTY = RateLimitFilter.class.getName() + ".bucket";
+
+    private static final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private static final AtomicBoolean sweeping = new AtomicBoolean();
+
+    /** The minimum time between two sweeps of idle buckets, in nanoseconds. */
+    private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    /** The moment (in {@link System#nanoTime()}) of the last sweep of idle buckets. */
+    private static final AtomicLong lastSweep = new AtomicLong(System.nanoTime() - SWEEP_INTERVAL);
+
+    /** The bucket that is shared by clients that are not tracked, because the maximum number of clients is reached. */
+    private static final Bucket overflow = new Bucket();
+
+    private static final LongAdder rateRejections = new LongAdder();
+
+    private static final LongAdder concurrencyRejections = new LongAdder();
+
+    /** The http request. */
+    @Context
+    private HttpServletRequest httpRequest;
+
+    /** The plugin. */
+    private RESTServicePlugin plugin = (RESTServicePlugin) XMPPServer.getInstance().getPluginManager()
+            .getPlugin("restapi");
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        if (!ENABLED.getValue() || "OPTIONS".equals(requestContext.getMethod())) {
+            return;
+        }
+        final RouteClassifier.Route route = RouteClassifier.getRoute(requestContext);
+        if (route.getAccess() == RouteClassifier.Access.PUBLIC) {
+            return;
+        }
+
+        final String key = plugin.getClientAddress(httpRequest)
+            + '|' + route.getEndpointClass(requestContext.getMethod());
+        final Bucket bucket = getBucket(key);
+
+        final long wait = bucket.tryConsume(RATE.getValue(), BURST.getValue());
+        if (wait > 0) {
+            rateRejections.increment();
+            LOG.debug("Rejecting request, as the rate limit has been exceeded for client {}", key);
+            requestContext.abortWith(tooManyRequests("The rate limit has been exceeded.", route.getGroup(), TimeUnit.NANOSECONDS.toSeconds(wait) + 1));
+            return;
+        }
+
+        if (bucket.inFlight.incrementAndGet() > MAX_IN_FLIGHT.getValue()) {
+            bucket.inFlight.decrementAndGet();
+            concurrencyRejections.increment();
+            LOG.debug("Rejecting request, as too many requests are being processed for client {}", key);
+            requestContext.abortWith(tooManyRequests("Too many requests are being processed concurrently.", route.getGroup(), 1));
+            return;
+        }
+        requestContext.setProperty(BUCKET_PROPERTY, bucket);
+    }
+
+    /**
+     * Releases the in-flight slots of requests when they have finished, which includes writing the response body.
+     * Unlike a response filter, this is also invoked for requests that fail with an exception that is not mapped to a
+     * response.
+     */
+    public static class InFlightListener implements ApplicationEventListener {
+
+        @Override
+        public void onEvent(ApplicationEvent event) {
+        }
+
+        @Override
+        public RequestEventListener onRequest(RequestEvent requestEvent) {
+            return event -> {
+                if (event.getType() == RequestEvent.Type.FINISHED) {
+                    final Object bucket = event.getContainerRequest().getProperty(BUCKET_PROPERTY);
+                    if (bucket != null) {
+                        event.getContainerRequest().removeProperty(BUCKET_PROPERTY);
+                        ((Bucket) bucket).inFlight.decrementAndGet();
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * Returns the bucket of a client. When limits are tracked for the maximum number of clients, and none of these are
+     * idle, clients that are not tracked yet share one bucket.
+     */
+    private static Bucket getBucket(String key) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= MAX_CLIENTS.getValue()) {
+                sweep();
+                if (buckets.size() >= MAX_CLIENTS.getValue()) {
+                    return overflow;
+                }
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new Bucket());
+        }
+        return bucket;
+    }
+
+    /**
+     * Removes the buckets of clients that are idle: those that have a full bucket, and no requests in flight. To
+     * prevent every request from scanning all buckets when none are idle, this happens at most once per second.
+     */
+    private static void sweep() {
+        final long now = System.nanoTime();
+        final long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final Iterator<Bucket> iterator = buckets.values().iterator();
+            while (iterator.hasNext()) {
+                final Bucket bucket = iterator.next();
+                if (bucket.isIdle(now)) {
+                    iterator.remove();
+                }
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    private static Response tooManyRequests(String message, String resource, long retryAfterSeconds) {
+        final ErrorResponse errorResponse = new ErrorResponse();
+        errorResponse.setResource(resource);
+        errorResponse.setMessage(message);
+        errorResponse.setException(ExceptionType.RATE_LIMIT_EXCEEDED);
+        return Response.status(Response.Status.TOO_MANY_REQUESTS)
+            .header("Retry-After", retryAfterSeconds)
+            .entity(errorResponse)
+            .build();
+    }
+
+    /**
+     * A token bucket, implemented as a 'generic cell rate algorithm': instead of a token count, it keeps the
+     * theoretical arrival time of the next request. This allows the bucket to be updated with a single
+     * compare-and-set operation.
+     */
+    static class Bucket {
+
+        /** The moment (in {@link System#nanoTime()}) at which the bucket would be full again, if it isn't now. */
+        private final AtomicLong theoreticalArrivalTime;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        Bucket() {
+            this(System.nanoTime());
+        }
+
+        Bucket(long now) {
+            theoreticalArrivalTime = new AtomicLong(now);
+        }
+
+        /**
+         * Takes a token from the bucket.
+         *
+         * @param rate the amount of tokens that is added to the bucket each second
+         * @param burst the capacity of the bucket
+         * @return zero if a token was taken, otherwise the amount of nanoseconds after which a token is available.
+         */
+        private long tryConsume(int rate, int burst) {
+            return tryConsume(rate, burst, System.nanoTime());
+        }
+
+        /**
+         * Takes a token from the bucket, at a particular moment.
+         *
+         * @param rate the amount of tokens that is added to the bucket each second
+         * @param burst the capacity of the bucket
+         * @param now the current moment (in {@link System#nanoTime()})
+         * @return zero if a token was taken, otherwise the amount of nanoseconds after which a token is available.
+         */
+        long tryConsume(int rate, int burst, long now) {
+            final long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+            final long tolerance = interval * (burst - 1);
+            while (true) {
+                final long current = theoreticalArrivalTime.get();
+                final long base = current - now > 0 ? current : now;
+                final long wait = base - now - tolerance;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (theoreticalArrivalTime.compareAndSet(current, base + interval)) {
+                    return 0;
+                }
+            }
+        }
+
+        private boolean isIdle(long now) {
+            return inFlight.get() == 0 && theoreticalArrivalTime.get() - now <= 0;
+        }
+    }
+
+    public static Collection<RateLimitStatistic> generateAllStatisticInstances() {
+        final Collection<RateLimitStatistic> result = new ArrayList<>();
+        result.add(new RateLimitStatistic("rate", rateRejections));
+        result.add(new RateLimitStatistic("concurrency", concurrencyRejections));
+        return result;
+    }
+
+    public static class RateLimitStatistic extends i18nStatistic
+    {
+        public static final String GROUP = "restapi_ratelimit";
+
+        private final String name;
+
+        private final LongAdder rejections;
+
+        public RateLimitStatistic(@Nonnull final String name, @Nonnull final LongAdder rejections)
+        {
+            super(GROUP + "." + name, "restapi", Type.rate);
+            this.name = name;
+            this.rejections = rejections;
+        }
+
+        @Override
+        public double sample()
+        {
+            return rejections.sumThenReset();
+        }
+
+        @Override
+        public boolean isPartialSample()
+        {
+            return true;
+        }
+
+        public String getGroupName() {
+            return GROUP;
+        }
+
+        public String getKeyName() {
+            return GROUP + "_" + name;
+        }
+    }
+}
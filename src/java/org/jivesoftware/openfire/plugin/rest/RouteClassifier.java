@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jivesoftware.openfire.plugin.rest;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Path;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Collection;
+
+/**
+ * Classifies every request by its path, before any other filter is invoked, and attaches the resulting {@link Route}
+ * to the request. Other filters obtain the classification with {@link #getRoute(ContainerRequestContext)}, instead of
+ * inspecting the path themselves.
+ *
+ * Routes are compiled into a trie of path segments. Besides a fixed set of public and legacy routes, a route is
+ * registered for the first path segment (after the API version) of every service, which is used to tell classes of
+ * endpoints apart. Classifying a path does not allocate any objects.
+ */
+@PreMatching
+@Priority(Priorities.AUTHENTICATION - 100)
+public class RouteClassifier implements ContainerRequestFilter {
+
+    /** The path under which all endpoints of this plugin are served. */
+    public static final String BASE_PATH = "/plugins/restapi/v1";
+
+    /** The name of the request property that holds the route of a request. */
+    private static final String ROUTE_PROPERTY = RouteClassifier.class.getName() + ".route";
+
+    /** The route of requests that do not match any of the registered routes. */
+    private static final Route OTHER = new Route(Access.PROTECTED, "other");
+
+    /** Classifier that only knows about the fixed routes, used for requests that were not classified. */
+    private static final RouteClassifier DEFAULT = new RouteClassifier();
+
+    /**
+     * Determines what is needed to access a route.
+     */
+    public enum Access {
+        /** Can be accessed without authentication (documentation and status endpoints). */
+        PUBLIC,
+        /** The deprecated 'userservice' endpoint, which performs its own authentication. */
+        LEGACY,
+        /** Requires authentication. */
+        PROTECTED
+    }
+
+    private final Node root = new Node();
+
+    /**
+     * Creates a classifier that only knows about the fixed public and legacy routes.
+     */
+    public RouteClassifier() {
+        this(Collections.emptyList());
+    }
+
+    /**
+     * Creates a classifier that, next to the fixed routes, has a route for every (first path segment of a) service.
+     *
+     * @param services the classes that implement the endpoints, annotated with {@link Path}.
+     */
+    public RouteClassifier(Collection<Class<?>> services) {
+        add(BASE_PATH + "/openapi.yaml", false, new Route(Access.PUBLIC, "openapi"));
+        add(BASE_PATH + "/system/liveness", true, new Route(Access.PUBLIC, "system"));
+        add(BASE_PATH + "/system/readiness", true, new Route(Access.PUBLIC, "system"));
+        add(BASE_PATH + "/userservice", true, new Route(Access.LEGACY, "userservice"));
+        for (final Class<?> service : services) {
+            final Path path = service.getAnnotation(Path.class);
+            final String group = path == null ? null : getGroup(path.value());
+            if (group != null && !"userservice".equals(group)) {
+                add(BASE_PATH + "/" + group, true, new Route(Access.PROTECTED, group));
+            }
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        requestContext.setProperty(ROUTE_PROPERTY, classify(requestContext.getUriInfo().getRequestUri().getPath()));
+    }
+
+    /**
+     * Returns the route of a request.
+     *
+     * @param requestContext the request
+     * @return the route (never null).
+     */
+    public static Route getRoute(ContainerRequestContext requestContext) {
+        final Object route = requestContext.getProperty(ROUTE_PROPERTY);
+        if (route != null) {
+            return (Route) route;
+        }
+        final Route classified = DEFAULT.classify(requestContext.getUriInfo().getRequestUri().getPath());
+        requestContext.setProperty(ROUTE_PROPERTY, classified);
+        return classified;
+    }
+
+    /**
+     * Finds the route of a path: the one that is registered for the complete path, or otherwise the one that is
+     * registered for its longest prefix (of complete segments).
+     *
+     * @param path the absolute path of a request
+     * @return the route (never null).
+     */
+    public Route classify(String path) {
+        Route result = OTHER;
+        Node node = root;
+        int start = path.startsWith("/") ? 1 : 0;
+        while (node != null) {
+            if (node.prefixRoute != null) {
+                result = node.prefixRoute;
+            }
+            if (start > path.length()) {
+                return node.route != null ? node.route : result;
+            }
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            node = node.child(path, start, end);
+            start = end + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the first path segment after the API version of a (service) path, or null if it has none.
+     */
+    private static String getGroup(String path) {
+        final String[] segments = path.split("/");
+        if (segments.length < 3 || !"restapi".equals(segments[0]) || !"v1".equals(segments[1])
+            || segments[2].isEmpty() || segments[2].startsWith("{")) {
+            return null;
+        }
+        return segments[2];
+    }
+
+    private void add(String path, boolean prefix, Route route) {
+        Node node = root;
+        for (final String segment : path.substring(1).split("/")) {
+            node = node.getOrAddChild(segment);
+        }
+        if (prefix) {
+            node.prefixRoute = route;
+        } else {
+            node.route = route;
+        }
+    }
+
+    /**
+     * The classification of a request path.
+     */
+    public static final class Route {
+        private final Access access;
+        private final String group;
+        private final String readClass;
+        private final String writeClass;
+
+        private Route(Access access, String group) {
+            this.access = access;
+            this.group = group;
+            this.readClass = group + ":read";
+            this.writeClass = group + ":write";
+        }
+
+        /**
+         * Returns what is needed to access this route.
+         *
+         * @return the access level.
+         */
+        public Access getAccess() {
+            return access;
+        }
+
+        /**
+         * Returns the first path segment of the endpoint (after the API version), for example 'users' or 'chatrooms'.
+         *
+         * @return the group of endpoints.
+         */
+        public String getGroup() {
+            return group;
+        }
+
+        /**
+         * Returns a class of endpoints, consisting of the group of the endpoint and whether a request is read-only.
+         *
+         * @param method the HTTP method of the request
+         * @return the class of endpoints, for example 'users:read'.
+         */
+        public String getEndpointClass(String method) {
+            return "GET".equals(method) || "HEAD".equals(method) ? readClass : writeClass;
+        }
+
+        @Override
+        public String toString() {
+            return access + " " + group;
+        }
+    }
+
+    /**
+     * A node in the trie. The amount of children of every node is small, which makes a linear scan of their segments
+     * at least as fast as a hash lookup, while not requiring the segment to be extracted from the path.
+     */
+    private static final class Node {
+        private String[] segments = new String[0];
+        private Node[] children = new Node[0];
+        private Route route;
+        private Route prefixRoute;
+
+        private Node child(String path, int start, int end) {
+            final int length = end - start;
+            for (int i = 0; i < segments.length; i++) {
+                if (segments[i].length() == length && path.regionMatches(start, segments[i], 0, length)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node getOrAddChild(String segment) {
+            final Node existing = child(segment, 0, segment.length());
+            if (existing != null) {
+                return existing;
+            }
+            final Node child = new Node();
+            segments = Arrays.copyOf(segments, segments.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            segments[segments.length - 1] = segment;
+            children[children.length - 1] = child;
+            return child;
+        }
+    }
+}
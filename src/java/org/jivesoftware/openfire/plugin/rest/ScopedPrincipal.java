@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jivesoftware.openfire.plugin.rest;
+
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A caller of the REST API that is only allowed to perform the requests that are covered by its scopes, such as the
+ * bearer of a token or an API key.
+ */
+public class ScopedPrincipal implements Principal {
+
+    /** Scope that allows access to all endpoints. */
+    public static final String SCOPE_ADMIN = "admin";
+
+    /** Scope that allows read-only access (GET and HEAD requests) to all endpoints. */
+    public static final String SCOPE_READ_ONLY = "read-only";
+
+    /** Scope that allows access to the endpoints that manage chat rooms and chat services. */
+    public static final String SCOPE_MUC_ADMIN = "muc-admin";
+
+    /** Scope that allows access to the endpoints that manage users, groups and sessions. */
+    public static final String SCOPE_USER_ADMIN = "user-admin";
+
+    /** All scopes that are recognized. */
+    public static final Set<String> SCOPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(SCOPE_ADMIN, SCOPE_READ_ONLY, SCOPE_MUC_ADMIN, SCOPE_USER_ADMIN)));
+
+    private static final Set<String> MUC_GROUPS = new HashSet<>(Arrays.asList("chatrooms", "chatservices"));
+
+    private static final Set<String> USER_GROUPS = new HashSet<>(Arrays.asList("users", "groups", "lockouts", "sessions"));
+
+    private final String name;
+    private final Set<String> scopes;
+
+    public ScopedPrincipal(String name, Collection<String> scopes) {
+        this.name = name;
+        this.scopes = Collections.unmodifiableSet(new HashSet<>(scopes));
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the scopes that were granted to the caller.
+     *
+     * @return the scopes (never null).
+     */
+    public Set<String> getScopes() {
+        return scopes;
+    }
+
+    /**
+     * Checks if the scopes of the caller allow a request.
+     *
+     * @param route the route of the request
+     * @param method the HTTP method of the request
+     * @return true if the request is allowed.
+     */
+    public boolean isAllowed(RouteClassifier.Route route, String method) {
+        if (scopes.contains(SCOPE_ADMIN)) {
+            return true;
+        }
+        if (scopes.contains(SCOPE_READ_ONLY) && ("GET".equals(method) || "HEAD".equals(method))) {
+            return true;
+        }
+        if (scopes.contains(SCOPE_MUC_ADMIN) && MUC_GROUPS.contains(route.getGroup())) {
+            return true;
+        }
+        return scopes.contains(SCOPE_USER_ADMIN) && USER_GROUPS.contains(route.getGroup());
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + scopes;
+    }
+}
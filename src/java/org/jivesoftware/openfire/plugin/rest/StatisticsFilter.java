@@ -6,8 +6,10 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
 import javax.ws.rs.container.ContainerResponseContext;
 import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.PreMatching;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.util.Collection;
@@ -15,15 +17,37 @@ import java.util.HashSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
-public class StatisticsFilter implements ContainerResponseFilter
+@PreMatching
+public class StatisticsFilter implements ContainerRequestFilter, ContainerResponseFilter
 {
     private static final Logger Log = LoggerFactory.getLogger(StatisticsFilter.class);
 
+    /** The name of the request property that holds the moment (in {@link System#nanoTime()}) the request was received. */
+    private static final String START_TIME_PROPERTY = StatisticsFilter.class.getName() + ".startTime";
+
     private static final ConcurrentMap<Response.Status.Family, Long> ratePerFamily = new ConcurrentHashMap<>();
 
     private static ConcurrentMap<Response.Status.Family, Long> getStatsCollection() {
         return ratePerFamily;
     }
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException
+    {
+        requestContext.setProperty(START_TIME_PROPERTY, System.nanoTime());
+    }
+
+    /**
+     * Returns the time that has passed since a request was received.
+     *
+     * @param requestContext the request
+     * @return the elapsed time in nanoseconds, or -1 if it is not known when the request was received.
+     */
+    public static long getElapsedNanos(ContainerRequestContext requestContext)
+    {
+        final Object startTime = requestContext.getProperty(START_TIME_PROPERTY);
+        return startTime instanceof Long ? System.nanoTime() - (Long) startTime : -1;
+    }
+
     @Override
     public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException
     {
@@ -0,0 +1,404 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jivesoftware.openfire.plugin.rest.controller;
+
+import org.jivesoftware.database.DbConnectionManager;
+import org.jivesoftware.openfire.plugin.rest.ScopedPrincipal;
+import org.jivesoftware.openfire.plugin.rest.entity.ApiKeyEntities;
+import org.jivesoftware.openfire.plugin.rest.entity.ApiKeyEntity;
+import org.jivesoftware.openfire.plugin.rest.exceptions.ExceptionType;
+import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+import org.jivesoftware.util.SystemProperty;
+import org.jivesoftware.util.TaskEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.Response;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Manages API keys: credentials that are issued to individual clients of the REST API, each with its own scopes and
+ * (optional) expiry date.
+ *
+ * Keys consist of a public identifier and a secret, separated by a period. Only a SHA-256 hash of a key is stored in
+ * the database. All keys are kept in memory, indexed by their identifier, which allows a key to be verified without a
+ * database query. The moment a key was last used is written to the database periodically, in batches. The same task
+ * reloads all keys, which picks up changes that were made on other cluster nodes.
+ */
+public class ApiKeyController {
+    private static final Logger LOG = LoggerFactory.getLogger(ApiKeyController.class);
+
+    public static final SystemProperty<Duration> REFRESH_INTERVAL = SystemProperty.Builder.ofType(Duration.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.apikeys.refresh-interval")
+        .setDefaultValue(Duration.ofMinutes(1))
+        .setMinValue(Duration.ofSeconds(1))
+        .setChronoUnit(ChronoUnit.SECONDS)
+        .setDynamic(false)
+        .build();
+
+    private static final String LOAD_KEYS = "SELECT keyPrefix, keyHash, name, scopes, creationDate, expiryDate, lastUsedDate FROM ofRestApiKey";
+    private static final String INSERT_KEY = "INSERT INTO ofRestApiKey (keyPrefix, keyHash, name, scopes, creationDate, expiryDate, lastUsedDate) VALUES (?, ?, ?, ?, ?, ?, NULL)";
+    private static final String DELETE_KEY = "DELETE FROM ofRestApiKey WHERE keyPrefix=?";
+    private static final String UPDATE_LAST_USED = "UPDATE ofRestApiKey SET lastUsedDate=? WHERE keyPrefix=?";
+
+    private static final ApiKeyController INSTANCE = new ApiKeyController();
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /** The keys, indexed by their identifier (the part before the period). */
+    private final ConcurrentMap<String, StoredKey> keys = new ConcurrentHashMap<>();
+
+    /** The moments keys were last used, that have not yet been written to the database. */
+    private final ConcurrentMap<String, Long> pendingLastUsed = new ConcurrentHashMap<>();
+
+    private TimerTask refreshTask;
+
+    public static ApiKeyController getInstance() {
+        return INSTANCE;
+    }
+
+    private ApiKeyController() {
+    }
+
+    /**
+     * Loads all keys, and starts periodically writing usage and reloading keys.
+     */
+    public synchronized void start() {
+        try {
+            reload();
+        } catch (SQLException e) {
+            LOG.error("Unable to load the API keys of the REST API.", e);
+        }
+        refreshTask = new TimerTask() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        };
+        final long interval = REFRESH_INTERVAL.getValue().toMillis();
+        TaskEngine.getInstance().schedule(refreshTask, interval, interval);
+    }
+
+    /**
+     * Stops the periodic task, after writing usage that has not yet been written.
+     */
+    public synchronized void shutdown() {
+        if (refreshTask != null) {
+            TaskEngine.getInstance().cancelScheduledTask(refreshTask);
+            refreshTask = null;
+        }
+        try {
+            flushLastUsed();
+        } catch (SQLException e) {
+            LOG.warn("Unable to store when API keys of the REST API were last used.", e);
+        }
+        keys.clear();
+    }
+
+    /**
+     * Verifies an API key.
+     *
+     * @param key the key, as provided by a client
+     * @return the client that the key was issued to, or null if the key is not valid or has expired.
+     */
+    public ScopedPrincipal authenticate(String key) {
+        final int period = key.indexOf('.');
+        if (period <= 0) {
+            return null;
+        }
+        final StoredKey stored = keys.get(key.substring(0, period));
+        if (stored == null || !MessageDigest.isEqual(stored.hash, hash(key))) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        if (stored.expiryDate != null && now >= stored.expiryDate) {
+            LOG.debug("API key {} has expired.", stored.prefix);
+            return null;
+        }
+        stored.lastUsedDate = now;
+        pendingLastUsed.put(stored.prefix, now);
+        return stored.principal;
+    }
+
+    /**
+     * Returns all keys (without the keys themselves).
+     *
+     * @return the keys, ordered by creation date.
+     */
+    public ApiKeyEntities getApiKeys() {
+        final List<ApiKeyEntity> result = new ArrayList<>();
+        for (final StoredKey stored : keys.values()) {
+            result.add(stored.toEntity());
+        }
+        result.sort(Comparator.comparing(ApiKeyEntity::getCreationDate));
+        return new ApiKeyEntities(result);
+    }
+
+    /**
+     * Creates a new key. The key itself is only included in the returned entity, and cannot be retrieved later.
+     *
+     * @param entity the name, scopes and expiry date of the key
+     * @return the new key
+     * @throws ServiceException when the scopes are invalid, or the key cannot be stored
+     */
+    public ApiKeyEntity createApiKey(ApiKeyEntity entity) throws ServiceException {
+        if (entity == null || entity.getScopes() == null || entity.getScopes().isEmpty()) {
+            throw new ServiceException("At least one scope is required", "scopes",
+                ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION, Response.Status.BAD_REQUEST);
+        }
+        for (final String scope : entity.getScopes()) {
+            if (!ScopedPrincipal.SCOPES.contains(scope)) {
+                throw new ServiceException("Unknown scope. Valid scopes are: " + ScopedPrincipal.SCOPES, scope,
+                    ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION, Response.Status.BAD_REQUEST);
+            }
+        }
+        final long now = System.currentTimeMillis();
+        if (entity.getExpiryDate() != null && entity.getExpiryDate().getTime() <= now) {
+            throw new ServiceException("The expiry date must be in the future", "expiryDate",
+                ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION, Response.Status.BAD_REQUEST);
+        }
+
+        final String prefix = randomString(9);
+        final String key = prefix + '.' + randomString(24);
+        final StoredKey stored = new StoredKey(prefix, hash(key), entity.getName(), new ArrayList<>(entity.getScopes()),
+            now, entity.getExpiryDate() == null ? null : entity.getExpiryDate().getTime(), null);
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = DbConnectionManager.getConnection();
+            pstmt = con.prepareStatement(INSERT_KEY);
+            pstmt.setString(1, prefix);
+            pstmt.setString(2, toHex(stored.hash));
+            pstmt.setString(3, stored.name);
+            pstmt.setString(4, String.join(" ", stored.scopes));
+            pstmt.setLong(5, stored.creationDate);
+            if (stored.expiryDate == null) {
+                pstmt.setNull(6, Types.BIGINT);
+            } else {
+                pstmt.setLong(6, stored.expiryDate);
+            }
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new ServiceException("Could not store the API key", prefix,
+                ExceptionType.DATABASE_EXCEPTION, Response.Status.INTERNAL_SERVER_ERROR, e);
+        } finally {
+            DbConnectionManager.closeConnection(pstmt, con);
+        }
+
+        synchronized (this) {
+            keys.put(prefix, stored);
+        }
+        final ApiKeyEntity result = stored.toEntity();
+        result.setKey(key);
+        return result;
+    }
+
+    /**
+     * Deletes a key, which can no longer be used from then on (on other cluster nodes: after the next refresh).
+     *
+     * @param id the identifier of the key
+     * @throws ServiceException when the key does not exist, or cannot be deleted
+     */
+    public void deleteApiKey(String id) throws ServiceException {
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = DbConnectionManager.getConnection();
+            pstmt = con.prepareStatement(DELETE_KEY);
+            pstmt.setString(1, id);
+            if (pstmt.executeUpdate() == 0) {
+                throw new ServiceException("Could not find API key", id,
+                    ExceptionType.API_KEY_NOT_FOUND, Response.Status.NOT_FOUND);
+            }
+        } catch (SQLException e) {
+            throw new ServiceException("Could not delete the API key", id,
+                ExceptionType.DATABASE_EXCEPTION, Response.Status.INTERNAL_SERVER_ERROR, e);
+        } finally {
+            DbConnectionManager.closeConnection(pstmt, con);
+        }
+        synchronized (this) {
+            keys.remove(id);
+            pendingLastUsed.remove(id);
+        }
+    }
+
+    private void refresh() {
+        try {
+            flushLastUsed();
+            reload();
+        } catch (SQLException | RuntimeException e) {
+            LOG.warn("Unable to refresh the API keys of the REST API.", e);
+        }
+    }
+
+    /**
+     * Writes the moments keys were last used to the database, in a single batch.
+     */
+    private void flushLastUsed() throws SQLException {
+        if (pendingLastUsed.isEmpty()) {
+            return;
+        }
+        final Map<String, Long> batch = new HashMap<>(pendingLastUsed);
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = DbConnectionManager.getConnection();
+            pstmt = con.prepareStatement(UPDATE_LAST_USED);
+            for (final Map.Entry<String, Long> entry : batch.entrySet()) {
+                pstmt.setLong(1, entry.getValue());
+                pstmt.setString(2, entry.getKey());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        } finally {
+            DbConnectionManager.closeConnection(pstmt, con);
+        }
+        for (final Map.Entry<String, Long> entry : batch.entrySet()) {
+            // Keep more recent usage, that was recorded while writing, for the next batch.
+            pendingLastUsed.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Replaces the keys in memory with those in the database.
+     */
+    private synchronized void reload() throws SQLException {
+        final Map<String, StoredKey> loaded = new HashMap<>();
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            con = DbConnectionManager.getConnection();
+            pstmt = con.prepareStatement(LOAD_KEYS);
+            rs = pstmt.executeQuery();
+            while (rs.next()) {
+                final String prefix = rs.getString(1);
+                final String scopes = rs.getString(4);
+                final long expiryDate = rs.getLong(6);
+                final Long expiry = rs.wasNull() ? null : expiryDate;
+                final long lastUsedDate = rs.getLong(7);
+                final Long lastUsed = rs.wasNull() ? null : lastUsedDate;
+                loaded.put(prefix, new StoredKey(prefix, fromHex(rs.getString(2).trim()), rs.getString(3),
+                    scopes == null || scopes.trim().isEmpty() ? Collections.emptyList() : Arrays.asList(scopes.trim().split("\\s+")),
+                    rs.getLong(5), expiry, lastUsed));
+            }
+        } finally {
+            DbConnectionManager.closeConnection(rs, pstmt, con);
+        }
+
+        for (final StoredKey stored : loaded.values()) {
+            final StoredKey existing = keys.get(stored.prefix);
+            if (existing != null && existing.lastUsedDate != null && (stored.lastUsedDate == null || existing.lastUsedDate > stored.lastUsedDate)) {
+                stored.lastUsedDate = existing.lastUsedDate;
+            }
+        }
+        keys.keySet().retainAll(loaded.keySet());
+        keys.putAll(loaded);
+    }
+
+    private static byte[] hash(String key) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String randomString(int bytes) {
+        final byte[] random = new byte[bytes];
+        RANDOM.nextBytes(random);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(random).replace('-', 'A').replace('_', 'B');
+    }
+
+    private static String toHex(byte[] bytes) {
+        final StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        final byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /**
+     * A key, as it is kept in memory.
+     */
+    private static class StoredKey {
+        private final String prefix;
+        private final byte[] hash;
+        private final String name;
+        private final List<String> scopes;
+        private final long creationDate;
+        private final Long expiryDate;
+        private final ScopedPrincipal principal;
+        private volatile Long lastUsedDate;
+
+        private StoredKey(String prefix, byte[] hash, String name, List<String> scopes, long creationDate, Long expiryDate, Long lastUsedDate) {
+            this.prefix = prefix;
+            this.hash = hash;
+            this.name = name;
+            this.scopes = scopes;
+            this.creationDate = creationDate;
+            this.expiryDate = expiryDate;
+            this.lastUsedDate = lastUsedDate;
+            this.principal = new ScopedPrincipal(name == null || name.isEmpty() ? prefix : name, scopes);
+        }
+
+        private ApiKeyEntity toEntity() {
+            final ApiKeyEntity entity = new ApiKeyEntity();
+            entity.setId(prefix);
+            entity.setName(name);
+            entity.setScopes(scopes);
+            entity.setCreationDate(new Date(creationDate));
+            entity.setExpiryDate(expiryDate == null ? null : new Date(expiryDate));
+            final Long lastUsed = lastUsedDate;
+            entity.setLastUsedDate(lastUsed == null ? null : new Date(lastUsed));
+            return entity;
+        }
+    }
+}
@@ -18,10 +18,8 @@ package org.jivesoftware.openfire.plugin.rest.controller;
 import org.jivesoftware.openfire.cluster.ClusterManager;
 import org.jivesoftware.openfire.cluster.ClusterNodeInfo;
 import org.jivesoftware.openfire.cluster.NodeID;
-import org.jivesoftware.openfire.plugin.rest.RESTServicePlugin;
 import org.jivesoftware.openfire.plugin.rest.entity.ClusterNodeEntities;
 import org.jivesoftware.openfire.plugin.rest.entity.ClusterNodeEntity;
-import org.jivesoftware.util.JiveGlobals;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,12 +54,6 @@ public class ClusteringController {
         ClusteringController.INSTANCE = instance;
     }
 
-    public static void log(String logMessage) {
-        if (JiveGlobals.getBooleanProperty(RESTServicePlugin.SERVICE_LOGGING_ENABLED, false)) {
-            LOG.info(logMessage);
-        }
-    }
-
     public String getClusterStatus() {
         if (ClusterManager.isClusteringEnabled()) {
             if (ClusterManager.isClusteringStarted()) {
@@ -18,6 +18,8 @@ package org.jivesoftware.openfire.plugin.rest.controller;
 
 import java.util.*;
 
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import org.jivesoftware.openfire.XMPPServer;
@@ -28,6 +30,8 @@ import org.jivesoftware.openfire.group.GroupNotFoundException;
 import org.jivesoftware.openfire.plugin.rest.entity.GroupEntity;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ExceptionType;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+import org.jivesoftware.openfire.plugin.rest.utils.EntityTagUtils;
+import org.jivesoftware.openfire.plugin.rest.utils.EntityVersions;
 import org.jivesoftware.openfire.plugin.rest.utils.MUCRoomUtils;
 import org.xmpp.packet.JID;
 
@@ -91,6 +95,28 @@ public class GroupController {
         return groupEntity;
     }
 
+    /**
+     * Gets an entity tag that identifies the current state of a group, without building its entity representation.
+     *
+     * @param groupName
+     *            the group name
+     * @param mediaType
+     *            the media type of the representation
+     * @return the entity tag
+     * @throws ServiceException
+     *             the service exception
+     */
+    public EntityTag getGroupEntityTag(String groupName, MediaType mediaType) throws ServiceException {
+        Group group;
+        try {
+            group = GroupManager.getInstance().getGroup(groupName);
+        } catch (GroupNotFoundException e) {
+            throw new ServiceException("Could not find group", groupName, ExceptionType.GROUP_NOT_FOUND,
+                    Response.Status.NOT_FOUND, e);
+        }
+        return EntityTagUtils.createEntityTag(mediaType, null, EntityVersions.getInstance().getGroupVersion(group.getName()));
+    }
+
     /**
      * Creates the group.
      *
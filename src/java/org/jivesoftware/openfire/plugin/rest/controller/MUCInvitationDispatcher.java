@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jivesoftware.openfire.plugin.rest.controller;
+
+import org.jivesoftware.openfire.group.Group;
+import org.jivesoftware.openfire.muc.CannotBeInvitedException;
+import org.jivesoftware.openfire.muc.ForbiddenException;
+import org.jivesoftware.openfire.muc.MUCRole;
+import org.jivesoftware.openfire.muc.MUCRoom;
+import org.jivesoftware.openfire.muc.MultiUserChatService;
+import org.jivesoftware.openfire.plugin.rest.entity.InvitationJobEntities;
+import org.jivesoftware.openfire.plugin.rest.entity.InvitationJobEntity;
+import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+import org.jivesoftware.openfire.plugin.rest.utils.GroupResolver;
+import org.jivesoftware.openfire.plugin.rest.utils.ServiceLogger;
+import org.jivesoftware.openfire.plugin.rest.utils.UserUtils;
+import org.jivesoftware.util.NamedThreadFactory;
+import org.jivesoftware.util.SystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.JID;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Delivers invitations to join a chat room in the background.
+ *
+ * Invitations are queued while the room lock is held, but are sent later, outside of the request that caused them.
+ * Groups are expanded to their members without holding the room lock, and every user receives at most one invitation
+ * per job, even if it is affiliated through more than one group. Invitations are then sent in small batches, re-acquiring
+ * the room lock for every batch, at a rate that is shared by all jobs.
+ */
+public class MUCInvitationDispatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(MUCInvitationDispatcher.class);
+    private static final ServiceLogger SERVICE_LOG = ServiceLogger.getLogger(MUCInvitationDispatcher.class);
+
+    public static final SystemProperty<Integer> RATE = SystemProperty.Builder.ofType(Integer.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.muc.invitations.rate")
+        .setDefaultValue(500)
+        .setMinValue(1)
+        .setDynamic(true)
+        .build();
+
+    /** The interval at which a batch of invitations is sent. */
+    private static final long TICK_MILLIS = 100;
+
+    /** The number of threads that send invitations. */
+    private static final int DELIVERY_THREADS = 2;
+
+    /** The period after which the progress of a finished job is no longer available. */
+    private static final Duration RETENTION = Duration.ofHours(1);
+
+    private static final MUCInvitationDispatcher INSTANCE = new MUCInvitationDispatcher();
+
+    public static MUCInvitationDispatcher getInstance() {
+        return INSTANCE;
+    }
+
+    private final Map<String, InvitationJob> jobs = new ConcurrentHashMap<>();
+
+    private ScheduledThreadPoolExecutor executor;
+
+    private MUCInvitationDispatcher() {
+    }
+
+    /**
+     * Queues invitations to a room. The recipients can be users as well as groups, of which all members are invited.
+     *
+     * @param service the service that contains the room
+     * @param roomName the name of the room
+     * @param invitations the reason of the invitation, by recipient. Earlier entries take precedence over later entries
+     *                    for users that are a member of more than one group.
+     */
+    public void enqueue(@Nonnull final MultiUserChatService service, @Nonnull final String roomName, @Nonnull final Map<JID, String> invitations) {
+        if (invitations.isEmpty()) {
+            return;
+        }
+        final InvitationJob job = new InvitationJob(service, roomName, new LinkedHashMap<>(invitations));
+        synchronized (this) {
+            purge();
+            jobs.put(job.id, job);
+            job.schedule(getExecutor());
+        }
+    }
+
+    /**
+     * Returns the progress of invitations to a room that are being delivered, or that have finished recently.
+     *
+     * @param service the service that contains the room
+     * @param roomName the name of the room
+     * @return the jobs, ordered by creation date
+     */
+    public InvitationJobEntities getJobs(@Nonnull final MultiUserChatService service, @Nonnull final String roomName) {
+        purge();
+        final List<InvitationJobEntity> result = new ArrayList<>();
+        jobs.values().stream()
+            .filter(job -> job.service == service && job.roomName.equals(roomName))
+            .sorted(Comparator.comparing(job -> job.creationDate))
+            .forEach(job -> result.add(job.toEntity()));
+        return new InvitationJobEntities(result);
+    }
+
+    /**
+     * Stops delivering invitations, and releases the threads used to deliver them.
+     */
+    public synchronized void shutdown() {
+        jobs.clear();
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private synchronized ScheduledThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ScheduledThreadPoolExecutor(DELIVERY_THREADS,
+                new NamedThreadFactory("restapi-muc-invitations-", true, null, null, null));
+            executor.setRemoveOnCancelPolicy(true);
+        }
+        return executor;
+    }
+
+    private int getActiveJobCount() {
+        int result = 0;
+        for (final InvitationJob job : jobs.values()) {
+            if (!job.status.isFinished()) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    private void purge() {
+        final long threshold = System.currentTimeMillis() - RETENTION.toMillis();
+        jobs.values().removeIf(job -> job.completionDate != null && job.completionDate.getTime() < threshold);
+    }
+
+    private enum JobStatus {
+        Queued, Running, Completed, Failed;
+
+        boolean isFinished() {
+            return this == Completed || this == Failed;
+        }
+    }
+
+    private class InvitationJob {
+        private final String id = UUID.randomUUID().toString();
+        private final Date creationDate = new Date();
+        private final MultiUserChatService service;
+        private final String roomName;
+        private final Map<JID, String> targets;
+        private final AtomicInteger sent = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        private volatile JobStatus status = JobStatus.Queued;
+        private volatile Date completionDate;
+        private volatile List<Map.Entry<JID, String>> recipients;
+        private volatile ScheduledFuture<?> future;
+
+        /** Only accessed by the task that delivers the invitations, which never runs concurrently with itself. */
+        private int next;
+
+        private InvitationJob(MultiUserChatService service, String roomName, Map<JID, String> targets) {
+            this.service = service;
+            this.roomName = roomName;
+            this.targets = targets;
+        }
+
+        private void schedule(ScheduledThreadPoolExecutor executor) {
+            future = executor.scheduleAtFixedRate(this::tick, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+            if (status.isFinished()) {
+                // Finished before the future was available to be cancelled.
+                future.cancel(false);
+            }
+        }
+
+        private void tick() {
+            if (status.isFinished()) {
+                return;
+            }
+            try {
+                if (recipients == null) {
+                    status = JobStatus.Running;
+                    recipients = resolveRecipients();
+                }
+                final int active = Math.max(1, getActiveJobCount());
+                final int batchSize = (int) Math.max(1, RATE.getValue() * TICK_MILLIS / 1000 / active);
+                final int end = Math.min(recipients.size(), next + batchSize);
+                if (next < end) {
+                    sendBatch(end);
+                }
+                if (next >= recipients.size()) {
+                    // Every invitation was delivered, so the job is completed, even if the room can not be synchronized.
+                    syncRoomAfterDelivery();
+                    finish(JobStatus.Completed);
+                }
+            } catch (ServiceException e) {
+                LOG.debug("Unable to send invitations to room '{}', as it is no longer available.", roomName, e);
+                failed.addAndGet(recipients.size() - next);
+                finish(JobStatus.Failed);
+            } catch (RuntimeException e) {
+                LOG.warn("Unable to send invitations to room '{}'", roomName, e);
+                try {
+                    syncRoom();
+                } catch (ServiceException | RuntimeException ex) {
+                    LOG.debug("Unable to synchronize room '{}' after invitations failed.", roomName, ex);
+                }
+                finish(JobStatus.Failed);
+            }
+        }
+
+        private void syncRoomAfterDelivery() {
+            try {
+                syncRoom();
+            } catch (ServiceException e) {
+                LOG.debug("Unable to synchronize room '{}' after all invitations were sent, as it is no longer available.", roomName, e);
+            } catch (RuntimeException e) {
+                LOG.warn("Unable to synchronize room '{}' after all invitations were sent.", roomName, e);
+            }
+        }
+
+        /**
+         * Makes sure that other cluster nodes see the members that were added to a members-only room by the
+         * invitations sent so far. This is done once per job, rather than after every batch.
+         */
+        private void syncRoom() throws ServiceException {
+            if (sent.get() == 0) {
+                return;
+            }
+            final Lock lock = MUCRoomController.getLock(service, roomName);
+            lock.lock();
+            try {
+                final MUCRoom room = MUCRoomController.getRoom(service, roomName);
+                if (room.isMembersOnly()) {
+                    // Invitations to members-only rooms can cause the recipient to become a member.
+                    MUCRoomController.syncChatRoom(service, room);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void sendBatch(int end) throws ServiceException {
+            final Lock lock = MUCRoomController.getLock(service, roomName);
+            lock.lock();
+            try {
+                final MUCRoom room = MUCRoomController.getRoom(service, roomName);
+                final MUCRole roomRole = MUCRole.createRoomRole(room);
+                for (; next < end; next++) {
+                    final Map.Entry<JID, String> recipient = recipients.get(next);
+                    try {
+                        room.sendInvitation(recipient.getKey(), recipient.getValue(), roomRole, null);
+                        sent.incrementAndGet();
+                    } catch (CannotBeInvitedException | ForbiddenException e) {
+                        SERVICE_LOG.log("User {} can not be invited to room {}", recipient.getKey(), roomName);
+                        failed.incrementAndGet();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private synchronized void finish(JobStatus finalStatus) {
+            if (status.isFinished()) {
+                return;
+            }
+            status = finalStatus;
+            completionDate = new Date();
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        /**
+         * Replaces groups by their members, making sure that every user is invited only once.
+         */
+        private List<Map.Entry<JID, String>> resolveRecipients() {
+            final Map<JID, String> result = new LinkedHashMap<>();
+            for (final Map.Entry<JID, String> target : targets.entrySet()) {
+                final Group group = UserUtils.getGroupIfIsGroup(target.getKey());
+                if (group != null) {
+                    for (final JID member : GroupResolver.getInstance().getMembers(group)) {
+                        result.putIfAbsent(member.asBareJID(), target.getValue());
+                    }
+                } else {
+                    result.putIfAbsent(target.getKey().asBareJID(), target.getValue());
+                }
+            }
+            return new ArrayList<>(result.entrySet());
+        }
+
+        private InvitationJobEntity toEntity() {
+            final InvitationJobEntity entity = new InvitationJobEntity();
+            entity.setJobId(id);
+            entity.setRoomName(roomName);
+            entity.setStatus(status.name());
+            final List<Map.Entry<JID, String>> resolved = recipients;
+            entity.setRecipients(resolved == null ? 0 : resolved.size());
+            entity.setSent(sent.get());
+            entity.setFailed(failed.get());
+            entity.setCreationDate(creationDate);
+            entity.setCompletionDate(completionDate);
+            return entity;
+        }
+    }
+}
@@ -17,21 +17,26 @@
 package org.jivesoftware.openfire.plugin.rest.controller;
 
 import org.dom4j.Element;
+import org.jivesoftware.database.DbConnectionManager;
 import org.jivesoftware.openfire.XMPPServer;
-import org.jivesoftware.openfire.group.ConcurrentGroupList;
 import org.jivesoftware.openfire.group.Group;
 import org.jivesoftware.openfire.muc.*;
 import org.jivesoftware.openfire.muc.spi.MUCRoomSearchInfo;
-import org.jivesoftware.openfire.plugin.rest.RESTServicePlugin;
 import org.jivesoftware.openfire.plugin.rest.entity.*;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ExceptionType;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+import org.jivesoftware.openfire.plugin.rest.utils.EntityTagUtils;
+import org.jivesoftware.openfire.plugin.rest.utils.EntityVersions;
+import org.jivesoftware.openfire.plugin.rest.utils.GroupResolver;
 import org.jivesoftware.openfire.plugin.rest.utils.MUCRoomUtils;
+import org.jivesoftware.openfire.plugin.rest.utils.ServiceLogger;
+import org.jivesoftware.openfire.plugin.rest.utils.StreamingUtils;
 import org.jivesoftware.openfire.plugin.rest.utils.UserUtils;
 import org.jivesoftware.util.AlreadyExistsException;
-import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.NamedThreadFactory;
 import org.jivesoftware.util.StringUtils;
 import org.jivesoftware.util.SystemProperty;
+import org.jivesoftware.util.XMPPDateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xmpp.packet.JID;
@@ -39,12 +44,27 @@ import org.xmpp.packet.Message;
 import org.xmpp.packet.Presence;
 
 import javax.annotation.Nonnull;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiFunction;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -52,6 +72,7 @@ import java.util.stream.Collectors;
  */
 public class MUCRoomController {
     private static final Logger LOG = LoggerFactory.getLogger(MUCRoomController.class);
+    private static final ServiceLogger SERVICE_LOG = ServiceLogger.getLogger(MUCRoomController.class);
 
     /**
      * Names of MUC rooms _should_ be node-prepped. This, however, was not guaranteed the case in some versions of Openfire and this plugin.
@@ -77,9 +98,33 @@ public class MUCRoomController {
         .setDynamic(true)
         .build();
 
+    public static final SystemProperty<Integer> AFFILIATION_BATCH_MAX_JIDS = SystemProperty.Builder.ofType(Integer.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.muc.affiliations.batch.max-jids")
+        .setDefaultValue(10000)
+        .setMinValue(1)
+        .setDynamic(true)
+        .build();
+
+    /** The Constant AFFILIATION_BATCH_THREADS. The maximum number of rooms of which affiliations are changed concurrently. */
+    private static final int AFFILIATION_BATCH_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    /** The Constant SELECT_CONVERSATION_LOG. Filters are appended to this, followed by ORDER_CONVERSATION_LOG. */
+    private static final String SELECT_CONVERSATION_LOG = "SELECT messageID, logTime, sender, nickname, subject, body, stanza " +
+        "FROM ofMucConversationLog WHERE roomID = ?";
+
+    /** The Constant ORDER_CONVERSATION_LOG. The order must match the keyset that is used for pagination. */
+    private static final String ORDER_CONVERSATION_LOG = " ORDER BY logTime, messageID";
+
+    /** The Constant CONVERSATION_LOG_FETCH_SIZE. The amount of rows that the database driver is asked to fetch per round-trip. */
+    private static final int CONVERSATION_LOG_FETCH_SIZE = 500;
+
     /** The Constant INSTANCE. */
     private static MUCRoomController INSTANCE = null;
 
+    /** Applies batched affiliation changes, created when first needed. */
+    private ThreadPoolExecutor affiliationExecutor;
+
     /**
      * Gets the single instance of MUCRoomController.
      *
@@ -101,16 +146,16 @@ public class MUCRoomController {
         MUCRoomController.INSTANCE = instance;
     }
 
-    public static void log(String logMessage) {
-        if (JiveGlobals.getBooleanProperty(RESTServicePlugin.SERVICE_LOGGING_ENABLED, false)) {
-            LOG.info(logMessage);
-        }
-    }
-
-    public static void log(String logMessage, Throwable t) {
-        if (JiveGlobals.getBooleanProperty(RESTServicePlugin.SERVICE_LOGGING_ENABLED, false)) {
-            LOG.info(logMessage, t);
-        }
+    /**
+     * Makes sure that other cluster nodes see the changes made to a room, changes the entity tag of the room, and
+     * discards any snapshot of the room.
+     *
+     * This method should only be invoked after the caller has obtained and engaged a lock, using {@link #getLock(MultiUserChatService, String)}.
+     */
+    static void syncChatRoom(@Nonnull final MultiUserChatService service, @Nonnull final MUCRoom room) {
+        service.syncChatRoom(room);
+        EntityVersions.getInstance().roomModified(room.getJID());
+        MUCRoomSnapshotCache.getInstance().invalidate(room.getJID());
     }
 
     public static Lock getLock(@Nonnull final MultiUserChatService service, @Nonnull final String roomName) {
@@ -180,7 +225,7 @@ public class MUCRoomController {
      */
     public MUCRoomEntities getChatRooms(String serviceName, String channelType, String roomSearch, boolean expand) throws ServiceException
     {
-        log("Get the chat rooms");
+        SERVICE_LOG.log("Get the chat rooms");
         final MultiUserChatService service = MUCServiceController.getService(serviceName);
         Collection<MUCRoomSearchInfo> roomsInfo = service.getAllRoomSearchInfo();
 
@@ -231,7 +276,7 @@ public class MUCRoomController {
      *             the service exception
      */
     public MUCRoomEntity getChatRoom(String roomName, String serviceName, boolean expand) throws ServiceException {
-        log("Get the chat room: " + roomName);
+        SERVICE_LOG.log("Get the chat room: {}", roomName);
 
         final MUCRoom chatRoom;
 
@@ -246,6 +291,108 @@ public class MUCRoomController {
         return convertToMUCRoomEntity(chatRoom, expand);
     }
 
+    /**
+     * Gets the chat room along with an entity tag that identifies the state that its entity representation was
+     * created from.
+     *
+     * While holding the room lock, only the entity tag is created and the state of the room is copied. The entity
+     * representation is completed (which includes looking up groups) after the lock is released. When the entity tag
+     * satisfies the provided condition (typically: it matches the entity tag of a representation that the client
+     * already has), the state is not copied, and the returned instance holds only the entity tag.
+     *
+     * @param roomName
+     *            the room name
+     * @param serviceName
+     *            the service name
+     * @param expand
+     *            whether groups in affiliations are to be expanded to their members
+     * @param mediaType
+     *            the media type of the representation
+     * @param notModified
+     *            determines if the entity representation can be omitted, based on the entity tag
+     * @return the chat room and its entity tag. The entity tag is null when groups are to be expanded, as the
+     *            representation then depends on the members of groups, which are not reflected in the state of the room.
+     * @throws ServiceException
+     *             the service exception
+     */
+    public TaggedChatRoom getTaggedChatRoom(String roomName, String serviceName, boolean expand, MediaType mediaType, Predicate<EntityTag> notModified) throws ServiceException {
+        SERVICE_LOG.log("Get the chat room: {}", roomName);
+
+        final EntityTag entityTag;
+        final MUCRoomEntity mucRoomEntity;
+        final RoomAffiliationSnapshot affiliations;
+        final MultiUserChatService service = MUCServiceController.getService(serviceName);
+        final Lock lock = getLock(service, roomName);
+        lock.lock();
+        try {
+            final MUCRoom chatRoom = getRoom(service, roomName);
+            entityTag = expand ? null : createEntityTag(chatRoom, mediaType);
+            if (entityTag != null && notModified.test(entityTag)) {
+                return new TaggedChatRoom(null, entityTag);
+            }
+            mucRoomEntity = copyRoomState(chatRoom);
+            affiliations = RoomAffiliationSnapshot.of(chatRoom);
+        } finally {
+            lock.unlock();
+        }
+        setAffiliations(mucRoomEntity, affiliations, expand);
+        return new TaggedChatRoom(mucRoomEntity, entityTag);
+    }
+
+    /**
+     * Creates an entity tag that identifies the current state of a chat room, from its modification date and its
+     * version (see {@link EntityVersions}). The caller is expected to hold the room lock.
+     *
+     * @param room the room
+     * @param mediaType the media type of the representation
+     * @return the entity tag of the unexpanded entity representation of the room
+     */
+    private static EntityTag createEntityTag(MUCRoom room, MediaType mediaType) {
+        return EntityTagUtils.createEntityTag(mediaType, room.getModificationDate(), EntityVersions.getInstance().getRoomVersion(room.getJID()));
+    }
+
+    /**
+     * Gets a chat room from a snapshot that is not necessarily consistent with the latest state of the room, but that
+     * can be obtained without locking the room.
+     *
+     * @param roomName
+     *            the room name
+     * @param serviceName
+     *            the service name
+     * @param expand
+     *            whether groups in affiliations are to be expanded to their members
+     * @param mediaType
+     *            the media type of the representation
+     * @return the chat room and the entity tag of the state that the snapshot was created from (null when groups are
+     *            to be expanded)
+     * @throws ServiceException
+     *             the service exception
+     * @see MUCRoomSnapshotCache
+     */
+    public TaggedChatRoom getChatRoomSnapshot(String roomName, String serviceName, boolean expand, MediaType mediaType) throws ServiceException {
+        SERVICE_LOG.log("Get the chat room snapshot: {}", roomName);
+        final MultiUserChatService service = MUCServiceController.getService(serviceName);
+        return MUCRoomSnapshotCache.getInstance().get(service, roomName, expand, mediaType);
+    }
+
+    /**
+     * Gets the progress of invitations to a chat room that are being delivered in the background, or that have
+     * finished recently.
+     *
+     * @param roomName
+     *            the room name
+     * @param serviceName
+     *            the service name
+     * @return the invitation jobs of the room
+     * @throws ServiceException
+     *             when the service does not exist
+     * @see MUCInvitationDispatcher
+     */
+    public InvitationJobEntities getInvitationJobs(String roomName, String serviceName) throws ServiceException {
+        final MultiUserChatService service = MUCServiceController.getService(serviceName);
+        return MUCInvitationDispatcher.getInstance().getJobs(service, roomName);
+    }
+
     /**
      * Delete chat room.
      *
@@ -257,19 +404,17 @@ public class MUCRoomController {
      *             the service exception
      */
     public void deleteChatRoom(String roomName, String serviceName) throws ServiceException {
-        log("Delete the chat room: " + roomName);
+        SERVICE_LOG.log("Delete the chat room: {}", roomName);
 
         final MultiUserChatService service = MUCServiceController.getService(serviceName);
         final Lock lock = getLock(service, roomName);
         lock.lock();
         try {
-            service.getChatRoomLock(roomName);
-
             final MUCRoom chatRoom = getRoom(service, roomName);
             chatRoom.destroyRoom(null, null);
 
             // Make sure that other cluster nodes see the changes made here.
-            service.syncChatRoom(chatRoom);
+            syncChatRoom(service, chatRoom);
         } finally {
             lock.unlock();
         }
@@ -284,7 +429,7 @@ public class MUCRoomController {
      * @throws ServiceException the service exception
      */
     public void createChatRoom(String serviceName, MUCRoomEntity mucRoomEntity, boolean sendInvitations) throws ServiceException {
-        log("Create a chat room: " + mucRoomEntity.getRoomName());
+        SERVICE_LOG.log("Create a chat room: {}", mucRoomEntity.getRoomName());
         try {
             createRoom(mucRoomEntity, serviceName, sendInvitations);
         } catch (NotAllowedException | ForbiddenException e) {
@@ -315,7 +460,7 @@ public class MUCRoomController {
      */
     public RoomCreationResultEntities createMultipleChatRooms(String serviceName, MUCRoomEntities mucRoomEntities, boolean sendInvitations) throws ServiceException {
         List<MUCRoomEntity> roomsToCreate = mucRoomEntities.getMucRooms();
-        log("Create " + roomsToCreate.size() + " chat rooms");
+        SERVICE_LOG.log("Create {} chat rooms", roomsToCreate.size());
         List<RoomCreationResultEntity> results = new ArrayList<>();
         for (MUCRoomEntity roomToCreate : roomsToCreate) {
             RoomCreationResultEntity result = new RoomCreationResultEntity();
@@ -325,11 +470,11 @@ public class MUCRoomController {
                 result.setResultType(RoomCreationResultEntity.RoomCreationResultType.Success);
                 result.setMessage("Room was successfully created");
             } catch (AlreadyExistsException e) {
-                log("Already exists exception thrown while trying to create room: " + roomToCreate.getRoomName(), e);
+                SERVICE_LOG.log("Already exists exception thrown while trying to create room: {}", roomToCreate.getRoomName(), e);
                 result.setResultType(RoomCreationResultEntity.RoomCreationResultType.Success);
                 result.setMessage("Room already existed and therefore not created again");
             } catch (NotAllowedException | ForbiddenException | ConflictException e) {
-                log("Failed to create room: " + roomToCreate.getRoomName(), e);
+                SERVICE_LOG.log("Failed to create room: {}", roomToCreate.getRoomName(), e);
                 result.setResultType(RoomCreationResultEntity.RoomCreationResultType.Failure);
                 result.setMessage("Room creation failed due to " + e.getClass().getSimpleName() + ": " + e.getMessage());
             }
@@ -354,7 +499,7 @@ public class MUCRoomController {
      */
     public void updateChatRoom(String roomName, String serviceName, MUCRoomEntity mucRoomEntity, boolean sendInvitations)
             throws ServiceException {
-        log("Update a chat room: " + mucRoomEntity.getRoomName());
+        SERVICE_LOG.log("Update a chat room: {}", mucRoomEntity.getRoomName());
         try {
             // If the room name is different throw exception
             if (!JID.nodeprep(roomName).equals(mucRoomEntity.getRoomName())) {
@@ -364,13 +509,13 @@ public class MUCRoomController {
             }
             createRoom(mucRoomEntity, serviceName, sendInvitations);
         } catch (NotAllowedException | ForbiddenException e) {
-            log("Failed to update room: " + mucRoomEntity.getRoomName(), e);
+            SERVICE_LOG.log("Failed to update room: {}", mucRoomEntity.getRoomName(), e);
             throw new ServiceException("Could not update the channel", roomName, ExceptionType.NOT_ALLOWED, Response.Status.FORBIDDEN, e);
         } catch (ConflictException e) {
-            log("Failed to update room: " + mucRoomEntity.getRoomName(), e);
+            SERVICE_LOG.log("Failed to update room: {}", mucRoomEntity.getRoomName(), e);
             throw new ServiceException("Could not update the channel", roomName, ExceptionType.NOT_ALLOWED, Response.Status.CONFLICT, e);
         } catch (AlreadyExistsException e) {
-            log("Already exists exception thrown while trying to update room: " + mucRoomEntity.getRoomName(), e);
+            SERVICE_LOG.log("Already exists exception thrown while trying to update room: {}", mucRoomEntity.getRoomName(), e);
             throw new ServiceException("Could not update the channel", mucRoomEntity.getRoomName(),
                     ExceptionType.ALREADY_EXISTS, Response.Status.CONFLICT, e);
         }
@@ -397,13 +542,13 @@ public class MUCRoomController {
     private void createRoom(MUCRoomEntity mucRoomEntity, String serviceName, boolean sendInvitations) throws NotAllowedException,
         ForbiddenException, ConflictException, AlreadyExistsException, ServiceException
     {
-        log("Create or updating a chat room: " + mucRoomEntity.getRoomName());
+        SERVICE_LOG.log("Create or updating a chat room: {}", mucRoomEntity.getRoomName());
         // Set owner
         JID owner = XMPPServer.getInstance().createJID("admin", null);
         if (mucRoomEntity.getOwners() != null && mucRoomEntity.getOwners().size() > 0) {
             owner = new JID(mucRoomEntity.getOwners().get(0));
         } else {
-            log("Room '" + mucRoomEntity.getRoomName() + "' is being created/updated without an owner. Adding default owner (as having an owner is non-optional).");
+            SERVICE_LOG.log("Room '{}' is being created/updated without an owner. Adding default owner (as having an owner is non-optional).", mucRoomEntity.getRoomName());
             List<String> owners = new ArrayList<>();
             owners.add(owner.toBareJID());
             mucRoomEntity.setOwners(owners);
@@ -424,17 +569,17 @@ public class MUCRoomController {
         //	Check if chat service is available, if not create a new one
         boolean serviceRegistered = XMPPServer.getInstance().getMultiUserChatManager().isServiceRegistered(serviceName);
         if(!serviceRegistered) {
-            log("Creating a new service for the chat room that is being created: " + serviceName);
+            SERVICE_LOG.log("Creating a new service for the chat room that is being created: {}", serviceName);
             XMPPServer.getInstance().getMultiUserChatManager().createMultiUserChatService(serviceName, serviceName, false);
         }
 
-        log("Setting initial values for room that is being created/updated: " + mucRoomEntity.getRoomName());
+        SERVICE_LOG.log("Setting initial values for room that is being created/updated: {}", mucRoomEntity.getRoomName());
         final MultiUserChatService service = MUCServiceController.getService(serviceName);
         final Lock lock = getLock(service, mucRoomEntity.getRoomName());
         lock.lock();
         try {
             MUCRoom room = service.getChatRoom(mucRoomEntity.getRoomName(), owner);
-            log("Room " + mucRoomEntity.getRoomName() + " is being " + (room.isLocked() ? "created" : "updated"));
+            SERVICE_LOG.log("Room {} is being {}", mucRoomEntity.getRoomName(), room.isLocked() ? "created" : "updated");
 
             // Set values
             room.setNaturalLanguageName(mucRoomEntity.getNaturalName());
@@ -464,7 +609,7 @@ public class MUCRoomController {
             }
 
             // Set all roles
-            log("Setting roles for room that is being " + (room.isLocked() ? "created" : "updated") + ": " + mucRoomEntity.getRoomName());
+            SERVICE_LOG.log("Setting roles for room that is being {}: {}", room.isLocked() ? "created" : "updated", mucRoomEntity.getRoomName());
             Collection<JID> allUsersWithNewAffiliations = null;
             if (!equalToAffiliations(room, mucRoomEntity)) {
                 allUsersWithNewAffiliations = setRoles(room, mucRoomEntity);
@@ -485,23 +630,23 @@ public class MUCRoomController {
             }
 
             // Unlock the room, because the default configuration lock the room.
-            log("Unlocking room that is being " + (room.isLocked() ? "created" : "updated") + ": " + mucRoomEntity.getRoomName());
+            SERVICE_LOG.log("Unlocking room that is being {}: {}", room.isLocked() ? "created" : "updated", mucRoomEntity.getRoomName());
             room.unlock(room.getRole());
 
             // Save the room to the DB if the room should be persistent
             if (room.isPersistent()) {
-                log("Persisting room that is being created/updated: " + mucRoomEntity.getRoomName());
+                SERVICE_LOG.log("Persisting room that is being created/updated: {}", mucRoomEntity.getRoomName());
                 room.saveToDB();
             }
 
-            log("Syncing room that is being created/updated: " + mucRoomEntity.getRoomName());
-            service.syncChatRoom(room);
+            SERVICE_LOG.log("Syncing room that is being created/updated: {}", mucRoomEntity.getRoomName());
+            syncChatRoom(service, room);
 
             if (sendInvitations && allUsersWithNewAffiliations != null) {
-                log("Sending invitations for room that is being created/updated: " + mucRoomEntity.getRoomName());
-                sendInvitationsFromRoom(room, null, allUsersWithNewAffiliations, null, true);
+                SERVICE_LOG.log("Sending invitations for room that is being created/updated: {}", mucRoomEntity.getRoomName());
+                sendInvitationsFromRoom(service, room, null, allUsersWithNewAffiliations, null, true);
             }
-            log("Done creating/updating room: " + mucRoomEntity.getRoomName());
+            SERVICE_LOG.log("Done creating/updating room: {}", mucRoomEntity.getRoomName());
         } finally {
             lock.unlock();
         }
@@ -511,40 +656,7 @@ public class MUCRoomController {
         if (mucRoomEntity == null || room == null) {
             return false;
         }
-
-        ConcurrentGroupList<JID> owners = new ConcurrentGroupList<>(room.getOwners());
-        ConcurrentGroupList<JID> admins = new ConcurrentGroupList<>(room.getAdmins());
-        ConcurrentGroupList<JID> members = new ConcurrentGroupList<>(room.getMembers());
-        ConcurrentGroupList<JID> outcasts = new ConcurrentGroupList<>(room.getOutcasts());
-
-        Set<String> roomOwners = new HashSet<>(MUCRoomUtils.convertJIDsToStringList(owners)); // convertJIDsToStringList ignores group JIDs.
-        Set<String> roomAdmins = new HashSet<>(MUCRoomUtils.convertJIDsToStringList(admins));
-        Set<String> roomMembers = new HashSet<>(MUCRoomUtils.convertJIDsToStringList(members));
-        Set<String> roomOutcasts = new HashSet<>(MUCRoomUtils.convertJIDsToStringList(outcasts));
-
-        Set<String> entityOwners = mucRoomEntity.getOwners() != null ? new HashSet<>(mucRoomEntity.getOwners()) : new HashSet<>();
-        Set<String> entityAdmins = mucRoomEntity.getAdmins() != null ? new HashSet<>(mucRoomEntity.getAdmins()) : new HashSet<>();
-        Set<String> entityMembers = mucRoomEntity.getMembers() != null ? new HashSet<>(mucRoomEntity.getMembers()) : new HashSet<>();
-        Set<String> entityOutcasts = mucRoomEntity.getOutcasts() != null ? new HashSet<>(mucRoomEntity.getOutcasts()) : new HashSet<>();
-
-        Set<String> roomOwnerGroups = new HashSet<>(MUCRoomUtils.convertGroupsToStringList(owners.getGroups()));
-        Set<String> roomAdminGroups = new HashSet<>(MUCRoomUtils.convertGroupsToStringList(admins.getGroups()));
-        Set<String> roomMemberGroups = new HashSet<>(MUCRoomUtils.convertGroupsToStringList(members.getGroups()));
-        Set<String> roomOutcastGroups = new HashSet<>(MUCRoomUtils.convertGroupsToStringList(outcasts.getGroups()));
-
-        Set<String> entityOwnerGroups = mucRoomEntity.getOwnerGroups() != null ? new HashSet<>(mucRoomEntity.getOwnerGroups()) : new HashSet<>();
-        Set<String> entityAdminGroups = mucRoomEntity.getAdminGroups() != null ? new HashSet<>(mucRoomEntity.getAdminGroups()) : new HashSet<>();
-        Set<String> entityMemberGroups = mucRoomEntity.getMemberGroups() != null ? new HashSet<>(mucRoomEntity.getMemberGroups()) : new HashSet<>();
-        Set<String> entityOutcastGroups = mucRoomEntity.getOutcastGroups() != null ? new HashSet<>(mucRoomEntity.getOutcastGroups()) : new HashSet<>();
-
-        return entityOwners.equals(roomOwners)
-            && entityAdmins.equals(roomAdmins)
-            && entityMembers.equals(roomMembers)
-            && entityOutcasts.equals(roomOutcasts)
-            && entityOwnerGroups.equals(roomOwnerGroups)
-            && entityAdminGroups.equals(roomAdminGroups)
-            && entityMemberGroups.equals(roomMemberGroups)
-            && entityOutcastGroups.equals(roomOutcastGroups);
+        return RoomAffiliationSnapshot.of(room).matches(mucRoomEntity);
     }
 
     /**
@@ -558,26 +670,25 @@ public class MUCRoomController {
      */
     public ParticipantEntities getRoomParticipants(String roomName, String serviceName) throws ServiceException
     {
-        log("Get room participants for room: " + roomName);
+        SERVICE_LOG.log("Get room participants for room: {}", roomName);
         ParticipantEntities participantEntities = new ParticipantEntities();
         List<ParticipantEntity> participants = new ArrayList<>();
-        Collection<MUCRole> serverParticipants;
+        List<RoleSnapshot> serverParticipants;
 
         final MultiUserChatService service = MUCServiceController.getService(serviceName);
         final Lock lock = getLock(service, roomName);
         lock.lock();
         try {
-            service.getChatRoomLock(roomName);
-            serverParticipants = getRoom(service, roomName).getParticipants();
+            serverParticipants = RoleSnapshot.of(getRoom(service, roomName).getParticipants());
         } finally {
             lock.unlock();
         }
 
-        for (MUCRole role : serverParticipants) {
+        for (RoleSnapshot role : serverParticipants) {
             ParticipantEntity participantEntity = new ParticipantEntity();
-            participantEntity.setJid(role.getRoleAddress().toFullJID());
-            participantEntity.setRole(role.getRole().name());
-            participantEntity.setAffiliation(role.getAffiliation().name());
+            participantEntity.setJid(role.roleAddress.toFullJID());
+            participantEntity.setRole(role.role.name());
+            participantEntity.setAffiliation(role.affiliation.name());
 
             participants.add(participantEntity);
         }
@@ -598,28 +709,27 @@ public class MUCRoomController {
      */
     public OccupantEntities getRoomOccupants(String roomName, String serviceName) throws ServiceException
     {
-        log("Get room occupants for room: " + roomName);
+        SERVICE_LOG.log("Get room occupants for room: {}", roomName);
         OccupantEntities occupantEntities = new OccupantEntities();
         List<OccupantEntity> occupants = new ArrayList<>();
 
-        Collection<MUCRole> serverOccupants;
+        List<RoleSnapshot> serverOccupants;
 
         final MultiUserChatService service = MUCServiceController.getService(serviceName);
         final Lock lock = getLock(service, roomName);
         lock.lock();
         try {
-            service.getChatRoomLock(roomName);
-            serverOccupants = getRoom(service, roomName).getOccupants();
+            serverOccupants = RoleSnapshot.of(getRoom(service, roomName).getOccupants());
         } finally {
             lock.unlock();
         }
 
-        for (MUCRole role : serverOccupants) {
+        for (RoleSnapshot role : serverOccupants) {
             OccupantEntity occupantEntity = new OccupantEntity();
-            occupantEntity.setJid(role.getRoleAddress().toFullJID());
-            occupantEntity.setUserAddress(role.getUserAddress().toFullJID());
-            occupantEntity.setRole(role.getRole().name());
-            occupantEntity.setAffiliation(role.getAffiliation().name());
+            occupantEntity.setJid(role.roleAddress.toFullJID());
+            occupantEntity.setUserAddress(role.userAddress.toFullJID());
+            occupantEntity.setRole(role.role.name());
+            occupantEntity.setAffiliation(role.affiliation.name());
 
             occupants.add(occupantEntity);
         }
@@ -638,7 +748,35 @@ public class MUCRoomController {
      * @return the room chat history
      */
     public MUCRoomMessageEntities getRoomHistory(String roomName, String serviceName) throws ServiceException {
-        log("Get room history for room: " + roomName);
+        return getRoomHistory(roomName, serviceName, null, null, null, 0);
+    }
+
+    /**
+     * Gets a window of the room chat history, in chronological order.
+     *
+     * When a window is requested, the history is iterated from the most recent message backwards. Iteration stops as
+     * soon as the requested number of messages has been found, or a message older than 'since' is encountered. To page
+     * backwards through the history, pass the delay stamp of the oldest message that was received as 'before', and the
+     * number of received messages with that stamp as 'skip'.
+     *
+     * @param roomName
+     *            the room name
+     * @param serviceName
+     *            the service name
+     * @param since
+     *            the oldest moment (inclusive) of messages to return (can be null)
+     * @param before
+     *            the most recent moment of messages to return (can be null)
+     * @param skip
+     *            the number of most recent messages that were sent at 'before' to leave out, or null to leave out all
+     *            of those (can be null)
+     * @param max
+     *            the maximum number of (most recent) messages to return, 0 or less for 'unlimited'
+     * @return the room chat history
+     * @see MUCRoomUtils#getHistoryWindow(ListIterator, java.util.function.Function, Date, Date, Integer, int)
+     */
+    public MUCRoomMessageEntities getRoomHistory(String roomName, String serviceName, Date since, Date before, Integer skip, int max) throws ServiceException {
+        SERVICE_LOG.log("Get room history for room: {}", roomName);
         MUCRoomMessageEntities mucRoomMessageEntities = new MUCRoomMessageEntities();
         List<MUCRoomMessageEntity> listMessages = new ArrayList<>();
         MUCRoomHistory mucRH;
@@ -647,40 +785,165 @@ public class MUCRoomController {
         final Lock lock = getLock(service, roomName);
         lock.lock();
         try {
-            service.getChatRoomLock(roomName);
             MUCRoom chatRoom = getRoom(service, roomName);
             mucRH = chatRoom.getRoomHistory();
         } finally {
             lock.unlock();
         }
-        Iterator<Message> messageHistory = mucRH.getMessageHistory();
-
-        while (messageHistory.hasNext()) {
-            Message message = messageHistory.next();
-
-            MUCRoomMessageEntity mucMsgEntity = new MUCRoomMessageEntity();
-            if (message.getTo()!=null && message.getTo().toString().length()!=0)
-                mucMsgEntity.setTo(message.getTo().toString());
-            if (message.getFrom()!=null && message.getFrom().toString().length()!=0)
-                mucMsgEntity.setFrom(message.getFrom().toFullJID());
-            if (message.getType()!=null && message.getType().toString().length()!=0)
-                mucMsgEntity.setType(message.getType().name());
-            if (message.getBody()!=null && message.getBody().length()!=0)
-                mucMsgEntity.setBody(message.getBody());
-
-            Element delay = message.getChildElement("delay","urn:xmpp:delay");
-            if (delay!=null) {
-                mucMsgEntity.setDelayStamp(delay.attributeValue("stamp"));
-                String delayFrom = delay.attributeValue("from");
-                if (delayFrom!=null)
-                    mucMsgEntity.setDelayFrom(delayFrom);
+
+        if (since == null && before == null && max <= 0) {
+            Iterator<Message> messageHistory = mucRH.getMessageHistory();
+            while (messageHistory.hasNext()) {
+                listMessages.add(convertToMUCRoomMessageEntity(messageHistory.next()));
+            }
+        } else {
+            // Delay stamps are only parsed when filtering by time.
+            final XMPPDateTimeFormat dateTimeFormat = new XMPPDateTimeFormat();
+            final List<Message> window = MUCRoomUtils.getHistoryWindow(mucRH.getReverseMessageHistory(),
+                message -> getDelayStamp(message, dateTimeFormat), since, before, skip, max);
+            for (final Message message : window) {
+                listMessages.add(convertToMUCRoomMessageEntity(message));
             }
-            listMessages.add(mucMsgEntity);
         }
         mucRoomMessageEntities.setMessages(listMessages);
         return mucRoomMessageEntities;
     }
 
+    /**
+     * Returns a producer of messages from the conversation log of a room, as stored in the database. Unlike the room
+     * history, this includes messages that are older than what is kept in memory.
+     *
+     * Pagination is based on the (logTime, messageID) key of the last message that was received by the client, which
+     * keeps the cost of reading a page independent of its position in the log.
+     *
+     * @param roomName
+     *            the room name
+     * @param serviceName
+     *            the service name
+     * @param startTime
+     *            the oldest moment (inclusive, in milliseconds since the epoch) of messages to return (can be null)
+     * @param endTime
+     *            the most recent moment (exclusive, in milliseconds since the epoch) of messages to return (can be null)
+     * @param after
+     *            the cursor, containing the logTime and messageID of the message after which to return messages (can be null)
+     * @param limit
+     *            the maximum amount of messages to return, 0 or less for 'unlimited'
+     * @param includeStanza
+     *            whether to include the raw stanza of each message
+     * @return a producer of the messages, ordered by the moment they were logged
+     * @throws ServiceException
+     *             when the room (or its service) does not exist
+     */
+    public StreamingUtils.EntityProducer<MUCRoomArchivedMessageEntity> getRoomConversationLog(String roomName, String serviceName, Long startTime, Long endTime,
+                                                                                             long[] after, int limit, boolean includeStanza) throws ServiceException {
+        SERVICE_LOG.log("Get conversation log for room: {}", roomName);
+        final long roomID;
+        final MultiUserChatService service = MUCServiceController.getService(serviceName);
+        final Lock lock = getLock(service, roomName);
+        lock.lock();
+        try {
+            roomID = getRoom(service, roomName).getID();
+        } finally {
+            lock.unlock();
+        }
+
+        final StringBuilder sql = new StringBuilder(SELECT_CONVERSATION_LOG);
+        final List<String> arguments = new ArrayList<>();
+        if (startTime != null) {
+            sql.append(" AND logTime >= ?");
+            arguments.add(StringUtils.dateToMillis(new Date(startTime)));
+        }
+        if (endTime != null) {
+            sql.append(" AND logTime < ?");
+            arguments.add(StringUtils.dateToMillis(new Date(endTime)));
+        }
+        if (after != null) {
+            sql.append(" AND (logTime > ? OR (logTime = ? AND messageID > ?))");
+            arguments.add(StringUtils.dateToMillis(new Date(after[0])));
+            arguments.add(StringUtils.dateToMillis(new Date(after[0])));
+        }
+        sql.append(ORDER_CONVERSATION_LOG);
+
+        return consumer -> {
+            Connection con = null;
+            PreparedStatement pstmt = null;
+            ResultSet rs = null;
+            try {
+                con = DbConnectionManager.getConnection();
+                pstmt = con.prepareStatement(sql.toString());
+                int index = 1;
+                pstmt.setLong(index++, roomID);
+                for (final String argument : arguments) {
+                    pstmt.setString(index++, argument);
+                }
+                if (after != null) {
+                    pstmt.setLong(index, after[1]);
+                }
+                if (limit > 0) {
+                    DbConnectionManager.setMaxRows(pstmt, limit);
+                }
+                DbConnectionManager.setFetchSize(pstmt, limit > 0 ? Math.min(limit, CONVERSATION_LOG_FETCH_SIZE) : CONVERSATION_LOG_FETCH_SIZE);
+                rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    final MUCRoomArchivedMessageEntity message = new MUCRoomArchivedMessageEntity();
+                    message.setMessageID(rs.getLong(1));
+                    message.setLogTime(Long.parseLong(rs.getString(2).trim()));
+                    message.setSender(rs.getString(3));
+                    message.setNickname(rs.getString(4));
+                    message.setSubject(rs.getString(5));
+                    message.setBody(rs.getString(6));
+                    if (includeStanza) {
+                        message.setStanza(rs.getString(7));
+                    }
+                    consumer.accept(message);
+                }
+            } catch (SQLException sqle) {
+                LOG.error("Unable to read the conversation log of room: " + roomName, sqle);
+                throw new IOException("Unable to read the conversation log of room: " + roomName, sqle);
+            } finally {
+                DbConnectionManager.closeConnection(rs, pstmt, con);
+            }
+        };
+    }
+
+    private static MUCRoomMessageEntity convertToMUCRoomMessageEntity(Message message) {
+        MUCRoomMessageEntity mucMsgEntity = new MUCRoomMessageEntity();
+        if (message.getTo()!=null && message.getTo().toString().length()!=0)
+            mucMsgEntity.setTo(message.getTo().toString());
+        if (message.getFrom()!=null && message.getFrom().toString().length()!=0)
+            mucMsgEntity.setFrom(message.getFrom().toFullJID());
+        if (message.getType()!=null && message.getType().toString().length()!=0)
+            mucMsgEntity.setType(message.getType().name());
+        if (message.getBody()!=null && message.getBody().length()!=0)
+            mucMsgEntity.setBody(message.getBody());
+
+        Element delay = message.getChildElement("delay","urn:xmpp:delay");
+        if (delay!=null) {
+            mucMsgEntity.setDelayStamp(delay.attributeValue("stamp"));
+            String delayFrom = delay.attributeValue("from");
+            if (delayFrom!=null)
+                mucMsgEntity.setDelayFrom(delayFrom);
+        }
+        return mucMsgEntity;
+    }
+
+    /**
+     * Returns the moment a message in the room history was sent, as recorded in its delay element, or null if
+     * that moment cannot be determined.
+     */
+    private static Date getDelayStamp(Message message, XMPPDateTimeFormat dateTimeFormat) {
+        Element delay = message.getChildElement("delay","urn:xmpp:delay");
+        if (delay == null || delay.attributeValue("stamp") == null) {
+            return null;
+        }
+        try {
+            return dateTimeFormat.parse(delay.attributeValue("stamp"));
+        } catch (ParseException e) {
+            LOG.debug("Unable to parse delay stamp of message in room history: {}", delay.attributeValue("stamp"), e);
+            return null;
+        }
+    }
+
     /**
      * Invites the user(s) or group(s) to the MUC room. This method differs from the other 'sendInvitations' methods in
      * that no checks are performed. This really just sends the invitation stanza(s).
@@ -703,7 +966,7 @@ public class MUCRoomController {
             // Is it a group? Then unpack and send to every single group member.
             Group g = UserUtils.getGroupIfIsGroup(jid);
             if (g != null) {
-                targetJIDs.addAll(g.getAll());
+                targetJIDs.addAll(GroupResolver.getInstance().getMembers(g));
             } else {
                 targetJIDs.add(jid);
             }
@@ -714,7 +977,6 @@ public class MUCRoomController {
         final Lock lock = getLock(service, roomName);
         lock.lock();
         try {
-            service.getChatRoomLock(roomName);
             MUCRoom room = getRoom(service, roomName);
             for (JID jid : targetJIDs) {
                 try {
@@ -725,20 +987,22 @@ public class MUCRoomController {
             }
 
             // Make sure that other cluster nodes see the changes made here.
-            service.syncChatRoom(room);
+            syncChatRoom(service, room);
         } finally {
             lock.unlock();
         }
     }
 
     /**
-     * Sends invitations "from the room" to a single user that is affiliated to the room.
+     * Queues invitations "from the room" to a single user that is affiliated to the room.
      *
      * This method should only be invoked after the caller has obtained and engaged a lock, using {@link #getLock(MultiUserChatService, String)}.
      *
-     * @see #sendInvitationsFromRoom(MUCRoom, EnumSet, Collection, String, boolean)
+     * @see #sendInvitationsFromRoom(MultiUserChatService, MUCRoom, EnumSet, Collection, String, boolean)
      * @see #getLock(MultiUserChatService, String) 
      *
+     * @param service
+     *          The service that contains the room
      * @param room
      *          The room
      * @param affiliations
@@ -754,6 +1018,7 @@ public class MUCRoomController {
      *          The forbidden exception
      */
     private void sendInvitationsToSingleJID(
+        MultiUserChatService service,
         MUCRoom room,
         EnumSet<MUCRole.Affiliation> affiliations,
         JID limitToThisUserOrGroup,
@@ -762,19 +1027,23 @@ public class MUCRoomController {
     ) throws ForbiddenException {
         Set<JID> setOfOneJID = new HashSet<>();
         setOfOneJID.add(limitToThisUserOrGroup);
-        sendInvitationsFromRoom(room, affiliations, setOfOneJID, reason, performAffiliationCheck);
+        sendInvitationsFromRoom(service, room, affiliations, setOfOneJID, reason, performAffiliationCheck);
     }
 
     /**
-     * Sends invitations "from the room" to users that are affiliated to the room. The target audience can be limited to
+     * Queues invitations "from the room" to users that are affiliated to the room. The target audience can be limited to
      * a specific set of JIDs through the #limitToTheseUsers parameter. If this parameter is left null, invitations are
      * sent to all users with the specified affiliations.
      *
-     * Before sending any invitation, this method checks whether the invitation recipient is actually affiliated to the
-     * room in the way that the invitation expresses.
+     * Before queuing any invitation, this method checks whether the invitation recipient is actually affiliated to the
+     * room in the way that the invitation expresses. The invitations themselves are delivered in the background by
+     * {@link MUCInvitationDispatcher}, which also replaces groups by their members. Whether the room is allowed to send
+     * invitations at all is checked before any invitation is queued.
      *
      * This method should only be invoked after the caller has obtained and engaged a lock, using {@link #getLock(MultiUserChatService, String)}.
      *
+     * @param service
+     *          The service that contains the room
      * @param room
      *          The room
      * @param affiliations
@@ -788,10 +1057,11 @@ public class MUCRoomController {
      * @param performAffiliationCheck
      *          Whether to validate if the user or group is actually affiliated to the room in the correct way
      * @throws ForbiddenException
-     *          The forbidden exception
+     *          When the room is not allowed to send invitations
      * @see #getLock(MultiUserChatService, String) 
      */
     private void sendInvitationsFromRoom(
+        MultiUserChatService service,
         MUCRoom room,
         EnumSet<MUCRole.Affiliation> affiliations,
         Collection<JID> limitToTheseUsers,
@@ -799,18 +1069,27 @@ public class MUCRoomController {
         boolean performAffiliationCheck
     ) throws ForbiddenException {
 
+        // The invitations are sent in the background, where this can no longer be reported to the caller. This is the
+        // same check that MUCRoom#sendInvitation applies.
+        final MUCRole.Affiliation senderAffiliation = room.getRole().getAffiliation();
+        if (room.isMembersOnly() && !room.canOccupantsInvite()
+            && senderAffiliation != MUCRole.Affiliation.admin && senderAffiliation != MUCRole.Affiliation.owner) {
+            throw new ForbiddenException();
+        }
+
         if (affiliations == null) {
             affiliations = EnumSet.of(MUCRole.Affiliation.admin, MUCRole.Affiliation.member, MUCRole.Affiliation.owner);
         }
-        MUCRole roomRole = MUCRole.createRoomRole(room);
 
+        // The reason of the invitation, by recipient. A recipient is only invited once.
+        final Map<JID, String> invitations = new LinkedHashMap<>();
         if (affiliations.contains(MUCRole.Affiliation.admin)) {
             Collection<JID> sendHere = limitToTheseUsers == null ? room.getAdmins() : limitToTheseUsers;
             for (JID roomAdmin : sendHere) {
-                sendSingleInvitationFromRoom(
+                addInvitation(
+                    invitations,
                     roomAdmin,
                     room,
-                    roomRole,
                     MUCRole.Affiliation.admin,
                     reason == null ? "You are admin of room " + room.getName() : reason,
                     performAffiliationCheck ? (r, j) -> r.getAdmins().contains(j) : null
@@ -820,10 +1099,10 @@ public class MUCRoomController {
         if (affiliations.contains(MUCRole.Affiliation.owner)) {
             Collection<JID> sendHere = limitToTheseUsers == null ? room.getOwners() : limitToTheseUsers;
             for (JID roomOwner : sendHere) {
-                sendSingleInvitationFromRoom(
+                addInvitation(
+                    invitations,
                     roomOwner,
                     room,
-                    roomRole,
                     MUCRole.Affiliation.owner,
                     reason == null ? "You are owner of room " + room.getName() : reason,
                     performAffiliationCheck ? (r, j) -> r.getOwners().contains(j) : null
@@ -833,31 +1112,31 @@ public class MUCRoomController {
         if (affiliations.contains(MUCRole.Affiliation.member)) {
             Collection<JID> sendHere = limitToTheseUsers == null ? room.getMembers() : limitToTheseUsers;
             for (JID roomMember : sendHere) {
-                sendSingleInvitationFromRoom(
+                addInvitation(
+                    invitations,
                     roomMember,
                     room,
-                    roomRole,
                     MUCRole.Affiliation.member,
                     reason == null ? "You are member of room " + room.getName() : reason,
                     performAffiliationCheck ? (r, j) -> r.getMembers().contains(j) : null
                 );
             }
         }
+        MUCInvitationDispatcher.getInstance().enqueue(service, room.getName(), invitations);
     }
 
     /**
-     * Sends an invitation for a specific affiliation to a single JID, (optionally) performing a check if that JID is
-     * actually affiliated to the room that way.
+     * Adds an invitation for a specific affiliation to a single JID (of a user or a group), (optionally) performing a
+     * check if that JID is actually affiliated to the room that way. A JID that already has an invitation is skipped.
      *
      * This method should only be invoked after the caller has obtained and engaged a lock, using {@link #getLock(MultiUserChatService, String)}.
      *
+     * @param invitations
+     *          The invitations to add to
      * @param sendHere
      *          The JID to send the invitation to
      * @param room
      *          The room
-     * @param roomRole
-     *          Role of the room (added for optimisation, to prevent the MUCRole.createRoomRole(room) from being called
-     *          many times)
      * @param affiliation
      *          The affiliation for which the jid is invited
      * @param invitationReason
@@ -865,42 +1144,20 @@ public class MUCRoomController {
      * @param validation
      *          Function to apply to the room and the jid to check whether the jid is actually affiliated in the correct
      *          way (or null if no validation is required)
-     * @throws ForbiddenException
-     *          The forbidden exception
      * @see #getLock(MultiUserChatService, String) 
      */
-    private void sendSingleInvitationFromRoom(
+    private void addInvitation(
+        Map<JID, String> invitations,
         JID sendHere,
         MUCRoom room,
-        MUCRole roomRole,
         MUCRole.Affiliation affiliation,
         String invitationReason,
         BiFunction<MUCRoom, JID, Boolean> validation
-    ) throws ForbiddenException {
-        boolean jidIsGroup = false;
-
+    ) {
         if (validation != null && !validation.apply(room, sendHere)) {
-            log("User or group " + sendHere + " can not be invited to be " + affiliation + " of room " + room.getName() + " because it is not affiliated that way");
+            SERVICE_LOG.log("User or group {} can not be invited to be {} of room {} because it is not affiliated that way", sendHere, affiliation, room.getName());
         } else {
-            // First handle group behavior
-            Group g = UserUtils.getGroupIfIsGroup(sendHere);
-            if (g != null) {
-                jidIsGroup = true;
-                // This is a group jid, so we need to send the invitation to every single group member
-                for (JID singleGroupMemberJID : g.getAll()) {
-                    // Skip affiliation check, because it has already been done for the group, and the single user may not
-                    // actually be known to be affiliated on its own merits
-                    sendSingleInvitationFromRoom(singleGroupMemberJID, room, roomRole, affiliation, invitationReason, null);
-                }
-            }
-
-            if (!jidIsGroup) {
-                try {
-                    room.sendInvitation(sendHere, invitationReason, roomRole, null);
-                } catch (CannotBeInvitedException e) {
-                    log("User " + sendHere + " can not be invited to be " + affiliation + " of room " + room.getName());
-                }
-            }
+            invitations.putIfAbsent(sendHere, invitationReason);
         }
     }
 
@@ -912,6 +1169,16 @@ public class MUCRoomController {
      * @return the MUC room entity
      */
     public MUCRoomEntity convertToMUCRoomEntity(MUCRoom room, boolean expand) {
+        final MUCRoomEntity mucRoomEntity = copyRoomState(room);
+        setAffiliations(mucRoomEntity, RoomAffiliationSnapshot.of(room), expand);
+        return mucRoomEntity;
+    }
+
+    /**
+     * Creates the entity representation of a room, without its affiliations. Only values are copied, which is cheap
+     * enough to do while holding the room lock.
+     */
+    private static MUCRoomEntity copyRoomState(MUCRoom room) {
         MUCRoomEntity mucRoomEntity = new MUCRoomEntity(room.getNaturalLanguageName(), room.getName(),
                 room.getDescription());
 
@@ -932,36 +1199,6 @@ public class MUCRoomController {
         mucRoomEntity.setModerated(room.isModerated());
         mucRoomEntity.setAllowPM(room.canSendPrivateMessage());
 
-        ConcurrentGroupList<JID> owners = new ConcurrentGroupList<>(room.getOwners());
-        ConcurrentGroupList<JID> admins = new ConcurrentGroupList<>(room.getAdmins());
-        ConcurrentGroupList<JID> members = new ConcurrentGroupList<>(room.getMembers());
-        ConcurrentGroupList<JID> outcasts = new ConcurrentGroupList<>(room.getOutcasts());
-
-        if (expand) {
-            for(Group ownerGroup : owners.getGroups()) {
-                owners.addAllAbsent(ownerGroup.getAll());
-            }
-            for(Group adminGroup : admins.getGroups()) {
-                admins.addAllAbsent(adminGroup.getAll());
-            }
-            for(Group memberGroup : members.getGroups()) {
-                members.addAllAbsent(memberGroup.getAll());
-            }
-            for(Group outcastGroup : outcasts.getGroups()) {
-                outcasts.addAllAbsent(outcastGroup.getAll());
-            }
-        }
-
-        mucRoomEntity.setOwners(MUCRoomUtils.convertJIDsToStringList(owners));
-        mucRoomEntity.setAdmins(MUCRoomUtils.convertJIDsToStringList(admins));
-        mucRoomEntity.setMembers(MUCRoomUtils.convertJIDsToStringList(members));
-        mucRoomEntity.setOutcasts(MUCRoomUtils.convertJIDsToStringList(outcasts));
-
-        mucRoomEntity.setOwnerGroups(MUCRoomUtils.convertGroupsToStringList(owners.getGroups()));
-        mucRoomEntity.setAdminGroups(MUCRoomUtils.convertGroupsToStringList(admins.getGroups()));
-        mucRoomEntity.setMemberGroups(MUCRoomUtils.convertGroupsToStringList(members.getGroups()));
-        mucRoomEntity.setOutcastGroups(MUCRoomUtils.convertGroupsToStringList(outcasts.getGroups()));
-
         mucRoomEntity.setBroadcastPresenceRoles(MUCRoomUtils.convertRolesToStringList(room.getRolesToBroadcastPresence()));
 
         mucRoomEntity.setCreationDate(room.getCreationDate());
@@ -970,6 +1207,49 @@ public class MUCRoomController {
         return mucRoomEntity;
     }
 
+    /**
+     * Adds the affiliations of a room to its entity representation. This looks up groups, which does not require the
+     * room lock to be held.
+     */
+    private static void setAffiliations(MUCRoomEntity mucRoomEntity, RoomAffiliationSnapshot affiliations, boolean expand) {
+        if (expand) {
+            mucRoomEntity.setOwners(expandGroups(affiliations, MUCRole.Affiliation.owner));
+            mucRoomEntity.setAdmins(expandGroups(affiliations, MUCRole.Affiliation.admin));
+            mucRoomEntity.setMembers(expandGroups(affiliations, MUCRole.Affiliation.member));
+            mucRoomEntity.setOutcasts(expandGroups(affiliations, MUCRole.Affiliation.outcast));
+        } else {
+            mucRoomEntity.setOwners(new ArrayList<>(affiliations.getUsers(MUCRole.Affiliation.owner)));
+            mucRoomEntity.setAdmins(new ArrayList<>(affiliations.getUsers(MUCRole.Affiliation.admin)));
+            mucRoomEntity.setMembers(new ArrayList<>(affiliations.getUsers(MUCRole.Affiliation.member)));
+            mucRoomEntity.setOutcasts(new ArrayList<>(affiliations.getUsers(MUCRole.Affiliation.outcast)));
+        }
+
+        mucRoomEntity.setOwnerGroups(affiliations.getGroupNames(MUCRole.Affiliation.owner));
+        mucRoomEntity.setAdminGroups(affiliations.getGroupNames(MUCRole.Affiliation.admin));
+        mucRoomEntity.setMemberGroups(affiliations.getGroupNames(MUCRole.Affiliation.member));
+        mucRoomEntity.setOutcastGroups(affiliations.getGroupNames(MUCRole.Affiliation.outcast));
+    }
+
+    /**
+     * Returns the bare JIDs of all users that have an affiliation with a room, either directly or as a member of an
+     * affiliated group.
+     */
+    private static List<String> expandGroups(RoomAffiliationSnapshot affiliations, MUCRole.Affiliation affiliation) {
+        final List<Group> groups = affiliations.getGroups(affiliation);
+        if (groups.isEmpty()) {
+            return new ArrayList<>(affiliations.getUsers(affiliation));
+        }
+        final Set<String> result = new LinkedHashSet<>(affiliations.getUsers(affiliation));
+        for (final Group group : groups) {
+            for (final JID jid : GroupResolver.getInstance().getMembers(group)) {
+                if (jid.getResource() == null) {
+                    result.add(jid.toBareJID());
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
     /**
      * Reset roles.
      *
@@ -1015,7 +1295,7 @@ public class MUCRoomController {
 
         // Update the room by adding new owners.
         for (final JID newOwner : newOwners) {
-            log("Adding new 'owner' affiliation for '" + newOwner + "' to room: " + room.getName());
+            SERVICE_LOG.log("Adding new 'owner' affiliation for '{}' to room: {}", newOwner, room.getName());
             room.addOwner(newOwner, room.getRole());
             allNewAffiliations.add(newOwner);
         }
@@ -1035,7 +1315,7 @@ public class MUCRoomController {
 
         // Update the room by adding new admins.
         for (final JID newAdmin : newAdmins) {
-            log("Adding new 'admin' affiliation for '" + newAdmin + "' to room: " + room.getName());
+            SERVICE_LOG.log("Adding new 'admin' affiliation for '{}' to room: {}", newAdmin, room.getName());
             room.addAdmin(newAdmin, room.getRole());
             allNewAffiliations.add(newAdmin);
         }
@@ -1055,7 +1335,7 @@ public class MUCRoomController {
 
         // Update the room by adding new members.
         for (final JID newMember : newMembers) {
-            log("Adding new 'member' affiliation for '" + newMember + "' to room: " + room.getName());
+            SERVICE_LOG.log("Adding new 'member' affiliation for '{}' to room: {}", newMember, room.getName());
             room.addMember(newMember, null, room.getRole());
             allNewAffiliations.add(newMember);
         }
@@ -1075,14 +1355,14 @@ public class MUCRoomController {
 
         // Update the room by adding new outcasts.
         for (final JID newOutcast : newOutcasts) {
-            log("Adding new 'outcast' affiliation for '" + newOutcast + "' to room: " + room.getName());
+            SERVICE_LOG.log("Adding new 'outcast' affiliation for '{}' to room: {}", newOutcast, room.getName());
             room.addOutcast(newOutcast, null, room.getRole());
             allNewAffiliations.add(newOutcast);
         }
 
         // Finally, clean up every old affiliation that is not carrying over.
         for (JID affiliationToReset : affiliationsToReset) {
-            log("Removing old affiliation for '" + affiliationToReset + "' from room: " + room.getName());
+            SERVICE_LOG.log("Removing old affiliation for '{}' from room: {}", affiliationToReset, room.getName());
             room.addNone(affiliationToReset, room.getRole());
         }
 
@@ -1107,28 +1387,75 @@ public class MUCRoomController {
         final Lock lock = getLock(service, roomName);
         lock.lock();
         try {
-            service.getChatRoomLock(roomName);
             final MUCRoom room = getRoom(service, roomName);
-            switch (affiliation) {
-                case admin:
-                    return room.getAdmins();
-                case member:
-                    return room.getMembers();
-                case owner:
-                    return room.getOwners();
-                case outcast:
-                    return room.getOutcasts();
-                default:
-                    return room.getOccupants().stream()
-                        .filter(o -> affiliation.equals(o.getAffiliation()))
-                        .map(MUCRole::getUserAddress)
-                        .collect(Collectors.toSet());
-            }
+            // Copy, as the collections returned by the room are backed by its (mutable) state.
+            return new ArrayList<>(getAffiliatedUsers(room, affiliation));
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * Returns the users that have a particular affiliation with a room. The returned collection can be backed by the
+     * state of the room, and should therefore only be used while holding the room lock.
+     */
+    @Nonnull
+    private static Collection<JID> getAffiliatedUsers(@Nonnull final MUCRoom room, @Nonnull final MUCRole.Affiliation affiliation)
+    {
+        switch (affiliation) {
+            case admin:
+                return room.getAdmins();
+            case member:
+                return room.getMembers();
+            case owner:
+                return room.getOwners();
+            case outcast:
+                return room.getOutcasts();
+            default:
+                return room.getOccupants().stream()
+                    .filter(o -> affiliation.equals(o.getAffiliation()))
+                    .map(MUCRole::getUserAddress)
+                    .collect(Collectors.toSet());
+        }
+    }
+
+    /**
+     * Gives users a particular affiliation with a room. Admins and owners are added in one operation, members and
+     * outcasts one at a time (Openfire does not offer an operation to add these in bulk).
+     *
+     * This method should only be invoked after the caller has obtained and engaged a lock, using {@link #getLock(MultiUserChatService, String)}.
+     */
+    private static void addAffiliatedUsers(@Nonnull final MUCRoom room, @Nonnull final MUCRole.Affiliation affiliation, @Nonnull final List<JID> toAdd)
+        throws ForbiddenException, NotAllowedException, ConflictException
+    {
+        if (toAdd.isEmpty()) {
+            return;
+        }
+        switch (affiliation) {
+            case admin:
+                room.addAdmins(toAdd, room.getRole());
+                break;
+
+            case member:
+                for (final JID add : toAdd) {
+                    room.addMember(add, null, room.getRole());
+                }
+                break;
+
+            case owner:
+                room.addOwners(toAdd, room.getRole());
+                break;
+
+            case outcast:
+                for (final JID add : toAdd) {
+                    room.addOutcast(add, null, room.getRole());
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unrecognized affiliation: " + affiliation);
+        }
+    }
+
     /**
      * Updates a list of users that have a particular affiliation to a room with a new list.
      *
@@ -1160,47 +1487,38 @@ public class MUCRoomController {
             }
         }
 
-        final Collection<JID> oldUsers = getByAffiliation(serviceName, roomName, affiliation);
-
-        // The users to add are the replacements that aren't already in the old collection.
-        final List<JID> toAdd = new ArrayList<>(replacements);
-        toAdd.removeAll(oldUsers);
-
-        // The users to remove are the old users that are no longer in the replacements.
-        final List<JID> toRemove = new ArrayList<>(oldUsers);
-        toRemove.removeAll(replacements);
-
         final MultiUserChatService service = MUCServiceController.getService(serviceName);
         final Lock lock = getLock(service, roomName);
         lock.lock();
         try {
-            service.getChatRoomLock(roomName);
             final MUCRoom room = getRoom(service, roomName);
-            try {
-                // First, add all new affiliations (some affiliations aren't allowed to be empty, so removing things first could cause issues).
-                switch (affiliation) {
-                    case admin:
-                        room.addAdmins(toAdd, room.getRole());
-                        break;
-
-                    case member:
-                        for (final JID add : toAdd) {
-                            room.addMember(add, null, room.getRole());
-                        }
-                        break;
 
-                    case owner:
-                        room.addOwners(toAdd, room.getRole());
-                        break;
+            // Determine the difference under the same lock that is used to apply it, so that concurrent changes are not lost.
+            final Set<JID> oldUsers = new HashSet<>(getAffiliatedUsers(room, affiliation));
 
-                    case outcast:
-                        for (final JID add : toAdd) {
-                            room.addOutcast(add, null, room.getRole());
-                        }
-                        break;
-                    default:
-                        throw new IllegalStateException("Unrecognized affiliation: " + affiliation);
+            // The users to add are the replacements that aren't already in the old collection.
+            final List<JID> toAdd = new ArrayList<>();
+            for (final JID replacement : replacements) {
+                if (!oldUsers.contains(replacement)) {
+                    toAdd.add(replacement);
                 }
+            }
+
+            // The users to remove are the old users that are no longer in the replacements.
+            final List<JID> toRemove = new ArrayList<>();
+            for (final JID oldUser : oldUsers) {
+                if (!replacements.contains(oldUser)) {
+                    toRemove.add(oldUser);
+                }
+            }
+
+            if (toAdd.isEmpty() && toRemove.isEmpty()) {
+                return;
+            }
+
+            try {
+                // First, add all new affiliations (some affiliations aren't allowed to be empty, so removing things first could cause issues).
+                addAffiliatedUsers(room, affiliation, toAdd);
 
                 // Next, remove the affiliations that are no longer wanted.
                 for (final JID remove : toRemove) {
@@ -1213,11 +1531,11 @@ public class MUCRoomController {
             }
 
             // Make sure that other cluster nodes see the changes made here.
-            service.syncChatRoom(room);
+            syncChatRoom(service, room);
 
             try {
                 if (sendInvitations) {
-                    sendInvitationsFromRoom(room, EnumSet.of(affiliation), toAdd, null, true);
+                    sendInvitationsFromRoom(service, room, EnumSet.of(affiliation), toAdd, null, true);
                 }
             } catch (ForbiddenException e) {
                 throw new ServiceException("Can not send invitation to newly affiliated " + affiliation + " users or groups", roomName, ExceptionType.NOT_ALLOWED, Response.Status.FORBIDDEN, e);
@@ -1256,43 +1574,28 @@ public class MUCRoomController {
             }
         }
 
-        final Collection<JID> oldUsers = getByAffiliation(serviceName, roomName, affiliation);
-
-        // The users to add are the additions that aren't already in the old collection.
-        final List<JID> toAdd = new ArrayList<>(additions);
-        toAdd.removeAll(oldUsers);
-
         final MultiUserChatService service = MUCServiceController.getService(serviceName);
         final Lock lock = getLock(service, roomName);
         lock.lock();
         try {
-            service.getChatRoomLock(roomName);
             final MUCRoom room = getRoom(service, roomName);
-            try {
-                // Add all new affiliations.
-                switch (affiliation) {
-                    case admin:
-                        room.addAdmins(toAdd, room.getRole());
-                        break;
-
-                    case member:
-                        for (final JID add : toAdd) {
-                            room.addMember(add, null, room.getRole());
-                        }
-                        break;
-
-                    case owner:
-                        room.addOwners(toAdd, room.getRole());
-                        break;
 
-                    case outcast:
-                        for (final JID add : toAdd) {
-                            room.addOutcast(add, null, room.getRole());
-                        }
-                        break;
-                    default:
-                        throw new IllegalStateException("Unrecognized affiliation: " + affiliation);
+            // The users to add are the additions that aren't already in the old collection.
+            final Set<JID> oldUsers = new HashSet<>(getAffiliatedUsers(room, affiliation));
+            final List<JID> toAdd = new ArrayList<>();
+            for (final JID addition : additions) {
+                if (!oldUsers.contains(addition)) {
+                    toAdd.add(addition);
                 }
+            }
+
+            if (toAdd.isEmpty()) {
+                return;
+            }
+
+            try {
+                // Add all new affiliations.
+                addAffiliatedUsers(room, affiliation, toAdd);
             } catch (ForbiddenException | NotAllowedException e) {
                 throw new ServiceException("Forbidden to apply modification to list of " + affiliation, roomName, ExceptionType.NOT_ALLOWED, Response.Status.FORBIDDEN, e);
             } catch (ConflictException e) {
@@ -1300,11 +1603,11 @@ public class MUCRoomController {
             }
 
             // Make sure that other cluster nodes see the changes made here.
-            service.syncChatRoom(room);
+            syncChatRoom(service, room);
 
             try {
                 if (sendInvitations) {
-                    sendInvitationsFromRoom(room, EnumSet.of(affiliation), toAdd, null, true);
+                    sendInvitationsFromRoom(service, room, EnumSet.of(affiliation), toAdd, null, true);
                 }
             } catch (ForbiddenException e) {
                 throw new ServiceException("Can not send invitation to newly affiliated " + affiliation + " users or groups", roomName, ExceptionType.NOT_ALLOWED, Response.Status.FORBIDDEN, e);
@@ -1336,7 +1639,6 @@ public class MUCRoomController {
             final Lock lock = getLock(service, roomName);
             lock.lock();
             try {
-                service.getChatRoomLock(roomName);
                 final MUCRoom room = getRoom(service, roomName);
 
                 if (affiliation != null && room.getAffiliation(userJid) != affiliation) {
@@ -1349,7 +1651,7 @@ public class MUCRoomController {
                 }
 
                 // Make sure that other cluster nodes see the changes made here.
-                service.syncChatRoom(room);
+                syncChatRoom(service, room);
             } finally {
                 lock.unlock();
             }
@@ -1362,4 +1664,246 @@ public class MUCRoomController {
             throw new ServiceException("Could not delete affiliation", jid, ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION, Response.Status.INTERNAL_SERVER_ERROR, e);
         }
     }
+
+    /**
+     * Applies changes to the affiliations of any number of rooms.
+     *
+     * Changes are grouped per room. Each room is locked (and synchronized across the cluster) only once, regardless of
+     * the number of changes that apply to it. Different rooms are processed concurrently. A failure to apply changes
+     * to one room does not prevent changes to other rooms from being applied.
+     *
+     * @param serviceName
+     *            the name of the service that contains the rooms
+     * @param affiliationChangeEntities
+     *            the changes to apply
+     * @return a report detailing, per room, whether the changes were applied
+     * @throws ServiceException when the service does not exist, or when the changes are invalid (in which case none
+     *             of them are applied)
+     */
+    public AffiliationChangeResultEntities changeAffiliations(String serviceName, AffiliationChangeEntities affiliationChangeEntities) throws ServiceException
+    {
+        final List<AffiliationChangeEntity> changes = affiliationChangeEntities.getChanges() == null ? Collections.emptyList() : affiliationChangeEntities.getChanges();
+
+        // Validate all input before applying anything. Changes keep their original order within each room.
+        final Map<String, List<AffiliationChange>> changesByRoom = new LinkedHashMap<>();
+        int jidCount = 0;
+        for (final AffiliationChangeEntity change : changes) {
+            if (change.getRoomName() == null || change.getRoomName().isEmpty()) {
+                throw new ServiceException("Room name is required for every affiliation change", "roomName", ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION, Response.Status.BAD_REQUEST);
+            }
+            final String roomName = JID.nodeprep(change.getRoomName());
+            final MUCRole.Affiliation affiliation;
+            try {
+                affiliation = MUCRoomUtils.convertPluralStringToAffiliation(change.getAffiliation());
+            } catch (RuntimeException e) {
+                throw new ServiceException("Invalid 'affiliation' value: " + change.getAffiliation(), roomName, ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION, Response.Status.BAD_REQUEST);
+            }
+            if (affiliation == MUCRole.Affiliation.none) {
+                throw new ServiceException("Invalid 'affiliation' value: " + change.getAffiliation(), roomName, ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION, Response.Status.BAD_REQUEST);
+            }
+            final AffiliationChange parsed = new AffiliationChange(affiliation, parseJIDs(roomName, change.getAdd()), parseJIDs(roomName, change.getRemove()));
+            jidCount += parsed.add.size() + parsed.remove.size();
+            if (jidCount > AFFILIATION_BATCH_MAX_JIDS.getValue()) {
+                throw new ServiceException("A batch can not contain more than " + AFFILIATION_BATCH_MAX_JIDS.getValue() + " JIDs", "affiliationChanges", ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION, Response.Status.BAD_REQUEST);
+            }
+            changesByRoom.computeIfAbsent(roomName, k -> new ArrayList<>()).add(parsed);
+        }
+
+        final MultiUserChatService service = MUCServiceController.getService(serviceName);
+        SERVICE_LOG.log("Change affiliations of {} chat rooms", changesByRoom.size());
+
+        final List<AffiliationChangeResultEntity> results = new ArrayList<>();
+        if (changesByRoom.size() == 1) {
+            // No need to involve other threads.
+            final Map.Entry<String, List<AffiliationChange>> entry = changesByRoom.entrySet().iterator().next();
+            results.add(applyAffiliationChanges(service, entry.getKey(), entry.getValue()));
+        } else if (!changesByRoom.isEmpty()) {
+            final List<Callable<AffiliationChangeResultEntity>> tasks = new ArrayList<>();
+            for (final Map.Entry<String, List<AffiliationChange>> entry : changesByRoom.entrySet()) {
+                tasks.add(() -> applyAffiliationChanges(service, entry.getKey(), entry.getValue()));
+            }
+            final List<Future<AffiliationChangeResultEntity>> futures;
+            try {
+                futures = getAffiliationExecutor().invokeAll(tasks);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServiceException("Interrupted while changing affiliations", serviceName, ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION, Response.Status.INTERNAL_SERVER_ERROR, e);
+            }
+            final Iterator<String> roomNames = changesByRoom.keySet().iterator();
+            for (final Future<AffiliationChangeResultEntity> future : futures) {
+                final String roomName = roomNames.next();
+                try {
+                    results.add(future.get());
+                } catch (InterruptedException | ExecutionException e) {
+                    LOG.warn("Unexpected problem while changing affiliations of room '{}'", roomName, e);
+                    final AffiliationChangeResultEntity result = new AffiliationChangeResultEntity();
+                    result.setRoomName(roomName);
+                    result.setResultType(AffiliationChangeResultEntity.AffiliationChangeResultType.Failure);
+                    result.setMessage("Affiliation change failed due to an unexpected error");
+                    results.add(result);
+                }
+            }
+        }
+        return new AffiliationChangeResultEntities(results);
+    }
+
+    /**
+     * Stops the threads that are used to change affiliations of rooms in parallel.
+     */
+    public synchronized void shutdown() {
+        if (affiliationExecutor != null) {
+            affiliationExecutor.shutdownNow();
+            affiliationExecutor = null;
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getAffiliationExecutor() {
+        if (affiliationExecutor == null) {
+            affiliationExecutor = new ThreadPoolExecutor(AFFILIATION_BATCH_THREADS, AFFILIATION_BATCH_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory("restapi-muc-affiliations-", true, null, null, null));
+            affiliationExecutor.allowCoreThreadTimeOut(true);
+        }
+        return affiliationExecutor;
+    }
+
+    @Nonnull
+    private static List<JID> parseJIDs(@Nonnull final String roomName, final List<String> jids) throws ServiceException
+    {
+        if (jids == null || jids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final Set<JID> result = new LinkedHashSet<>();
+        for (final String jid : jids) {
+            try {
+                result.add(UserUtils.checkAndGetJID(jid));
+            } catch (IllegalArgumentException e) {
+                throw new ServiceException("Unable to parse value as jid: " + jid, roomName, ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION, Response.Status.BAD_REQUEST, e);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Applies all changes for one room, while holding its lock. Entities that already have (or do not have) the
+     * affiliation are skipped. The room is synchronized once, after all changes have been applied.
+     */
+    private static AffiliationChangeResultEntity applyAffiliationChanges(@Nonnull final MultiUserChatService service, @Nonnull final String roomName, @Nonnull final List<AffiliationChange> changes)
+    {
+        final AffiliationChangeResultEntity result = new AffiliationChangeResultEntity();
+        result.setRoomName(roomName);
+        int applied = 0;
+
+        final Lock lock = getLock(service, roomName);
+        lock.lock();
+        try {
+            final MUCRoom room = getRoom(service, roomName);
+            try {
+                for (final AffiliationChange change : changes) {
+                    final List<JID> toAdd = new ArrayList<>(change.add.size());
+                    for (final JID jid : change.add) {
+                        if (room.getAffiliation(jid) != change.affiliation) {
+                            toAdd.add(jid);
+                        }
+                    }
+                    addAffiliatedUsers(room, change.affiliation, toAdd);
+                    applied += toAdd.size();
+
+                    for (final JID remove : change.remove) {
+                        if (room.getAffiliation(remove) == change.affiliation) {
+                            room.addNone(remove, room.getRole());
+                            applied++;
+                        }
+                    }
+                }
+                result.setResultType(AffiliationChangeResultEntity.AffiliationChangeResultType.Success);
+                result.setMessage("Affiliations were successfully changed");
+            } catch (ForbiddenException | NotAllowedException | ConflictException e) {
+                SERVICE_LOG.log("Failed to change affiliations of room: {}", roomName, e);
+                result.setResultType(AffiliationChangeResultEntity.AffiliationChangeResultType.Failure);
+                result.setMessage("Affiliation change failed due to " + e.getClass().getSimpleName() + ": " + e.getMessage());
+            } finally {
+                if (applied > 0 || result.getResultType() != AffiliationChangeResultEntity.AffiliationChangeResultType.Success) {
+                    // Make sure that other cluster nodes see the changes made here, including those made before a failure.
+                    syncChatRoom(service, room);
+                }
+            }
+        } catch (ServiceException e) {
+            result.setResultType(AffiliationChangeResultEntity.AffiliationChangeResultType.Failure);
+            result.setMessage(e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+        result.setApplied(applied);
+        return result;
+    }
+
+    /**
+     * A validated change to the list of entities that have a particular affiliation with a room.
+     */
+    private static final class AffiliationChange {
+        final MUCRole.Affiliation affiliation;
+        final List<JID> add;
+        final List<JID> remove;
+
+        private AffiliationChange(MUCRole.Affiliation affiliation, List<JID> add, List<JID> remove) {
+            this.affiliation = affiliation;
+            this.add = add;
+            this.remove = remove;
+        }
+    }
+
+    /**
+     * An immutable copy of the state of a role that is needed to build entities. Copies are made while holding the
+     * room lock, so that the (comparatively expensive) construction of entities can take place after it is released.
+     */
+    private static final class RoleSnapshot {
+        final JID roleAddress;
+        final JID userAddress;
+        final MUCRole.Role role;
+        final MUCRole.Affiliation affiliation;
+
+        private RoleSnapshot(MUCRole role) {
+            this.roleAddress = role.getRoleAddress();
+            this.userAddress = role.getUserAddress();
+            this.role = role.getRole();
+            this.affiliation = role.getAffiliation();
+        }
+
+        static List<RoleSnapshot> of(Collection<MUCRole> roles) {
+            final List<RoleSnapshot> result = new ArrayList<>(roles.size());
+            for (final MUCRole role : roles) {
+                result.add(new RoleSnapshot(role));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The entity representation of a chat room, along with an entity tag that identifies the state of the room that
+     * the representation was created from.
+     */
+    public static final class TaggedChatRoom {
+        private final MUCRoomEntity entity;
+        private final EntityTag entityTag;
+
+        public TaggedChatRoom(MUCRoomEntity entity, EntityTag entityTag) {
+            this.entity = entity;
+            this.entityTag = entityTag;
+        }
+
+        /**
+         * @return the entity representation of the chat room, or null when it was not created because the client
+         *         already has it.
+         */
+        public MUCRoomEntity getEntity() {
+            return entity;
+        }
+
+        /**
+         * @return the entity tag, or null when none could be determined.
+         */
+        public EntityTag getEntityTag() {
+            return entityTag;
+        }
+    }
 }
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jivesoftware.openfire.plugin.rest.controller;
+
+import org.jivesoftware.openfire.muc.MUCEventListener;
+import org.jivesoftware.openfire.muc.MUCRoom;
+import org.jivesoftware.openfire.muc.MultiUserChatService;
+import org.jivesoftware.openfire.plugin.rest.entity.MUCRoomEntity;
+import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+import org.jivesoftware.openfire.plugin.rest.utils.EntityTagUtils;
+import org.jivesoftware.openfire.plugin.rest.utils.EntityVersions;
+import org.jivesoftware.util.SystemProperty;
+import org.xmpp.packet.JID;
+import org.xmpp.packet.Message;
+
+import javax.annotation.Nonnull;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches immutable snapshots of the entity representation of MUC rooms, for clients that can do with a representation
+ * that is not necessarily consistent with the very latest state of a room.
+ *
+ * Snapshots are created without obtaining the room lock. They are discarded when an event occurs in the room, when
+ * this plugin modifies the room, or when they expire. Snapshots are never modified, but replaced.
+ */
+public class MUCRoomSnapshotCache implements MUCEventListener {
+
+    public static final SystemProperty<Duration> TTL = SystemProperty.Builder.ofType(Duration.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.muc.snapshot-cache.ttl")
+        .setDefaultValue(Duration.ofSeconds(30))
+        .setChronoUnit(ChronoUnit.SECONDS)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Integer> MAX_SIZE = SystemProperty.Builder.ofType(Integer.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.muc.snapshot-cache.max-size")
+        .setDefaultValue(1000)
+        .setMinValue(0)
+        .setDynamic(true)
+        .build();
+
+    private static final MUCRoomSnapshotCache INSTANCE = new MUCRoomSnapshotCache();
+
+    public static MUCRoomSnapshotCache getInstance() {
+        return INSTANCE;
+    }
+
+    /** Snapshots by bare room JID. */
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * Source of the versions of snapshot entries. Every entry gets a new version, so that a snapshot that was created
+     * while its entry was discarded (and possibly recreated) is not stored.
+     */
+    private final AtomicLong versions = new AtomicLong();
+
+    private MUCRoomSnapshotCache() {
+    }
+
+    /**
+     * Returns a snapshot of the entity representation of a room, creating it if no valid snapshot is available.
+     *
+     * @param service the service of the room
+     * @param roomName the name of the room
+     * @param expand whether groups in affiliations are to be expanded to their members
+     * @param mediaType the media type of the representation
+     * @return the entity representation of the room, and the entity tag of the state that it was created from
+     * @throws ServiceException when the room does not exist
+     */
+    public MUCRoomController.TaggedChatRoom get(@Nonnull final MultiUserChatService service, @Nonnull final String roomName, final boolean expand, @Nonnull final MediaType mediaType) throws ServiceException {
+        final String key = new JID(roomName, service.getServiceDomain(), null).toBareJID();
+        final long now = System.currentTimeMillis();
+        final Snapshot snapshot = snapshots.get(key);
+        if (snapshot != null && snapshot.expires > now) {
+            final MUCRoomEntity entity = expand ? snapshot.expanded : snapshot.unexpanded;
+            if (entity != null) {
+                return new MUCRoomController.TaggedChatRoom(entity, expand ? null : createEntityTag(entity, snapshot.unexpandedVersion, mediaType));
+            }
+        }
+
+        if (snapshot == null && snapshots.size() >= MAX_SIZE.getValue()) {
+            snapshots.values().removeIf(s -> s.expires <= now);
+        }
+        // Without an entry to store the snapshot in, the snapshot is created, but not cached.
+        final Snapshot base = snapshot != null || snapshots.size() < MAX_SIZE.getValue()
+            ? snapshots.computeIfAbsent(key, k -> new Snapshot(null, 0, null, 0, versions.incrementAndGet()))
+            : null;
+
+        final MUCRoom room = MUCRoomController.getRoom(service, roomName);
+        // The version is obtained before the entity is created: when the room changes in between, the entity tag
+        // identifies an older state than the entity, which at worst causes a later request to needlessly receive the
+        // room again.
+        final long roomVersion = EntityVersions.getInstance().getRoomVersion(room.getJID());
+        final MUCRoomEntity entity = MUCRoomController.getInstance().convertToMUCRoomEntity(room, expand);
+
+        if (base != null) {
+            snapshots.computeIfPresent(key, (k, existing) -> {
+                if (existing.version != base.version) {
+                    // Invalidated while the entity was being created. It might be outdated already.
+                    return existing;
+                }
+                if (existing.expires <= now) {
+                    return new Snapshot(expand ? null : entity, roomVersion, expand ? entity : null, now + TTL.getValue().toMillis(), existing.version);
+                }
+                return new Snapshot(expand ? existing.unexpanded : entity, expand ? existing.unexpandedVersion : roomVersion, expand ? entity : existing.expanded, existing.expires, existing.version);
+            });
+        }
+        return new MUCRoomController.TaggedChatRoom(entity, expand ? null : createEntityTag(entity, roomVersion, mediaType));
+    }
+
+    private static EntityTag createEntityTag(@Nonnull final MUCRoomEntity entity, final long roomVersion, @Nonnull final MediaType mediaType) {
+        return EntityTagUtils.createEntityTag(mediaType, entity.getModificationDate(), roomVersion);
+    }
+
+    /**
+     * Discards the snapshot of a room.
+     *
+     * @param roomJID the address of the room
+     */
+    public void invalidate(@Nonnull final JID roomJID) {
+        snapshots.remove(roomJID.toBareJID());
+    }
+
+    /**
+     * Discards all snapshots.
+     */
+    public void clear() {
+        snapshots.clear();
+    }
+
+    @Override
+    public void roomCreated(JID roomJID) {
+        invalidate(roomJID);
+    }
+
+    @Override
+    public void roomDestroyed(JID roomJID) {
+        invalidate(roomJID);
+    }
+
+    @Override
+    public void occupantJoined(JID roomJID, JID user, String nickname) {
+        invalidate(roomJID);
+    }
+
+    // Not annotated with @Override: the signature of this method differs between Openfire versions.
+    public void occupantLeft(JID roomJID, JID user) {
+        invalidate(roomJID);
+    }
+
+    // Not annotated with @Override: the signature of this method differs between Openfire versions.
+    public void occupantLeft(JID roomJID, JID user, String nickname) {
+        invalidate(roomJID);
+    }
+
+    // Not annotated with @Override: this method does not exist in all Openfire versions.
+    public void occupantNickKicked(JID roomJID, String nickname) {
+        invalidate(roomJID);
+    }
+
+    @Override
+    public void nicknameChanged(JID roomJID, JID user, String oldNickname, String newNickname) {
+        invalidate(roomJID);
+    }
+
+    @Override
+    public void messageReceived(JID roomJID, JID user, String nickname, Message message) {
+        // Messages do not affect the entity representation of a room.
+    }
+
+    @Override
+    public void privateMessageRecieved(JID toJID, JID fromJID, Message message) {
+        // Messages do not affect the entity representation of a room.
+    }
+
+    @Override
+    public void roomSubjectChanged(JID roomJID, JID user, String newSubject) {
+        invalidate(roomJID);
+    }
+
+    private static final class Snapshot {
+        final MUCRoomEntity unexpanded;
+        /** The version of the room (see {@link EntityVersions}) that the unexpanded entity was created from. */
+        final long unexpandedVersion;
+        final MUCRoomEntity expanded;
+        final long expires;
+        final long version;
+
+        Snapshot(MUCRoomEntity unexpanded, long unexpandedVersion, MUCRoomEntity expanded, long expires, long version) {
+            this.unexpanded = unexpanded;
+            this.unexpandedVersion = unexpandedVersion;
+            this.expanded = expanded;
+            this.expires = expires;
+            this.version = version;
+        }
+    }
+}
@@ -21,13 +21,12 @@ import org.jivesoftware.openfire.muc.ConflictException;
 import org.jivesoftware.openfire.muc.ForbiddenException;
 import org.jivesoftware.openfire.muc.MultiUserChatService;
 import org.jivesoftware.openfire.muc.NotAllowedException;
-import org.jivesoftware.openfire.plugin.rest.RESTServicePlugin;
 import org.jivesoftware.openfire.plugin.rest.entity.MUCServiceEntities;
 import org.jivesoftware.openfire.plugin.rest.entity.MUCServiceEntity;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ExceptionType;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+import org.jivesoftware.openfire.plugin.rest.utils.ServiceLogger;
 import org.jivesoftware.util.AlreadyExistsException;
-import org.jivesoftware.util.JiveGlobals;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,6 +41,7 @@ import java.util.stream.Collectors;
  */
 public class MUCServiceController {
     private static final Logger LOG = LoggerFactory.getLogger(MUCServiceController.class);
+    private static final ServiceLogger SERVICE_LOG = ServiceLogger.getLogger(MUCServiceController.class);
 
     /** The Constant INSTANCE. */
     private static MUCServiceController INSTANCE = null;
@@ -58,12 +58,6 @@ public class MUCServiceController {
         return INSTANCE;
     }
 
-    public static void log(String logMessage) {
-        if (JiveGlobals.getBooleanProperty(RESTServicePlugin.SERVICE_LOGGING_ENABLED, false)) {
-            LOG.info(logMessage);
-        }
-    }
-
     /**
      * Returns the MultiUserChatService instance for the provided name.
      *
@@ -107,7 +101,7 @@ public class MUCServiceController {
      *             the service exception
      */
     public void createChatService(MUCServiceEntity mucServiceEntity) throws ServiceException {
-        log("Create a chat service: " + mucServiceEntity.getServiceName());
+        SERVICE_LOG.log("Create a chat service: {}", mucServiceEntity.getServiceName());
         try {
             createService(mucServiceEntity);
         } catch (NotAllowedException | ForbiddenException e) {
@@ -140,7 +134,7 @@ public class MUCServiceController {
     private void createService(MUCServiceEntity mucServiceEntity) throws NotAllowedException,
         ForbiddenException, ConflictException, AlreadyExistsException
     {
-        log("Create a chat service: " + mucServiceEntity.getServiceName());
+        SERVICE_LOG.log("Create a chat service: {}", mucServiceEntity.getServiceName());
 
         // Create the new service
         XMPPServer.getInstance().getMultiUserChatManager().createMultiUserChatService(
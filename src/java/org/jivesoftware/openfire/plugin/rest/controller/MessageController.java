@@ -16,12 +16,56 @@
 
 package org.jivesoftware.openfire.plugin.rest.controller;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.io.StringReader;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.ws.rs.core.Response;
 
+import org.dom4j.DocumentException;
+import org.dom4j.Element;
+import org.dom4j.io.SAXReader;
 import org.jivesoftware.openfire.SessionManager;
+import org.jivesoftware.openfire.XMPPServer;
+import org.jivesoftware.openfire.group.Group;
+import org.jivesoftware.openfire.group.GroupManager;
+import org.jivesoftware.openfire.group.GroupNotFoundException;
+import org.jivesoftware.openfire.plugin.rest.entity.BroadcastEntity;
+import org.jivesoftware.openfire.plugin.rest.entity.BroadcastJobEntity;
+import org.jivesoftware.openfire.plugin.rest.entity.DirectMessageEntities;
+import org.jivesoftware.openfire.plugin.rest.entity.DirectMessageEntity;
 import org.jivesoftware.openfire.plugin.rest.entity.MessageEntity;
+import org.jivesoftware.openfire.plugin.rest.entity.MessageRoutingResultEntities;
+import org.jivesoftware.openfire.plugin.rest.entity.MessageRoutingResultEntity;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ExceptionType;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+import org.jivesoftware.openfire.session.ClientSession;
+import org.jivesoftware.openfire.session.LocalClientSession;
+import org.jivesoftware.util.NamedThreadFactory;
+import org.jivesoftware.util.SystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.JID;
+import org.xmpp.packet.Message;
+import org.xml.sax.SAXException;
 
 /**
  * The Class MessageController.
@@ -30,6 +74,52 @@ public class MessageController {
     /** The Constant INSTANCE. */
     public static final MessageController INSTANCE = new MessageController();
 
+    /** The log. */
+    private static final Logger LOG = LoggerFactory.getLogger(MessageController.class);
+
+    public static final SystemProperty<Integer> BROADCAST_RATE = SystemProperty.Builder.ofType(Integer.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.messages.broadcast.rate")
+        .setDefaultValue(1000)
+        .setMinValue(1)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Integer> BROADCAST_MAX_ACTIVE_JOBS = SystemProperty.Builder.ofType(Integer.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.messages.broadcast.max-active-jobs")
+        .setDefaultValue(5)
+        .setMinValue(1)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Integer> MAX_RECIPIENTS = SystemProperty.Builder.ofType(Integer.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.messages.max-recipients")
+        .setDefaultValue(10000)
+        .setMinValue(1)
+        .setDynamic(true)
+        .build();
+
+    /** The number of threads that deliver messages. */
+    private static final int DELIVERY_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    /** The number of recipients of a message that are routed by one thread, before another thread takes over. */
+    private static final int ROUTING_BATCH_SIZE = 500;
+
+    /** The message types that can be used when sending messages. */
+    private static final Set<Message.Type> ALLOWED_TYPES = EnumSet.of(Message.Type.normal, Message.Type.chat, Message.Type.headline);
+
+    /** The interval at which a batch of a broadcast is delivered. */
+    private static final long BROADCAST_TICK_MILLIS = 100;
+
+    /** The period after which the progress of a finished broadcast is no longer available. */
+    private static final Duration BROADCAST_RETENTION = Duration.ofHours(1);
+
+    private final Map<String, BroadcastJob> broadcastJobs = new ConcurrentHashMap<>();
+
+    private ScheduledThreadPoolExecutor deliveryExecutor;
+
     /**
      * Gets the single instance of MessageController.
      *
@@ -57,4 +147,485 @@ public class MessageController {
         }
     }
 
+    /**
+     * Starts delivering a message to the recipients described by the broadcast in the background. Delivery takes place
+     * in batches, limited to a configurable amount of messages per second that is shared by all active broadcasts.
+     *
+     * @param broadcastEntity
+     *            the message and its recipients
+     * @return the progress of the broadcast
+     * @throws ServiceException
+     *             when the broadcast is invalid, or too many broadcasts are active
+     */
+    public BroadcastJobEntity startBroadcast(BroadcastEntity broadcastEntity) throws ServiceException {
+        if (broadcastEntity.getBody() == null || broadcastEntity.getBody().isEmpty()) {
+            throw new ServiceException("Message content/body is null or empty", "",
+                    ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION,
+                    Response.Status.BAD_REQUEST);
+        }
+        if (broadcastEntity.getNode() != null && !"Local".equalsIgnoreCase(broadcastEntity.getNode()) && !"Remote".equalsIgnoreCase(broadcastEntity.getNode())) {
+            throw new ServiceException("Node must be either 'Local' or 'Remote'", broadcastEntity.getNode(),
+                    ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION,
+                    Response.Status.BAD_REQUEST);
+        }
+
+        // Parse users immediately, to be able to report invalid addresses, which would otherwise fail the broadcast later.
+        final Set<JID> users = new LinkedHashSet<>();
+        if (broadcastEntity.getUsers() != null) {
+            for (final String username : broadcastEntity.getUsers()) {
+                try {
+                    users.add(username.contains("@") ? new JID(username).asBareJID() : XMPPServer.getInstance().createJID(username, null));
+                } catch (IllegalArgumentException e) {
+                    throw new ServiceException("Not a valid username or JID", username, ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION,
+                            Response.Status.BAD_REQUEST, e);
+                }
+            }
+        }
+
+        // Look up groups immediately, to be able to report non-existing groups. Their members are resolved later.
+        final List<Group> groups = new ArrayList<>();
+        if (broadcastEntity.getGroups() != null) {
+            for (final String groupName : broadcastEntity.getGroups()) {
+                try {
+                    groups.add(GroupManager.getInstance().getGroup(groupName));
+                } catch (GroupNotFoundException e) {
+                    throw new ServiceException("Could not find group", groupName, ExceptionType.GROUP_NOT_FOUND,
+                            Response.Status.NOT_FOUND, e);
+                }
+            }
+        }
+
+        final BroadcastJob job;
+        synchronized (this) {
+            purgeBroadcastJobs();
+            if (getActiveBroadcastCount() >= BROADCAST_MAX_ACTIVE_JOBS.getValue()) {
+                throw new ServiceException("Too many broadcasts are being delivered", "",
+                        ExceptionType.BROADCAST_LIMIT_EXCEEDED,
+                        Response.Status.SERVICE_UNAVAILABLE);
+            }
+            job = new BroadcastJob(broadcastEntity, users, groups);
+            broadcastJobs.put(job.id, job);
+            job.schedule(getDeliveryExecutor());
+        }
+        return job.toEntity();
+    }
+
+    /**
+     * Gets the progress of a broadcast.
+     *
+     * @param jobId
+     *            the identifier of the broadcast
+     * @return the progress of the broadcast
+     * @throws ServiceException
+     *             when the broadcast does not exist (anymore)
+     */
+    public BroadcastJobEntity getBroadcast(String jobId) throws ServiceException {
+        return findBroadcastJob(jobId).toEntity();
+    }
+
+    /**
+     * Stops delivering a broadcast. Messages that have already been sent are not affected.
+     *
+     * @param jobId
+     *            the identifier of the broadcast
+     * @throws ServiceException
+     *             when the broadcast does not exist (anymore)
+     */
+    public void cancelBroadcast(String jobId) throws ServiceException {
+        findBroadcastJob(jobId).finish(BroadcastStatus.Cancelled);
+    }
+
+    /**
+     * Sends messages on behalf of local entities. Every message is constructed once, after which a copy is routed to
+     * each of its recipients. Recipients are processed in batches, which are distributed over a number of threads.
+     *
+     * Problems with individual messages or recipients do not prevent the other messages from being sent; they are
+     * reported in the result instead.
+     *
+     * @param messageEntities
+     *            the messages to send
+     * @return the routing result per recipient
+     * @throws ServiceException
+     *             when no messages are provided, or when there are too many recipients
+     */
+    public MessageRoutingResultEntities sendMessages(DirectMessageEntities messageEntities) throws ServiceException {
+        if (messageEntities == null || messageEntities.getMessages() == null || messageEntities.getMessages().isEmpty()) {
+            throw new ServiceException("No messages provided", "",
+                    ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION,
+                    Response.Status.BAD_REQUEST);
+        }
+        int recipientCount = 0;
+        for (final DirectMessageEntity messageEntity : messageEntities.getMessages()) {
+            recipientCount += messageEntity.getTo() == null ? 0 : messageEntity.getTo().size();
+        }
+        if (recipientCount > MAX_RECIPIENTS.getValue()) {
+            throw new ServiceException("Too many recipients. At most " + MAX_RECIPIENTS.getValue() + " recipients can be provided", String.valueOf(recipientCount),
+                    ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION,
+                    Response.Status.BAD_REQUEST);
+        }
+
+        final List<MessageRoutingResultEntity> results = new ArrayList<>(recipientCount);
+        final List<RoutingBatch> batches = new ArrayList<>();
+        for (final DirectMessageEntity messageEntity : messageEntities.getMessages()) {
+            final List<String> recipients = messageEntity.getTo() == null ? Collections.emptyList() : messageEntity.getTo();
+            final Message template;
+            try {
+                template = createMessage(messageEntity);
+            } catch (IllegalArgumentException e) {
+                for (final String recipient : recipients) {
+                    results.add(new MessageRoutingResultEntity(messageEntity.getFrom(), recipient, MessageRoutingResultEntity.MessageRoutingResultType.Failure, e.getMessage()));
+                }
+                continue;
+            }
+            for (int i = 0; i < recipients.size(); i += ROUTING_BATCH_SIZE) {
+                final List<String> batch = recipients.subList(i, Math.min(recipients.size(), i + ROUTING_BATCH_SIZE));
+                Future<List<MessageRoutingResultEntity>> future;
+                try {
+                    future = getDeliveryExecutor().submit(() -> routeMessage(template, batch));
+                } catch (RejectedExecutionException e) {
+                    // The executor was shut down, as the plugin is being unloaded.
+                    future = null;
+                }
+                batches.add(new RoutingBatch(template.getFrom().toString(), batch, future));
+            }
+        }
+
+        try {
+            for (final RoutingBatch batch : batches) {
+                results.addAll(batch.getResults());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted while sending messages", "", "InterruptedException",
+                    Response.Status.INTERNAL_SERVER_ERROR, e);
+        }
+        return new MessageRoutingResultEntities(results);
+    }
+
+    /**
+     * Stops delivering all broadcasts, and releases the threads used to deliver messages.
+     */
+    public synchronized void shutdown() {
+        for (final BroadcastJob job : broadcastJobs.values()) {
+            job.finish(BroadcastStatus.Cancelled);
+        }
+        broadcastJobs.clear();
+        if (deliveryExecutor != null) {
+            for (final Runnable task : deliveryExecutor.shutdownNow()) {
+                // Tasks that never run would otherwise leave requests that wait for their results waiting forever.
+                if (task instanceof Future) {
+                    ((Future<?>) task).cancel(false);
+                }
+            }
+            deliveryExecutor = null;
+        }
+    }
+
+    private synchronized ScheduledThreadPoolExecutor getDeliveryExecutor() {
+        if (deliveryExecutor == null) {
+            deliveryExecutor = new ScheduledThreadPoolExecutor(DELIVERY_THREADS,
+                    new NamedThreadFactory("restapi-message-delivery-", true, null, null, null));
+            deliveryExecutor.setRemoveOnCancelPolicy(true);
+        }
+        return deliveryExecutor;
+    }
+
+    /**
+     * Creates the message that is sent to every recipient of the message entity, without an addressee.
+     *
+     * @throws IllegalArgumentException when the message entity is not valid
+     */
+    private static Message createMessage(DirectMessageEntity messageEntity) {
+        if (messageEntity.getFrom() == null || messageEntity.getFrom().isEmpty()) {
+            throw new IllegalArgumentException("No sender provided");
+        }
+        final JID from;
+        try {
+            from = new JID(messageEntity.getFrom());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Sender is not a valid JID");
+        }
+        if (!XMPPServer.getInstance().isLocal(from) && !XMPPServer.getInstance().getServerInfo().getXMPPDomain().equals(from.toBareJID())) {
+            throw new IllegalArgumentException("Sender is not a local user or the domain of this server");
+        }
+        if ((messageEntity.getBody() == null || messageEntity.getBody().isEmpty())
+            && (messageEntity.getExtensions() == null || messageEntity.getExtensions().isEmpty())) {
+            throw new IllegalArgumentException("Message has no body and no extensions");
+        }
+
+        final Message message = new Message();
+        message.setFrom(from);
+        if (messageEntity.getType() != null) {
+            final Message.Type type;
+            try {
+                type = Message.Type.valueOf(messageEntity.getType());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Message type is not supported: " + messageEntity.getType());
+            }
+            if (!ALLOWED_TYPES.contains(type)) {
+                throw new IllegalArgumentException("Message type is not supported: " + messageEntity.getType());
+            }
+            message.setType(type);
+        }
+        if (messageEntity.getSubject() != null) {
+            message.setSubject(messageEntity.getSubject());
+        }
+        if (messageEntity.getBody() != null) {
+            message.setBody(messageEntity.getBody());
+        }
+        if (messageEntity.getExtensions() != null) {
+            for (final String extension : messageEntity.getExtensions()) {
+                message.getElement().add(parseExtension(extension));
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Parses an extension element. Document type declarations are rejected, to prevent entity expansion.
+     *
+     * @throws IllegalArgumentException when the extension is not a well-formed XML element
+     */
+    private static Element parseExtension(String extension) {
+        try {
+            final SAXReader reader = new SAXReader();
+            reader.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            reader.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            reader.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            final Element element = reader.read(new StringReader(extension)).getRootElement();
+            element.detach();
+            return element;
+        } catch (DocumentException | SAXException e) {
+            throw new IllegalArgumentException("Extension is not valid XML: " + e.getMessage());
+        }
+    }
+
+    private static List<MessageRoutingResultEntity> routeMessage(Message template, List<String> recipients) {
+        final List<MessageRoutingResultEntity> results = new ArrayList<>(recipients.size());
+        final String from = template.getFrom().toString();
+        for (final String recipient : recipients) {
+            final JID to;
+            try {
+                to = new JID(recipient);
+            } catch (IllegalArgumentException e) {
+                results.add(new MessageRoutingResultEntity(from, recipient, MessageRoutingResultEntity.MessageRoutingResultType.Failure, "Not a valid JID"));
+                continue;
+            }
+            final Message message = template.createCopy();
+            message.setTo(to);
+            try {
+                XMPPServer.getInstance().getPacketRouter().route(message);
+                results.add(new MessageRoutingResultEntity(from, recipient, MessageRoutingResultEntity.MessageRoutingResultType.Success, null));
+            } catch (RuntimeException e) {
+                LOG.debug("Unable to route message from {} to {}", from, to, e);
+                results.add(new MessageRoutingResultEntity(from, recipient, MessageRoutingResultEntity.MessageRoutingResultType.Failure, "Unable to route message"));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Recipients of a message that are routed by one task. When the task is not executed (as the plugin is unloaded),
+     * or fails, all of its recipients are reported as failures.
+     */
+    private static final class RoutingBatch {
+        private final String from;
+        private final List<String> recipients;
+        private final Future<List<MessageRoutingResultEntity>> future;
+
+        private RoutingBatch(String from, List<String> recipients, Future<List<MessageRoutingResultEntity>> future) {
+            this.from = from;
+            this.recipients = recipients;
+            this.future = future;
+        }
+
+        private List<MessageRoutingResultEntity> getResults() throws InterruptedException {
+            if (future != null) {
+                try {
+                    return future.get();
+                } catch (CancellationException e) {
+                    LOG.debug("Messages from {} were not routed, as the plugin is being unloaded.", from);
+                } catch (ExecutionException e) {
+                    LOG.warn("Unable to route messages from {}", from, e.getCause());
+                }
+            }
+            final List<MessageRoutingResultEntity> results = new ArrayList<>(recipients.size());
+            for (final String recipient : recipients) {
+                results.add(new MessageRoutingResultEntity(from, recipient, MessageRoutingResultEntity.MessageRoutingResultType.Failure, "Message was not routed"));
+            }
+            return results;
+        }
+    }
+
+    private BroadcastJob findBroadcastJob(String jobId) throws ServiceException {
+        final BroadcastJob job = broadcastJobs.get(jobId);
+        if (job == null) {
+            throw new ServiceException("Could not find broadcast", jobId, ExceptionType.BROADCAST_NOT_FOUND,
+                    Response.Status.NOT_FOUND);
+        }
+        return job;
+    }
+
+    private int getActiveBroadcastCount() {
+        int count = 0;
+        for (final BroadcastJob job : broadcastJobs.values()) {
+            if (!job.status.isFinished()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void purgeBroadcastJobs() {
+        final long threshold = System.currentTimeMillis() - BROADCAST_RETENTION.toMillis();
+        broadcastJobs.values().removeIf(job -> job.completionDate != null && job.completionDate.getTime() < threshold);
+    }
+
+    private enum BroadcastStatus {
+        Queued, Running, Completed, Cancelled, Failed;
+
+        boolean isFinished() {
+            return this == Completed || this == Cancelled || this == Failed;
+        }
+    }
+
+    /**
+     * A broadcast that is being delivered. Every tick of the executor delivers one batch; the size of that batch is
+     * derived from the configured rate and the number of broadcasts that are active.
+     */
+    private class BroadcastJob {
+        private final String id = UUID.randomUUID().toString();
+        private final Date creationDate = new Date();
+        private final BroadcastEntity request;
+        private final Set<JID> users;
+        private final List<Group> groups;
+        private final Message template;
+        private final AtomicInteger sent = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        private volatile BroadcastStatus status = BroadcastStatus.Queued;
+        private volatile Date completionDate;
+        private volatile List<JID> recipients;
+        private volatile ScheduledFuture<?> future;
+
+        /** Only accessed by the task that delivers the broadcast, which never runs concurrently with itself. */
+        private int next;
+
+        private BroadcastJob(BroadcastEntity request, Set<JID> users, List<Group> groups) {
+            this.request = request;
+            this.users = users;
+            this.groups = groups;
+            template = new Message();
+            template.setFrom(XMPPServer.getInstance().getServerInfo().getXMPPDomain());
+            template.setBody(request.getBody());
+            if (request.getSubject() != null) {
+                template.setSubject(request.getSubject());
+            }
+        }
+
+        private void schedule(ScheduledThreadPoolExecutor executor) {
+            future = executor.scheduleAtFixedRate(this::tick, 0, BROADCAST_TICK_MILLIS, TimeUnit.MILLISECONDS);
+            if (status.isFinished()) {
+                // Finished before the future was available to be cancelled.
+                future.cancel(false);
+            }
+        }
+
+        private void tick() {
+            if (status.isFinished()) {
+                return;
+            }
+            try {
+                if (recipients == null) {
+                    status = BroadcastStatus.Running;
+                    recipients = resolveRecipients();
+                }
+                final int active = Math.max(1, getActiveBroadcastCount());
+                final int batchSize = (int) Math.max(1, BROADCAST_RATE.getValue() * BROADCAST_TICK_MILLIS / 1000 / active);
+                final int end = Math.min(recipients.size(), next + batchSize);
+                for (; next < end && !status.isFinished(); next++) {
+                    final Message message = template.createCopy();
+                    message.setTo(recipients.get(next));
+                    try {
+                        XMPPServer.getInstance().getPacketRouter().route(message);
+                        sent.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        LOG.debug("Unable to deliver broadcast {} to {}", id, message.getTo(), e);
+                        failed.incrementAndGet();
+                    }
+                }
+                if (next >= recipients.size()) {
+                    finish(BroadcastStatus.Completed);
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Unable to deliver broadcast {}", id, e);
+                finish(BroadcastStatus.Failed);
+            }
+        }
+
+        private synchronized void finish(BroadcastStatus finalStatus) {
+            if (status.isFinished()) {
+                return;
+            }
+            status = finalStatus;
+            completionDate = new Date();
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        private List<JID> resolveRecipients() {
+            final boolean noTargets = users.isEmpty() && groups.isEmpty();
+            final boolean onlineOnly = noTargets || request.isOnlineOnly() || request.getNode() != null;
+            final SessionManager sessionManager = SessionManager.getInstance();
+
+            if (noTargets) {
+                return toSessionAddresses(sessionManager.getSessions());
+            }
+
+            final Set<JID> users = new LinkedHashSet<>(this.users);
+            for (final Group group : groups) {
+                users.addAll(group.getMembers());
+                users.addAll(group.getAdmins());
+            }
+            if (!onlineOnly) {
+                return new ArrayList<>(users);
+            }
+
+            final List<JID> result = new ArrayList<>();
+            for (final JID user : users) {
+                if (XMPPServer.getInstance().isLocal(user)) {
+                    result.addAll(toSessionAddresses(sessionManager.getSessions(user.getNode())));
+                }
+            }
+            return result;
+        }
+
+        private List<JID> toSessionAddresses(Collection<ClientSession> sessions) {
+            final List<JID> result = new ArrayList<>(sessions.size());
+            for (final ClientSession session : sessions) {
+                if (request.getNode() != null) {
+                    final boolean local = session instanceof LocalClientSession;
+                    if (local != "Local".equalsIgnoreCase(request.getNode())) {
+                        continue;
+                    }
+                }
+                result.add(session.getAddress());
+            }
+            return result;
+        }
+
+        private BroadcastJobEntity toEntity() {
+            final BroadcastJobEntity entity = new BroadcastJobEntity();
+            entity.setJobId(id);
+            entity.setStatus(status.name());
+            final List<JID> resolved = recipients;
+            entity.setRecipients(resolved == null ? 0 : resolved.size());
+            entity.setSent(sent.get());
+            entity.setFailed(failed.get());
+            entity.setCreationDate(creationDate);
+            entity.setCompletionDate(completionDate);
+            return entity;
+        }
+    }
 }
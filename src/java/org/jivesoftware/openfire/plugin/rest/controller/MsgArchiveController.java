@@ -16,12 +16,20 @@
 
 package org.jivesoftware.openfire.plugin.rest.controller;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import org.jivesoftware.database.DbConnectionManager;
+import org.jivesoftware.openfire.plugin.rest.entity.MsgArchiveMessageEntity;
+import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+import org.jivesoftware.openfire.plugin.rest.utils.StreamingUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xmpp.packet.JID;
@@ -42,6 +50,16 @@ public class MsgArchiveController {
             "join ofPresence p on (a.sentDate > p.offlineDate) " +
             "WHERE a.toJID = ? AND p.username = ?";
 
+    /** The Constant SELECT_MESSAGES. Filters are appended to this, followed by ORDER_MESSAGES. */
+    private static final String SELECT_MESSAGES = "SELECT messageID, conversationID, fromJID, fromJIDResource, toJID, toJIDResource, sentDate, body, stanza " +
+            "FROM ofMessageArchive WHERE 1=1";
+
+    /** The Constant ORDER_MESSAGES. The order must match the keyset that is used for pagination. */
+    private static final String ORDER_MESSAGES = " ORDER BY sentDate, messageID";
+
+    /** The Constant FETCH_SIZE. The amount of rows that the database driver is asked to fetch per round-trip. */
+    private static final int FETCH_SIZE = 500;
+
     /**
      * Gets the single instance of MsgArchiveController.
      *
@@ -84,4 +102,111 @@ public class MsgArchiveController {
         }
         return messageCount;
     }
+
+    /**
+     * Parses a pagination cursor, as used by {@link #streamMessages}.
+     *
+     * @param cursor the cursor, in the format <tt>sentDate:messageID</tt> (can be null)
+     * @return a two-element array containing the sentDate and messageID, or null when no cursor was provided.
+     * @throws ServiceException when the cursor cannot be parsed
+     */
+    public static long[] parseCursor(String cursor) throws ServiceException {
+        return StreamingUtils.parseCursor(cursor, "sentDate:messageID");
+    }
+
+    /**
+     * Reads archived messages, ordered by the moment they were sent, and passes them to the consumer one at a time.
+     *
+     * Pagination is based on the (sentDate, messageID) key of the last message that was received by the client
+     * rather than on an offset, which keeps the cost of reading a page independent of its position in the archive.
+     * Rows are read from the database in chunks, which keeps memory usage constant regardless of the amount of
+     * messages that are read.
+     *
+     * @param participants the (bare) JIDs of which at least one needs to be the sender or addressee of a message (can be empty)
+     * @param conversationID the conversation that messages need to be part of (can be null)
+     * @param startTime the oldest moment (inclusive, in milliseconds since the epoch) that messages were sent (can be null)
+     * @param endTime the most recent moment (exclusive, in milliseconds since the epoch) that messages were sent (can be null)
+     * @param after the cursor (see {@link #parseCursor(String)}) after which to return messages (can be null)
+     * @param limit the maximum amount of messages to return, 0 or less for 'unlimited'
+     * @param includeStanza whether to include the raw stanza of each message
+     * @param consumer receives each of the messages
+     * @throws IOException when the messages cannot be read or consumed
+     */
+    public void streamMessages(Collection<JID> participants, Long conversationID, Long startTime, Long endTime, long[] after,
+                               int limit, boolean includeStanza, StreamingUtils.EntityConsumer<MsgArchiveMessageEntity> consumer) throws IOException {
+        if (participants == null) {
+            participants = Collections.emptyList();
+        }
+        final StringBuilder sql = new StringBuilder(SELECT_MESSAGES);
+        final List<Object> arguments = new ArrayList<>();
+        if (!participants.isEmpty()) {
+            final String placeholders = String.join(",", Collections.nCopies(participants.size(), "?"));
+            sql.append(" AND (fromJID IN (").append(placeholders).append(") OR toJID IN (").append(placeholders).append("))");
+            for (int i = 0; i < 2; i++) {
+                for (final JID participant : participants) {
+                    arguments.add(participant.toBareJID());
+                }
+            }
+        }
+        if (conversationID != null) {
+            sql.append(" AND conversationID = ?");
+            arguments.add(conversationID);
+        }
+        if (startTime != null) {
+            sql.append(" AND sentDate >= ?");
+            arguments.add(startTime);
+        }
+        if (endTime != null) {
+            sql.append(" AND sentDate < ?");
+            arguments.add(endTime);
+        }
+        if (after != null) {
+            sql.append(" AND (sentDate > ? OR (sentDate = ? AND messageID > ?))");
+            arguments.add(after[0]);
+            arguments.add(after[0]);
+            arguments.add(after[1]);
+        }
+        sql.append(ORDER_MESSAGES);
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            con = DbConnectionManager.getConnection();
+            pstmt = con.prepareStatement(sql.toString());
+            for (int i = 0; i < arguments.size(); i++) {
+                final Object argument = arguments.get(i);
+                if (argument instanceof Long) {
+                    pstmt.setLong(i + 1, (Long) argument);
+                } else {
+                    pstmt.setString(i + 1, (String) argument);
+                }
+            }
+            if (limit > 0) {
+                DbConnectionManager.setMaxRows(pstmt, limit);
+            }
+            DbConnectionManager.setFetchSize(pstmt, limit > 0 ? Math.min(limit, FETCH_SIZE) : FETCH_SIZE);
+            rs = pstmt.executeQuery();
+            while (rs.next()) {
+                final MsgArchiveMessageEntity message = new MsgArchiveMessageEntity();
+                message.setMessageID(rs.getLong(1));
+                message.setConversationID(rs.getLong(2));
+                message.setFromJID(rs.getString(3));
+                message.setFromJIDResource(rs.getString(4));
+                message.setToJID(rs.getString(5));
+                message.setToJIDResource(rs.getString(6));
+                message.setSentDate(rs.getLong(7));
+                message.setBody(rs.getString(8));
+                if (includeStanza) {
+                    message.setStanza(rs.getString(9));
+                }
+                consumer.accept(message);
+            }
+        } catch (SQLException sqle) {
+            LOG.error("Unable to read messages from the message archive.", sqle);
+            throw new IOException("Unable to read messages from the message archive.", sqle);
+        } finally {
+            DbConnectionManager.closeConnection(rs, pstmt, con);
+        }
+    }
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jivesoftware.openfire.plugin.rest.controller;
+
+import org.jivesoftware.openfire.group.Group;
+import org.jivesoftware.openfire.group.GroupJID;
+import org.jivesoftware.openfire.muc.MUCRole;
+import org.jivesoftware.openfire.muc.MUCRoom;
+import org.jivesoftware.openfire.plugin.rest.entity.MUCRoomEntity;
+import org.jivesoftware.openfire.plugin.rest.utils.GroupResolver;
+import org.xmpp.packet.JID;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The users and groups that are affiliated with a room, as owner, admin, member or outcast.
+ *
+ * A snapshot is created in a single pass over the affiliations of a room, without resolving groups. Groups are only
+ * looked up when their names or members are needed. Empty affiliation lists, which are common, share one immutable
+ * instance, and are compared without allocating.
+ */
+final class RoomAffiliationSnapshot {
+
+    private static final int OWNER = 0;
+    private static final int ADMIN = 1;
+    private static final int MEMBER = 2;
+    private static final int OUTCAST = 3;
+
+    /** The affiliations, in the order of their index. */
+    private static final MUCRole.Affiliation[] AFFILIATIONS = {
+        MUCRole.Affiliation.owner, MUCRole.Affiliation.admin, MUCRole.Affiliation.member, MUCRole.Affiliation.outcast
+    };
+
+    /** Bare JIDs of the users, indexed by affiliation. */
+    private final List<String>[] users;
+
+    /** JIDs that represent groups, indexed by affiliation. */
+    private final List<JID>[] groupJIDs;
+
+    @SuppressWarnings("unchecked")
+    private RoomAffiliationSnapshot() {
+        users = new List[AFFILIATIONS.length];
+        groupJIDs = new List[AFFILIATIONS.length];
+    }
+
+    /**
+     * Creates a snapshot of the affiliations of a room.
+     *
+     * This method should only be invoked after the caller has obtained and engaged the room lock.
+     *
+     * @param room the room of which to copy affiliations
+     * @return a snapshot that is independent of later changes to the room
+     */
+    @Nonnull
+    static RoomAffiliationSnapshot of(@Nonnull final MUCRoom room) {
+        final RoomAffiliationSnapshot snapshot = new RoomAffiliationSnapshot();
+        snapshot.add(OWNER, room.getOwners());
+        snapshot.add(ADMIN, room.getAdmins());
+        snapshot.add(MEMBER, room.getMembers());
+        snapshot.add(OUTCAST, room.getOutcasts());
+        return snapshot;
+    }
+
+    private void add(final int index, final Collection<JID> jids) {
+        if (jids.isEmpty()) {
+            users[index] = Collections.emptyList();
+            groupJIDs[index] = Collections.emptyList();
+            return;
+        }
+        List<String> userList = null;
+        List<JID> groupList = null;
+        for (final JID jid : jids) {
+            if (GroupJID.isGroup(jid)) {
+                if (groupList == null) {
+                    groupList = new ArrayList<>();
+                }
+                groupList.add(jid);
+            } else if (jid.getResource() == null) {
+                if (userList == null) {
+                    userList = new ArrayList<>(jids.size());
+                }
+                userList.add(jid.toBareJID());
+            }
+        }
+        users[index] = userList == null ? Collections.emptyList() : userList;
+        groupJIDs[index] = groupList == null ? Collections.emptyList() : groupList;
+    }
+
+    /**
+     * Returns the bare JIDs of the users that have an affiliation with the room (excluding groups).
+     */
+    @Nonnull
+    List<String> getUsers(@Nonnull final MUCRole.Affiliation affiliation) {
+        return users[index(affiliation)];
+    }
+
+    /**
+     * Returns the groups that have an affiliation with the room. Groups that no longer exist are ignored.
+     */
+    @Nonnull
+    List<Group> getGroups(@Nonnull final MUCRole.Affiliation affiliation) {
+        final List<JID> jids = groupJIDs[index(affiliation)];
+        if (jids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<Group> result = new ArrayList<>(jids.size());
+        for (final JID jid : jids) {
+            final Group group = GroupResolver.getInstance().getGroup(jid);
+            if (group != null) {
+                result.add(group);
+            }
+            // Groups that no longer exist are ignored, consistent with the way Openfire itself treats these.
+        }
+        return result;
+    }
+
+    /**
+     * Returns the names of the groups that have an affiliation with the room. Groups that no longer exist are ignored.
+     */
+    @Nonnull
+    List<String> getGroupNames(@Nonnull final MUCRole.Affiliation affiliation) {
+        final List<Group> groups = getGroups(affiliation);
+        if (groups.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<String> result = new ArrayList<>(groups.size());
+        for (final Group group : groups) {
+            result.add(group.getName());
+        }
+        return result;
+    }
+
+    /**
+     * Checks if the affiliations of an entity (users as well as groups) are the same as those in this snapshot. The
+     * order of the affiliations, and duplicates, are ignored.
+     *
+     * @param mucRoomEntity the entity to compare with
+     * @return true if all affiliations are equal, otherwise false.
+     */
+    boolean matches(@Nonnull final MUCRoomEntity mucRoomEntity) {
+        return sameElements(users[OWNER], mucRoomEntity.getOwners())
+            && sameElements(users[ADMIN], mucRoomEntity.getAdmins())
+            && sameElements(users[MEMBER], mucRoomEntity.getMembers())
+            && sameElements(users[OUTCAST], mucRoomEntity.getOutcasts())
+            && sameGroups(OWNER, mucRoomEntity.getOwnerGroups())
+            && sameGroups(ADMIN, mucRoomEntity.getAdminGroups())
+            && sameGroups(MEMBER, mucRoomEntity.getMemberGroups())
+            && sameGroups(OUTCAST, mucRoomEntity.getOutcastGroups());
+    }
+
+    private boolean sameGroups(final int index, final List<String> groupNames) {
+        if (groupJIDs[index].isEmpty()) {
+            return groupNames == null || groupNames.isEmpty();
+        }
+        // Groups need to be resolved, as JIDs of groups that no longer exist do not count.
+        return sameElements(getGroupNames(AFFILIATIONS[index]), groupNames);
+    }
+
+    private static boolean sameElements(final List<String> roomValues, final List<String> entityValues) {
+        if (entityValues == null || entityValues.isEmpty()) {
+            return roomValues.isEmpty();
+        }
+        if (roomValues.isEmpty()) {
+            return false;
+        }
+        return new HashSet<>(roomValues).equals(new HashSet<>(entityValues));
+    }
+
+    private static int index(final MUCRole.Affiliation affiliation) {
+        switch (affiliation) {
+            case owner:
+                return OWNER;
+            case admin:
+                return ADMIN;
+            case member:
+                return MEMBER;
+            case outcast:
+                return OUTCAST;
+            default:
+                throw new IllegalArgumentException("Unsupported affiliation: " + affiliation);
+        }
+    }
+}
@@ -16,22 +16,47 @@
 
 package org.jivesoftware.openfire.plugin.rest.controller;
 
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 import javax.ws.rs.core.Response;
 
+import org.jivesoftware.database.DbConnectionManager;
 import org.jivesoftware.openfire.plugin.rest.entity.SecurityAuditLog;
 import org.jivesoftware.openfire.plugin.rest.entity.SecurityAuditLogs;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+import org.jivesoftware.openfire.plugin.rest.utils.StreamingUtils;
 import org.jivesoftware.openfire.security.AuditWriteOnlyException;
+import org.jivesoftware.openfire.security.DefaultSecurityAuditProvider;
 import org.jivesoftware.openfire.security.SecurityAuditEvent;
 import org.jivesoftware.openfire.security.SecurityAuditManager;
+import org.jivesoftware.openfire.security.SecurityAuditProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class SecurityAuditLogController {
+	private static final Logger LOG = LoggerFactory.getLogger(SecurityAuditLogController.class);
+
 	public static final SecurityAuditLogController INSTANCE = new SecurityAuditLogController();
 
+	/** Filters are appended to this, followed by ORDER_EVENTS. */
+	private static final String SELECT_EVENTS = "SELECT msgID, username, entryStamp, summary, node, details FROM ofSecurityAuditLog WHERE msgID > ?";
+
+	/** The order must match the key that is used for pagination. */
+	private static final String ORDER_EVENTS = " ORDER BY msgID";
+
+	/** The amount of rows that the database driver is asked to fetch per round-trip. */
+	private static final int FETCH_SIZE = 500;
+
+	/** The column names used when exporting log entries in tabular form. */
+	public static final String[] COLUMNS = { "logId", "username", "timestamp", "summary", "node", "details" };
+
 	public static SecurityAuditLogController getInstance() {
 		return INSTANCE;
 	}
@@ -66,4 +91,119 @@ public class SecurityAuditLogController {
 		
 		return new SecurityAuditLogs(securityAuditLogs);
 	}
+
+	/**
+	 * Gets the security audit logs that were written after a particular log entry.
+	 *
+	 * Unlike {@link #getSecurityAuditLogs(String, int, int, long, long)}, the cost of this method does not depend on
+	 * how far into the log the requested page is, which makes it suitable to incrementally follow the log.
+	 *
+	 * @param username the username of the user for which to return logs (can be null)
+	 * @param afterMsgID the identifier of the last log entry that was received (0 to start at the beginning)
+	 * @param limit the maximum number of log entries to return
+	 * @param startTimeTimeStamp oldest timestamp (in seconds) of the logs to return, 0 for 'forever'
+	 * @param endTimeTimeStamp most recent timestamp (in seconds) of the logs to return, 0 for 'now'
+	 * @return the security audit logs, ordered by their identifier
+	 * @throws ServiceException when the logs cannot be read
+	 */
+	public SecurityAuditLogs getSecurityAuditLogsAfter(String username, long afterMsgID, int limit, long startTimeTimeStamp,
+			long endTimeTimeStamp) throws ServiceException {
+		checkCursorSupported();
+		final List<SecurityAuditLog> securityAuditLogs = new ArrayList<SecurityAuditLog>();
+		try {
+			streamSecurityAuditLogs(username, afterMsgID, limit, startTimeTimeStamp, endTimeTimeStamp, securityAuditLogs::add);
+		} catch (IOException e) {
+			throw new ServiceException("Could not get security audit logs", "SecurityLogs", "IOException",
+					Response.Status.INTERNAL_SERVER_ERROR, e);
+		}
+		return new SecurityAuditLogs(securityAuditLogs);
+	}
+
+	/**
+	 * Verifies that the security audit log can be read using a cursor, which requires the log to be stored in the
+	 * database by Openfire's default provider.
+	 *
+	 * @throws ServiceException when the log cannot be read in this way
+	 */
+	public void checkCursorSupported() throws ServiceException {
+		final SecurityAuditProvider provider = SecurityAuditManager.getInstance().getSecurityAuditProvider();
+		if (provider.isWriteOnly()) {
+			throw new ServiceException("Could not get security audit logs, because the permission is set to write only",
+					"SecurityLogs", "AuditWriteOnlyException", Response.Status.FORBIDDEN);
+		}
+		if (!(provider instanceof DefaultSecurityAuditProvider)) {
+			throw new ServiceException("Cursor-based access to the security audit logs is only available for the default security audit provider",
+					"SecurityLogs", "UnsupportedOperationException", Response.Status.NOT_IMPLEMENTED);
+		}
+	}
+
+	/**
+	 * Reads the security audit logs that were written after a particular log entry, and passes them to the consumer
+	 * one at a time. Callers should first invoke {@link #checkCursorSupported()}.
+	 *
+	 * @param username the username of the user for which to return logs (can be null)
+	 * @param afterMsgID the identifier of the last log entry that was received (0 to start at the beginning)
+	 * @param limit the maximum number of log entries to return, 0 or less for 'unlimited'
+	 * @param startTimeTimeStamp oldest timestamp (in seconds) of the logs to return, 0 for 'forever'
+	 * @param endTimeTimeStamp most recent timestamp (in seconds) of the logs to return, 0 for 'now'
+	 * @param consumer receives each of the log entries
+	 * @throws IOException when the logs cannot be read or consumed
+	 */
+	public void streamSecurityAuditLogs(String username, long afterMsgID, int limit, long startTimeTimeStamp,
+			long endTimeTimeStamp, StreamingUtils.EntityConsumer<SecurityAuditLog> consumer) throws IOException {
+		final StringBuilder sql = new StringBuilder(SELECT_EVENTS);
+		if (username != null) {
+			sql.append(" AND username = ?");
+		}
+		if (startTimeTimeStamp != 0) {
+			sql.append(" AND entryStamp >= ?");
+		}
+		if (endTimeTimeStamp != 0) {
+			sql.append(" AND entryStamp <= ?");
+		}
+		sql.append(ORDER_EVENTS);
+
+		Connection con = null;
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+		try {
+			con = DbConnectionManager.getConnection();
+			pstmt = con.prepareStatement(sql.toString());
+			int i = 1;
+			pstmt.setLong(i++, afterMsgID);
+			if (username != null) {
+				pstmt.setString(i++, username);
+			}
+			if (startTimeTimeStamp != 0) {
+				pstmt.setLong(i++, startTimeTimeStamp * 1000);
+			}
+			if (endTimeTimeStamp != 0) {
+				pstmt.setLong(i, endTimeTimeStamp * 1000);
+			}
+			if (limit > 0) {
+				DbConnectionManager.setMaxRows(pstmt, limit);
+			}
+			DbConnectionManager.setFetchSize(pstmt, limit > 0 ? Math.min(limit, FETCH_SIZE) : FETCH_SIZE);
+			rs = pstmt.executeQuery();
+			while (rs.next()) {
+				consumer.accept(new SecurityAuditLog(rs.getLong(1), rs.getString(2), rs.getLong(3) / 1000,
+						rs.getString(4), rs.getString(5), rs.getString(6)));
+			}
+		} catch (SQLException sqle) {
+			LOG.error("Unable to read the security audit log.", sqle);
+			throw new IOException("Unable to read the security audit log.", sqle);
+		} finally {
+			DbConnectionManager.closeConnection(rs, pstmt, con);
+		}
+	}
+
+	/**
+	 * Returns the values of a log entry, in the order of {@link #COLUMNS}.
+	 *
+	 * @param log the log entry
+	 * @return the values of the log entry
+	 */
+	public static Object[] toRecord(SecurityAuditLog log) {
+		return new Object[] { log.getLogId(), log.getUsername(), log.getTimestamp(), log.getSummary(), log.getNode(), log.getDetails() };
+	}
 }
@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jivesoftware.openfire.plugin.rest.controller;
+
+import org.jivesoftware.database.DbConnectionManager;
+import org.jivesoftware.openfire.plugin.rest.entity.SecurityAuditLog;
+import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+import org.jivesoftware.openfire.plugin.rest.utils.StreamingUtils;
+import org.jivesoftware.util.SystemProperty;
+import org.jivesoftware.util.TaskEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TimerTask;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes new entries of the security audit log to clients that are 'tailing' the log.
+ *
+ * A single, shared task polls the database for entries that were written after the last entry that it has seen, and
+ * distributes these to all subscribers. The task only runs while there are subscribers. Subscribers that resume from
+ * an earlier entry first catch up by reading directly from the database.
+ *
+ * Log identifiers are not necessarily committed in order: cluster nodes obtain identifiers in blocks, and transactions
+ * can commit in a different order than the one in which their identifiers were obtained. Therefore, every read also
+ * covers a trailing window of identifiers below the most recent one that was seen, and entries are de-duplicated by their
+ * identifier. Entries that become visible after their identifier has left that window are missed.
+ */
+public class SecurityAuditLogTailer {
+    private static final Logger LOG = LoggerFactory.getLogger(SecurityAuditLogTailer.class);
+
+    public static final SystemProperty<Duration> POLL_INTERVAL = SystemProperty.Builder.ofType(Duration.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.logs.security.tail.poll-interval")
+        .setDefaultValue(Duration.ofSeconds(2))
+        .setMinValue(Duration.ofMillis(100))
+        .setChronoUnit(ChronoUnit.MILLIS)
+        .setDynamic(false)
+        .build();
+
+    public static final SystemProperty<Duration> KEEP_ALIVE_INTERVAL = SystemProperty.Builder.ofType(Duration.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.logs.security.tail.keep-alive-interval")
+        .setDefaultValue(Duration.ofSeconds(15))
+        .setMinValue(Duration.ofSeconds(1))
+        .setChronoUnit(ChronoUnit.SECONDS)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Duration> MAX_DURATION = SystemProperty.Builder.ofType(Duration.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.logs.security.tail.max-duration")
+        .setDefaultValue(Duration.ofHours(1))
+        .setMinValue(Duration.ofMinutes(1))
+        .setChronoUnit(ChronoUnit.MINUTES)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Integer> MAX_SUBSCRIBERS = SystemProperty.Builder.ofType(Integer.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.logs.security.tail.max-subscribers")
+        .setDefaultValue(10)
+        .setMinValue(1)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Integer> RESCAN_WINDOW = SystemProperty.Builder.ofType(Integer.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.logs.security.tail.rescan-window")
+        .setDefaultValue(100)
+        .setMinValue(0)
+        .setDynamic(true)
+        .build();
+
+    /** The amount of entries that is read from the database in one query. */
+    private static final int PAGE_SIZE = 500;
+
+    /** The amount of entries that can be queued for a subscriber before it needs to catch up from the database. */
+    private static final int QUEUE_CAPACITY = 1000;
+
+    private static final String MAX_MSG_ID = "SELECT MAX(msgID) FROM ofSecurityAuditLog";
+
+    private static final SecurityAuditLogTailer INSTANCE = new SecurityAuditLogTailer();
+
+    public static SecurityAuditLogTailer getInstance() {
+        return INSTANCE;
+    }
+
+    private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+
+    private final AtomicInteger reservedSlots = new AtomicInteger();
+
+    /** The identifier of the most recent log entry that has been distributed to subscribers. */
+    private volatile long lastMsgID = -1;
+
+    /** The entries within the trailing window that have been distributed to subscribers. Only used by the polling task. */
+    private final RecentIds distributed = new RecentIds();
+
+    private TimerTask pollTask;
+
+    private SecurityAuditLogTailer() {
+    }
+
+    /**
+     * Reserves capacity for a new subscriber. Every successful invocation must be followed by an invocation of
+     * {@link #tail(String, long, OutputStream)}, which releases the reservation when it finishes.
+     *
+     * @throws ServiceException when the maximum amount of subscribers has been reached
+     */
+    public void reserve() throws ServiceException {
+        if (reservedSlots.incrementAndGet() > MAX_SUBSCRIBERS.getValue()) {
+            reservedSlots.decrementAndGet();
+            throw new ServiceException("Too many clients are tailing the security audit log", "SecurityLogs",
+                "TooManySubscribersException", Response.Status.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * Writes log entries as server-sent events to the output, until the client disconnects or the maximum duration of
+     * a subscription has passed. Clients can resume by passing the id of the last received event.
+     *
+     * @param username the username of the user for which to return logs (can be null)
+     * @param afterMsgID the identifier of the last log entry that was received by the client, or a negative value to
+     *                   only receive entries that are written from now on
+     * @param output the destination of the events
+     * @throws IOException when the log cannot be read, or the events cannot be written
+     */
+    public void tail(String username, long afterMsgID, OutputStream output) throws IOException {
+        final Subscriber subscriber = new Subscriber(username);
+        try {
+            final long head = subscribe(subscriber);
+            // When resuming, entries that became visible after the client received them are within the window.
+            long lastSent = afterMsgID < 0 ? head : Math.max(0, afterMsgID - RESCAN_WINDOW.getValue());
+            lastSent = catchUp(username, lastSent, head, subscriber.sent, output);
+            output.flush();
+
+            final long deadline = System.currentTimeMillis() + MAX_DURATION.getValue().toMillis();
+            while (System.currentTimeMillis() < deadline) {
+                if (subscriber.overflowed) {
+                    // The subscriber could not keep up. Discard what has been queued and get it from the database instead.
+                    subscriber.overflowed = false;
+                    subscriber.queue.clear();
+                    lastSent = catchUp(username, Math.max(0, lastSent - RESCAN_WINDOW.getValue()), lastMsgID, subscriber.sent, output);
+                }
+
+                final SecurityAuditLog log = subscriber.queue.poll(KEEP_ALIVE_INTERVAL.getValue().toMillis(), TimeUnit.MILLISECONDS);
+                if (log == null) {
+                    // Comments are ignored by clients, but allow a disconnected client to be detected.
+                    output.write(":\n\n".getBytes(StandardCharsets.UTF_8));
+                } else if (subscriber.sent.add(log.getLogId())) {
+                    writeEvent(log, output);
+                    lastSent = Math.max(lastSent, log.getLogId());
+                }
+                if (subscriber.queue.isEmpty()) {
+                    output.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            unsubscribe(subscriber);
+            reservedSlots.decrementAndGet();
+        }
+    }
+
+    /**
+     * Stops polling the database. Existing subscribers will no longer receive new entries.
+     */
+    public synchronized void shutdown() {
+        if (pollTask != null) {
+            TaskEngine.getInstance().cancelScheduledTask(pollTask);
+            pollTask = null;
+        }
+    }
+
+    /**
+     * Writes all entries with an identifier in the range (after, until] to the output, except for those that have been
+     * written before.
+     *
+     * @return the identifier of the last entry in the range, or 'after' if the range is empty.
+     */
+    private long catchUp(String username, long after, long until, RecentIds sent, OutputStream output) throws IOException {
+        final SecurityAuditLogController controller = SecurityAuditLogController.getInstance();
+        while (after < until) {
+            final List<SecurityAuditLog> page = new ArrayList<>();
+            controller.streamSecurityAuditLogs(username, after, PAGE_SIZE, 0, 0, page::add);
+            for (final SecurityAuditLog log : page) {
+                if (log.getLogId() > until) {
+                    return after;
+                }
+                if (sent.add(log.getLogId())) {
+                    writeEvent(log, output);
+                }
+                after = log.getLogId();
+            }
+            if (page.size() < PAGE_SIZE) {
+                break;
+            }
+        }
+        return after;
+    }
+
+    private static void writeEvent(SecurityAuditLog log, OutputStream output) throws IOException {
+        output.write(("id: " + log.getLogId() + "\nevent: log\ndata: ").getBytes(StandardCharsets.UTF_8));
+        output.write(StreamingUtils.toJson(log));
+        output.write("\n\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Registers a subscriber, starting the polling task if needed.
+     *
+     * @return the identifier of the most recent log entry at the time of registration. The subscriber will receive
+     *         all entries with a higher identifier.
+     */
+    private synchronized long subscribe(Subscriber subscriber) throws IOException {
+        if (pollTask == null) {
+            lastMsgID = readMaxMsgID();
+            // Entries within the window have been written before any subscriber registered. Do not distribute these.
+            distributed.clear();
+            SecurityAuditLogController.getInstance().streamSecurityAuditLogs(null,
+                Math.max(0, lastMsgID - RESCAN_WINDOW.getValue()), 0, 0, 0, log -> distributed.add(log.getLogId()));
+            pollTask = new TimerTask() {
+                @Override
+                public void run() {
+                    poll();
+                }
+            };
+            final long interval = POLL_INTERVAL.getValue().toMillis();
+            TaskEngine.getInstance().schedule(pollTask, interval, interval);
+        }
+        subscribers.add(subscriber);
+        return lastMsgID;
+    }
+
+    private synchronized void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        if (subscribers.isEmpty()) {
+            shutdown();
+        }
+    }
+
+    private void poll() {
+        try {
+            final List<SecurityAuditLog> page = new ArrayList<>();
+            long after = Math.max(0, lastMsgID - RESCAN_WINDOW.getValue());
+            do {
+                page.clear();
+                SecurityAuditLogController.getInstance().streamSecurityAuditLogs(null, after, PAGE_SIZE, 0, 0, page::add);
+                for (final SecurityAuditLog log : page) {
+                    after = log.getLogId();
+                    if (!distributed.add(log.getLogId())) {
+                        continue;
+                    }
+                    // Update before distributing: a subscriber that registers in between will read it from the database.
+                    lastMsgID = Math.max(lastMsgID, log.getLogId());
+                    for (final Subscriber subscriber : subscribers) {
+                        subscriber.offer(log);
+                    }
+                }
+            } while (page.size() == PAGE_SIZE);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to poll the security audit log for new entries.", e);
+        }
+    }
+
+    private static long readMaxMsgID() throws IOException {
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            con = DbConnectionManager.getConnection();
+            pstmt = con.prepareStatement(MAX_MSG_ID);
+            rs = pstmt.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException sqle) {
+            LOG.error("Unable to read the security audit log.", sqle);
+            throw new IOException("Unable to read the security audit log.", sqle);
+        } finally {
+            DbConnectionManager.closeConnection(rs, pstmt, con);
+        }
+    }
+
+    /**
+     * The identifiers of log entries that have been processed, limited to those within the trailing window.
+     */
+    private static class RecentIds {
+        private final NavigableSet<Long> ids = new TreeSet<>();
+
+        /**
+         * Records an identifier, pruning identifiers that are no longer in the window below the highest identifier.
+         *
+         * @return false if the identifier was recorded before.
+         */
+        private synchronized boolean add(long id) {
+            if (!ids.add(id)) {
+                return false;
+            }
+            prune(ids.last() - RESCAN_WINDOW.getValue());
+            return true;
+        }
+
+        /**
+         * Forgets all identifiers up to and including the provided one.
+         */
+        private synchronized void prune(long upTo) {
+            ids.headSet(upTo, true).clear();
+        }
+
+        private synchronized void clear() {
+            ids.clear();
+        }
+    }
+
+    private static class Subscriber {
+        private final String username;
+        private final BlockingQueue<SecurityAuditLog> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final RecentIds sent = new RecentIds();
+        private volatile boolean overflowed;
+
+        private Subscriber(String username) {
+            this.username = username;
+        }
+
+        private void offer(SecurityAuditLog log) {
+            if (username != null && !username.equals(log.getUsername())) {
+                return;
+            }
+            if (!queue.offer(log)) {
+                overflowed = true;
+            }
+        }
+    }
+}
@@ -23,11 +23,13 @@ import org.jivesoftware.openfire.group.Group;
 import org.jivesoftware.openfire.group.GroupManager;
 import org.jivesoftware.openfire.group.GroupNotFoundException;
 import org.jivesoftware.openfire.lockout.LockOutManager;
-import org.jivesoftware.openfire.plugin.rest.RESTServicePlugin;
 import org.jivesoftware.openfire.plugin.rest.dao.PropertyDAO;
 import org.jivesoftware.openfire.plugin.rest.entity.*;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ExceptionType;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+import org.jivesoftware.openfire.plugin.rest.utils.EntityTagUtils;
+import org.jivesoftware.openfire.plugin.rest.utils.EntityVersions;
+import org.jivesoftware.openfire.plugin.rest.utils.ServiceLogger;
 import org.jivesoftware.openfire.plugin.rest.utils.UserUtils;
 import org.jivesoftware.openfire.roster.Roster;
 import org.jivesoftware.openfire.roster.RosterItem;
@@ -37,12 +39,13 @@ import org.jivesoftware.openfire.user.User;
 import org.jivesoftware.openfire.user.UserAlreadyExistsException;
 import org.jivesoftware.openfire.user.UserManager;
 import org.jivesoftware.openfire.user.UserNotFoundException;
-import org.jivesoftware.util.JiveGlobals;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xmpp.packet.JID;
 import org.xmpp.packet.StreamError;
 
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -53,6 +56,7 @@ import java.util.List;
  */
 public class UserServiceController {
     private static final Logger LOG = LoggerFactory.getLogger(UserServiceController.class);
+    private static final ServiceLogger SERVICE_LOG = ServiceLogger.getLogger(UserServiceController.class);
 
     /** The Constant INSTANCE. */
     private static UserServiceController INSTANCE = null;
@@ -100,12 +104,6 @@ public class UserServiceController {
         lockOutManager = server.getLockOutManager();
     }
 
-    public static void log(String logMessage) {
-        if (JiveGlobals.getBooleanProperty(RESTServicePlugin.SERVICE_LOGGING_ENABLED, false)) {
-            LOG.info(logMessage);
-        }
-    }
-
     /**
      * Creates the user.
      *
@@ -120,7 +118,7 @@ public class UserServiceController {
                 throw new ServiceException("Could not create new user, because password is null",
                         userEntity.getUsername(), "PasswordIsNull", Response.Status.BAD_REQUEST);
             }
-            log("Create a new user: " + userEntity.getUsername());
+            SERVICE_LOG.log("Create a new user: {}", userEntity.getUsername());
             try {
                 userManager.createUser(userEntity.getUsername(), userEntity.getPassword(), userEntity.getName(),
                         userEntity.getEmail());
@@ -147,7 +145,7 @@ public class UserServiceController {
      */
     public void updateUser(String username, UserEntity userEntity) throws ServiceException {
         if (userEntity != null && !username.isEmpty()) {
-            log("Update the user: " + userEntity.getUsername());
+            SERVICE_LOG.log("Update the user: {}", userEntity.getUsername());
             // Payload contains another username than provided over path
             // parameter
             if (userEntity.getUsername() != null) {
@@ -182,7 +180,7 @@ public class UserServiceController {
      *             the service exception
      */
     public void deleteUser(String username) throws ServiceException {
-        log("Delete the user: " + username);
+        SERVICE_LOG.log("Delete the user: {}", username);
         User user = getAndCheckUser(username);
         userManager.deleteUser(user);
 
@@ -208,10 +206,10 @@ public class UserServiceController {
     public UserEntities getUserEntities(String userSearch, String propertyKey, String propertyValue)
             throws ServiceException {
         if (propertyKey != null) {
-            log("Get users by property");
+            SERVICE_LOG.log("Get users by property");
             return getUserEntitiesByProperty(propertyKey, propertyValue);
         }
-        log("Get all users");
+        SERVICE_LOG.log("Get all users");
         UserEntities userEntities = new UserEntities();
         userEntities.setUsers(UserUtils.convertUsersToUserEntities(userManager.getUsers(), userSearch));
         return userEntities;
@@ -227,10 +225,26 @@ public class UserServiceController {
      *             the service exception
      */
     public UserEntity getUserEntity(String username) throws ServiceException {
-        log("Get user entity from user: " + username);
+        SERVICE_LOG.log("Get user entity from user: {}", username);
         return UserUtils.convertUserToUserEntity(getAndCheckUser(username));
     }
 
+    /**
+     * Gets an entity tag that identifies the current state of a user, without building its entity representation.
+     *
+     * @param username
+     *            the username
+     * @param mediaType
+     *            the media type of the representation
+     * @return the entity tag
+     * @throws ServiceException
+     *             the service exception
+     */
+    public EntityTag getUserEntityTag(String username, MediaType mediaType) throws ServiceException {
+        final User user = getAndCheckUser(username);
+        return EntityTagUtils.createEntityTag(mediaType, user.getModificationDate(), EntityVersions.getInstance().getUserVersion(user.getUsername()));
+    }
+
     /**
      * Enable user.
      *
@@ -240,7 +254,7 @@ public class UserServiceController {
      *             the service exception
      */
     public void enableUser(String username) throws ServiceException {
-        log("Enable the user: " + username);
+        SERVICE_LOG.log("Enable the user: {}", username);
         getAndCheckUser(username);
         lockOutManager.enableAccount(username);
     }
@@ -254,7 +268,7 @@ public class UserServiceController {
      *             the service exception
      */
     public void disableUser(String username) throws ServiceException {
-        log("Disable the user: " + username);
+        SERVICE_LOG.log("Disable the user: {}", username);
         getAndCheckUser(username);
         lockOutManager.disableAccount(username, null, null);
         
@@ -277,7 +291,7 @@ public class UserServiceController {
      *             the service exception
      */
     public RosterEntities getRosterEntities(String username) throws ServiceException {
-        log("Get roster entities for user: " + username);
+        SERVICE_LOG.log("Get roster entities for user: {}", username);
         Roster roster = getUserRoster(username);
 
         List<RosterItemEntity> rosterEntities = new ArrayList<>();
@@ -315,7 +329,7 @@ public class UserServiceController {
             throw new ServiceException("JID is null", "JID", "IllegalArgumentException", Response.Status.BAD_REQUEST);
         }
         JID jid = new JID(rosterItemEntity.getJid());
-        log("Adding a roster item to: " + rosterItemEntity.getJid());
+        SERVICE_LOG.log("Adding a roster item to: {}", rosterItemEntity.getJid());
         try {
             roster.getRosterItem(jid);
             throw new UserAlreadyExistsException(jid.toBareJID());
@@ -350,7 +364,7 @@ public class UserServiceController {
      */
     public void updateRosterItem(String username, String rosterJid, RosterItemEntity rosterItemEntity)
             throws ServiceException, UserNotFoundException, UserAlreadyExistsException, SharedGroupException {
-        log("Updating a roster item for user: " + username + ", with roster JID: " + rosterJid);
+        SERVICE_LOG.log("Updating a roster item for user: {}, with roster JID: {}", username, rosterJid);
         getAndCheckUser(username);
 
         Roster roster = getUserRoster(username);
@@ -382,7 +396,7 @@ public class UserServiceController {
      *             the service exception
      */
     public void deleteRosterItem(String username, String rosterJid) throws SharedGroupException, ServiceException {
-        log("Deleting a roster item for user: " + username + ", with roster JID: " + rosterJid);
+        SERVICE_LOG.log("Deleting a roster item for user: {}, with roster JID: {}", username, rosterJid);
         getAndCheckUser(username);
         Roster roster = getUserRoster(username);
         JID jid = new JID(rosterJid);
@@ -403,7 +417,7 @@ public class UserServiceController {
      *             the service exception
      */
     public List<String> getUserGroups(String username) throws ServiceException {
-        log("Get user groups for user: " + username);
+        SERVICE_LOG.log("Get user groups for user: {}", username);
         if (username.contains("@")) {
             final JID jid = new JID(username);
             if (jid.getDomain().equals(XMPPServer.getInstance().getServerInfo().getXMPPDomain())) {
@@ -435,14 +449,14 @@ public class UserServiceController {
      */
     public void addUserToGroups(String username, UserGroupsEntity userGroupsEntity) throws ServiceException {
         if (userGroupsEntity != null) {
-            log("Adding user: " + username + " to groups");
+            SERVICE_LOG.log("Adding user: {} to groups", username);
             Collection<Group> groups = new ArrayList<>();
 
             for (String groupName : userGroupsEntity.getGroupNames()) {
                 Group group;
                 try {
                     group = GroupManager.getInstance().getGroup(groupName);
-                    log("Adding user: " + username + " to a group: " + groupName);
+                    SERVICE_LOG.log("Adding user: {} to a group: {}", username, groupName);
                 } catch (GroupNotFoundException e) {
                     // Create this group
                     group = GroupController.getInstance().createGroup(new GroupEntity(groupName, ""));
@@ -463,13 +477,13 @@ public class UserServiceController {
      * @throws ServiceException the service exception
      */
     public void addUserToGroup(String username, String groupName) throws ServiceException {
-        log("Adding user: " + username + " to a group: " + groupName);
+        SERVICE_LOG.log("Adding user: {} to a group: {}", username, groupName);
         Group group;
         try {
             group = GroupManager.getInstance().getGroup(groupName);
         } catch (GroupNotFoundException e) {
             // Create this group
-            log("Group: " + groupName + " does not exist. Creating the group");
+            SERVICE_LOG.log("Group: {} does not exist. Creating the group", groupName);
             group = GroupController.getInstance().createGroup(new GroupEntity(groupName, ""));
         }
         
@@ -488,9 +502,9 @@ public class UserServiceController {
      */
     public void deleteUserFromGroups(String username, UserGroupsEntity userGroupsEntity) throws ServiceException {
         if (userGroupsEntity != null) {
-            log("Removing user: " + username + " from groups");
+            SERVICE_LOG.log("Removing user: {} from groups", username);
             for (String groupName : userGroupsEntity.getGroupNames()) {
-                log("deleteUserFromGroups, "+username+ ", groupName: "+groupName);
+                SERVICE_LOG.log("deleteUserFromGroups, {}, groupName: {}", username, groupName);
                 Group group;
                 try {
                     group = GroupManager.getInstance().getGroup(groupName);
@@ -498,7 +512,7 @@ public class UserServiceController {
                     throw new ServiceException("Could not find group", groupName, ExceptionType.GROUP_NOT_FOUND,
                             Response.Status.NOT_FOUND, e);
                 }
-                log("Removing user: " + username + " from the group: " + groupName);
+                SERVICE_LOG.log("Removing user: {} from the group: {}", username, groupName);
                 group.getMembers().remove(username.contains("@") ? new JID(username) : XMPPServer.getInstance().createJID(username, null));
             }
         }
@@ -512,7 +526,7 @@ public class UserServiceController {
      * @throws ServiceException the service exception
      */
     public void deleteUserFromGroup(String username, String groupName) throws ServiceException {
-        log("Removing user: " + username + " from the group: " + groupName);
+        SERVICE_LOG.log("Removing user: {} from the group: {}", username, groupName);
         Group group;
         try {
             group = GroupManager.getInstance().getGroup(groupName);
@@ -535,7 +549,7 @@ public class UserServiceController {
      *             the service exception
      */
     public UserEntities getUserEntitiesByProperty(String propertyKey, String propertyValue) throws ServiceException {
-        log("Get user entities by property key : " + propertyKey + "and property value: " + propertyValue);
+        SERVICE_LOG.log("Get user entities by property key : {} and property value: {}", propertyKey, propertyValue);
         List<String> usernames = PropertyDAO.getUsernameByProperty(propertyKey, propertyValue);
         List<UserEntity> users = new ArrayList<>();
         UserEntities userEntities = new UserEntities();
@@ -559,7 +573,7 @@ public class UserServiceController {
      *             the service exception
      */
     private void addProperties(String username, List<UserProperty> properties) throws ServiceException {
-        log("Adding a property to user: " + username);
+        SERVICE_LOG.log("Adding a property to user: {}", username);
         User user = getAndCheckUser(username);
         user.getProperties().clear();
         if (properties != null) {
@@ -603,7 +617,7 @@ public class UserServiceController {
      *             the service exception
      */
     private Roster getUserRoster(String username) throws ServiceException {
-        log("getUserRoster, "+username);
+        SERVICE_LOG.log("getUserRoster, {}", username);
         try {
             return rosterManager.getRoster(username);
         } catch (UserNotFoundException e) {
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jivesoftware.openfire.plugin.rest.entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+import java.util.List;
+
+/**
+ * A change to the list of entities that have a particular affiliation with a room.
+ */
+@XmlRootElement(name = "affiliationChange")
+@XmlType(propOrder = { "roomName", "affiliation", "add", "remove" })
+public class AffiliationChangeEntity {
+
+    private String roomName;
+    private String affiliation;
+    private List<String> add;
+    private List<String> remove;
+
+    public AffiliationChangeEntity() {
+    }
+
+    @XmlElement
+    @Schema(description = "The name of the room of which to change affiliations.", example = "lobby")
+    public String getRoomName() {
+        return roomName;
+    }
+
+    public void setRoomName(String roomName) {
+        this.roomName = roomName;
+    }
+
+    @XmlElement
+    @Schema(description = "The type of affiliation. One of: 'admins', 'members', 'outcasts', 'owners' (the singular form is also accepted).", example = "members")
+    public String getAffiliation() {
+        return affiliation;
+    }
+
+    public void setAffiliation(String affiliation) {
+        this.affiliation = affiliation;
+    }
+
+    @XmlElementWrapper(name = "add")
+    @XmlElement(name = "jid")
+    @JsonProperty(value = "add")
+    @Schema(description = "JIDs of entities that are to be given the affiliation. Any other affiliation that they have with the room is replaced.", example = "[\"john@example.org\"]")
+    public List<String> getAdd() {
+        return add;
+    }
+
+    public void setAdd(List<String> add) {
+        this.add = add;
+    }
+
+    @XmlElementWrapper(name = "remove")
+    @XmlElement(name = "jid")
+    @JsonProperty(value = "remove")
+    @Schema(description = "JIDs of entities of which the affiliation is to be removed. Entities that do not have the affiliation are ignored.", example = "[\"jane@example.org\"]")
+    public List<String> getRemove() {
+        return remove;
+    }
+
+    public void setRemove(List<String> remove) {
+        this.remove = remove;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jivesoftware.openfire.plugin.rest.entity;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+@XmlRootElement(name = "result")
+@XmlType(propOrder = { "roomName", "resultType", "applied", "message"})
+public class AffiliationChangeResultEntity {
+
+    public enum AffiliationChangeResultType {
+        Success, Failure
+    }
+
+    String roomName;
+    AffiliationChangeResultType resultType;
+    int applied;
+    String message;
+
+    @XmlElement
+    @Schema(description = "The name of the room of which affiliations were to be changed", example = "lobby")
+    public String getRoomName() {
+        return roomName;
+    }
+
+    public void setRoomName(String roomName) {
+        this.roomName = roomName;
+    }
+
+    @XmlElement
+    @Schema(description = "The result of changing the affiliations of the room", example = "Success")
+    public AffiliationChangeResultType getResultType() {
+        return resultType;
+    }
+
+    public void setResultType(AffiliationChangeResultType resultType) {
+        this.resultType = resultType;
+    }
+
+    @XmlElement
+    @Schema(description = "The number of affiliations that were added or removed. Entities that already had (or did not have) the affiliation are not counted.", example = "3")
+    public int getApplied() {
+        return applied;
+    }
+
+    public void setApplied(int applied) {
+        this.applied = applied;
+    }
+
+    @XmlElement
+    @Schema(description = "A message describing the result", example = "Forbidden to apply modification to list of owner")
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jivesoftware.openfire.plugin.rest.entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * An API key that can be used to authenticate requests to the REST API.
+ */
+@XmlRootElement(name = "apiKey")
+@XmlType(propOrder = { "id", "name", "scopes", "creationDate", "expiryDate", "lastUsedDate", "key" })
+public class ApiKeyEntity {
+
+    private String id;
+    private String name;
+    private List<String> scopes;
+    private Date creationDate;
+    private Date expiryDate;
+    private Date lastUsedDate;
+    private String key;
+
+    public ApiKeyEntity() {
+    }
+
+    @XmlElement
+    @Schema(description = "The identifier of the key, which is also the part of the key before the first period.", example = "3f1c9a2b7e4d", accessMode = Schema.AccessMode.READ_ONLY)
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    @XmlElement
+    @Schema(description = "A description of the client that uses the key.", example = "Provisioning system")
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @XmlElementWrapper(name = "scopes")
+    @XmlElement(name = "scope")
+    @JsonProperty(value = "scopes")
+    @Schema(description = "What the key can be used for: 'admin', 'read-only', 'muc-admin' and/or 'user-admin'.", example = "[\"muc-admin\"]")
+    public List<String> getScopes() {
+        return scopes;
+    }
+
+    public void setScopes(List<String> scopes) {
+        this.scopes = scopes;
+    }
+
+    @XmlElement
+    @Schema(description = "The moment the key was created.", accessMode = Schema.AccessMode.READ_ONLY)
+    public Date getCreationDate() {
+        return creationDate;
+    }
+
+    public void setCreationDate(Date creationDate) {
+        this.creationDate = creationDate;
+    }
+
+    @XmlElement
+    @Schema(description = "The moment after which the key can no longer be used (optional).")
+    public Date getExpiryDate() {
+        return expiryDate;
+    }
+
+    public void setExpiryDate(Date expiryDate) {
+        this.expiryDate = expiryDate;
+    }
+
+    @XmlElement
+    @Schema(description = "The moment the key was last used, if it has been used. Updated periodically.", accessMode = Schema.AccessMode.READ_ONLY)
+    public Date getLastUsedDate() {
+        return lastUsedDate;
+    }
+
+    public void setLastUsedDate(Date lastUsedDate) {
+        this.lastUsedDate = lastUsedDate;
+    }
+
+    @XmlElement
+    @Schema(description = "The key itself. Only returned when the key is created: it is not stored, and cannot be retrieved later.", example = "3f1c9a2b7e4d.q8V0m0n2cXW1bS8Zr3kA5t7yU9oP1lE2", accessMode = Schema.AccessMode.READ_ONLY)
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+}
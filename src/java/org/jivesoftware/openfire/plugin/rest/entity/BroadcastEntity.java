@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jivesoftware.openfire.plugin.rest.entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+import java.util.List;
+
+/**
+ * A message that is to be broadcast to a (potentially large) set of recipients.
+ */
+@XmlRootElement(name = "broadcast")
+@XmlType(propOrder = { "body", "subject", "users", "groups", "onlineOnly", "node" })
+public class BroadcastEntity {
+
+    private String body;
+    private String subject;
+    private List<String> users;
+    private List<String> groups;
+    private boolean onlineOnly;
+    private String node;
+
+    public BroadcastEntity() {
+    }
+
+    @XmlElement
+    @Schema(description = "The message body.", example = "The server will be restarted in 10 minutes.")
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    @XmlElement
+    @Schema(description = "The message subject (optional).", example = "Maintenance")
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    @XmlElementWrapper(name = "users")
+    @XmlElement(name = "user")
+    @JsonProperty(value = "users")
+    @Schema(description = "Usernames of users to send the message to.", example = "[\"john\", \"jane\"]")
+    public List<String> getUsers() {
+        return users;
+    }
+
+    public void setUsers(List<String> users) {
+        this.users = users;
+    }
+
+    @XmlElementWrapper(name = "groups")
+    @XmlElement(name = "group")
+    @JsonProperty(value = "groups")
+    @Schema(description = "Names of groups of which the members are to receive the message.", example = "[\"support\"]")
+    public List<String> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(List<String> groups) {
+        this.groups = groups;
+    }
+
+    @XmlElement
+    @Schema(description = "Only deliver the message to users (or group members) that are online. When no users or groups are provided, the message is always delivered to all users that are online.", example = "true")
+    public boolean isOnlineOnly() {
+        return onlineOnly;
+    }
+
+    public void setOnlineOnly(boolean onlineOnly) {
+        this.onlineOnly = onlineOnly;
+    }
+
+    @XmlElement
+    @Schema(description = "Only deliver the message to sessions that are connected to this cluster node ('Local') or to other cluster nodes ('Remote'). Implies 'onlineOnly'.", example = "Local")
+    public String getNode() {
+        return node;
+    }
+
+    public void setNode(String node) {
+        this.node = node;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jivesoftware.openfire.plugin.rest.entity;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+import java.util.Date;
+
+/**
+ * The progress of a broadcast that is being delivered in the background.
+ */
+@XmlRootElement(name = "broadcastJob")
+@XmlType(propOrder = { "jobId", "status", "recipients", "sent", "failed", "creationDate", "completionDate" })
+public class BroadcastJobEntity {
+
+    private String jobId;
+    private String status;
+    private int recipients;
+    private int sent;
+    private int failed;
+    private Date creationDate;
+    private Date completionDate;
+
+    public BroadcastJobEntity() {
+    }
+
+    @XmlElement
+    @Schema(description = "The identifier of the broadcast, used to retrieve its progress.", example = "7f9a1c0e-3d2b-4e55-9b8e-1f2a3b4c5d6e")
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    @XmlElement
+    @Schema(description = "The state of the broadcast.", allowableValues = { "Queued", "Running", "Completed", "Cancelled", "Failed" }, example = "Running")
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    @XmlElement
+    @Schema(description = "The number of recipients. This is zero until the recipients have been determined.", example = "200000")
+    public int getRecipients() {
+        return recipients;
+    }
+
+    public void setRecipients(int recipients) {
+        this.recipients = recipients;
+    }
+
+    @XmlElement
+    @Schema(description = "The number of recipients to which the message has been sent.", example = "15000")
+    public int getSent() {
+        return sent;
+    }
+
+    public void setSent(int sent) {
+        this.sent = sent;
+    }
+
+    @XmlElement
+    @Schema(description = "The number of recipients to which the message could not be sent.", example = "0")
+    public int getFailed() {
+        return failed;
+    }
+
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    @XmlElement
+    @Schema(description = "The moment the broadcast was requested.")
+    public Date getCreationDate() {
+        return creationDate;
+    }
+
+    public void setCreationDate(Date creationDate) {
+        this.creationDate = creationDate;
+    }
+
+    @XmlElement
+    @Schema(description = "The moment the broadcast finished, if it has.")
+    public Date getCompletionDate() {
+        return completionDate;
+    }
+
+    public void setCompletionDate(Date completionDate) {
+        this.completionDate = completionDate;
+    }
+}
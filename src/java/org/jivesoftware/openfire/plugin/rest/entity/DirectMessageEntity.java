@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jivesoftware.openfire.plugin.rest.entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+import java.util.List;
+
+/**
+ * A message that is to be sent on behalf of a local entity to one or more recipients.
+ */
+@XmlRootElement(name = "message")
+@XmlType(propOrder = { "from", "to", "type", "subject", "body", "extensions" })
+public class DirectMessageEntity {
+
+    private String from;
+    private List<String> to;
+    private String type;
+    private String subject;
+    private String body;
+    private List<String> extensions;
+
+    public DirectMessageEntity() {
+    }
+
+    @XmlElement
+    @Schema(description = "The JID of the sender. This must be a local user, or the XMPP domain of this server.", example = "alerts@example.org")
+    public String getFrom() {
+        return from;
+    }
+
+    public void setFrom(String from) {
+        this.from = from;
+    }
+
+    @XmlElement(name = "to")
+    @JsonProperty(value = "to")
+    @Schema(description = "The JIDs of the recipients.", example = "[\"john@example.org\", \"jane@example.org/mobile\"]")
+    public List<String> getTo() {
+        return to;
+    }
+
+    public void setTo(List<String> to) {
+        this.to = to;
+    }
+
+    @XmlElement
+    @Schema(description = "The type of the message.", allowableValues = { "normal", "chat", "headline" }, example = "chat")
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    @XmlElement
+    @Schema(description = "The message subject (optional).", example = "Disk usage")
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    @XmlElement
+    @Schema(description = "The message body.", example = "Disk usage on db01 is above 90%")
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    @XmlElementWrapper(name = "extensions")
+    @XmlElement(name = "extension")
+    @JsonProperty(value = "extensions")
+    @Schema(description = "Extension elements to add to the message, each as a string of XML.", example = "[\"<alert xmlns='urn:example:alert' severity='warning'/>\"]")
+    public List<String> getExtensions() {
+        return extensions;
+    }
+
+    public void setExtensions(List<String> extensions) {
+        this.extensions = extensions;
+    }
+}
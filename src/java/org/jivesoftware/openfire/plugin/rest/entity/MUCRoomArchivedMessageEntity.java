@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jivesoftware.openfire.plugin.rest.entity;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * A message that was exchanged in a multi-user chat room, as stored in the conversation log of the room.
+ */
+@XmlRootElement(name = "message")
+@XmlType(propOrder = { "messageID", "logTime", "sender", "nickname", "subject", "body", "stanza" })
+public class MUCRoomArchivedMessageEntity {
+
+    private long messageID;
+    private long logTime;
+    private String sender;
+    private String nickname;
+    private String subject;
+    private String body;
+    private String stanza;
+
+    public MUCRoomArchivedMessageEntity() {
+    }
+
+    @XmlElement
+    @Schema(description = "The identifier of the message. Together with 'logTime', this can be used as a pagination cursor.", example = "1042")
+    public long getMessageID() {
+        return messageID;
+    }
+
+    public void setMessageID(long messageID) {
+        this.messageID = messageID;
+    }
+
+    @XmlElement
+    @Schema(description = "The moment the message was logged, in milliseconds since the epoch.", example = "1644246591517")
+    public long getLogTime() {
+        return logTime;
+    }
+
+    public void setLogTime(long logTime) {
+        this.logTime = logTime;
+    }
+
+    @XmlElement
+    @Schema(description = "The (real) JID of the sender.", example = "john@example.org/mobile")
+    public String getSender() {
+        return sender;
+    }
+
+    public void setSender(String sender) {
+        this.sender = sender;
+    }
+
+    @XmlElement
+    @Schema(description = "The nickname that the sender used in the room.", example = "johnny")
+    public String getNickname() {
+        return nickname;
+    }
+
+    public void setNickname(String nickname) {
+        this.nickname = nickname;
+    }
+
+    @XmlElement
+    @Schema(description = "The room subject, if the message changed it.", example = "Release planning")
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    @XmlElement
+    @Schema(description = "The message body.", example = "Hello world!")
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    @XmlElement
+    @Schema(description = "The raw XMPP stanza, only included when requested.")
+    public String getStanza() {
+        return stanza;
+    }
+
+    public void setStanza(String stanza) {
+        this.stanza = stanza;
+    }
+}
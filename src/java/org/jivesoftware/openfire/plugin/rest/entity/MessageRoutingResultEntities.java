@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jivesoftware.openfire.plugin.rest.entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+import java.util.ArrayList;
+import java.util.List;
+
+@XmlRootElement(name = "results")
+@XmlType(propOrder = { "successResults", "failureResults" })
+public class MessageRoutingResultEntities {
+    List<MessageRoutingResultEntity> successResults;
+    List<MessageRoutingResultEntity> failureResults;
+
+    public MessageRoutingResultEntities() {
+        this.successResults = new ArrayList<>();
+        this.failureResults = new ArrayList<>();
+    }
+
+    public MessageRoutingResultEntities(List<MessageRoutingResultEntity> results) {
+        this();
+        addResults(results);
+    }
+
+    public void addResults(List<MessageRoutingResultEntity> resultsToAdd) {
+        resultsToAdd.forEach(this::addResult);
+    }
+
+    public void addResult(MessageRoutingResultEntity resultToAdd) {
+        if (resultToAdd.getResultType() == MessageRoutingResultEntity.MessageRoutingResultType.Success) {
+            this.successResults.add(resultToAdd);
+        } else {
+            this.failureResults.add(resultToAdd);
+        }
+    }
+
+    @XmlElement(name = "result")
+    @XmlElementWrapper(name = "success")
+    @JsonProperty(value = "success")
+    @Schema(description = "All messages that were routed")
+    public List<MessageRoutingResultEntity> getSuccessResults() {
+        return successResults;
+    }
+
+    @XmlElement(name = "result")
+    @XmlElementWrapper(name = "failure")
+    @JsonProperty(value = "failure")
+    @Schema(description = "All messages that could not be routed")
+    public List<MessageRoutingResultEntity> getFailureResults() {
+        return failureResults;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jivesoftware.openfire.plugin.rest.entity;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+@XmlRootElement(name = "result")
+@XmlType(propOrder = { "from", "to", "resultType", "message"})
+public class MessageRoutingResultEntity {
+
+    public enum MessageRoutingResultType {
+        Success, Failure
+    }
+
+    String from;
+    String to;
+    MessageRoutingResultType resultType;
+    String message;
+
+    public MessageRoutingResultEntity() {
+    }
+
+    public MessageRoutingResultEntity(String from, String to, MessageRoutingResultType resultType, String message) {
+        this.from = from;
+        this.to = to;
+        this.resultType = resultType;
+        this.message = message;
+    }
+
+    @XmlElement
+    @Schema(description = "The sender of the message", example = "alerts@example.org")
+    public String getFrom() {
+        return from;
+    }
+
+    public void setFrom(String from) {
+        this.from = from;
+    }
+
+    @XmlElement
+    @Schema(description = "The recipient of the message", example = "john@example.org")
+    public String getTo() {
+        return to;
+    }
+
+    public void setTo(String to) {
+        this.to = to;
+    }
+
+    @XmlElement
+    @Schema(description = "The result of routing the message", example = "Failure")
+    public MessageRoutingResultType getResultType() {
+        return resultType;
+    }
+
+    public void setResultType(MessageRoutingResultType resultType) {
+        this.resultType = resultType;
+    }
+
+    @XmlElement
+    @Schema(description = "A message describing the result", example = "Not a valid JID")
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
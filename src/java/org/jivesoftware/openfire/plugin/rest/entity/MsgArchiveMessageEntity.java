@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jivesoftware.openfire.plugin.rest.entity;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * A message that was stored in the server-sided message archive.
+ */
+@XmlRootElement(name = "message")
+@XmlType(propOrder = { "messageID", "conversationID", "fromJID", "fromJIDResource", "toJID", "toJIDResource", "sentDate", "body", "stanza" })
+public class MsgArchiveMessageEntity {
+
+    private long messageID;
+    private long conversationID;
+    private String fromJID;
+    private String fromJIDResource;
+    private String toJID;
+    private String toJIDResource;
+    private long sentDate;
+    private String body;
+    private String stanza;
+
+    public MsgArchiveMessageEntity() {
+    }
+
+    @XmlElement
+    @Schema(description = "The identifier of the message in the archive. Together with 'sentDate', this can be used as a pagination cursor.", example = "1042")
+    public long getMessageID() {
+        return messageID;
+    }
+
+    public void setMessageID(long messageID) {
+        this.messageID = messageID;
+    }
+
+    @XmlElement
+    @Schema(description = "The identifier of the conversation that the message is part of.", example = "17")
+    public long getConversationID() {
+        return conversationID;
+    }
+
+    public void setConversationID(long conversationID) {
+        this.conversationID = conversationID;
+    }
+
+    @XmlElement
+    @Schema(description = "The (bare) JID of the sender.", example = "john@example.org")
+    public String getFromJID() {
+        return fromJID;
+    }
+
+    public void setFromJID(String fromJID) {
+        this.fromJID = fromJID;
+    }
+
+    @XmlElement
+    @Schema(description = "The resource of the sender, if known.", example = "mobile")
+    public String getFromJIDResource() {
+        return fromJIDResource;
+    }
+
+    public void setFromJIDResource(String fromJIDResource) {
+        this.fromJIDResource = fromJIDResource;
+    }
+
+    @XmlElement
+    @Schema(description = "The (bare) JID of the addressee.", example = "jane@example.org")
+    public String getToJID() {
+        return toJID;
+    }
+
+    public void setToJID(String toJID) {
+        this.toJID = toJID;
+    }
+
+    @XmlElement
+    @Schema(description = "The resource of the addressee, if known.", example = "desktop")
+    public String getToJIDResource() {
+        return toJIDResource;
+    }
+
+    public void setToJIDResource(String toJIDResource) {
+        this.toJIDResource = toJIDResource;
+    }
+
+    @XmlElement
+    @Schema(description = "The moment the message was sent, in milliseconds since the epoch.", example = "1644246591517")
+    public long getSentDate() {
+        return sentDate;
+    }
+
+    public void setSentDate(long sentDate) {
+        this.sentDate = sentDate;
+    }
+
+    @XmlElement
+    @Schema(description = "The message body.", example = "Hello world!")
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    @XmlElement
+    @Schema(description = "The raw XMPP stanza, only included when requested.")
+    public String getStanza() {
+        return stanza;
+    }
+
+    public void setStanza(String stanza) {
+        this.stanza = stanza;
+    }
+}
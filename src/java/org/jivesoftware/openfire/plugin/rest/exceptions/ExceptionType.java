@@ -55,6 +55,24 @@ public final class ExceptionType {
     /** The Constant CLUSTER_NODE_NOT_FOUND. */
     public static final String CLUSTER_NODE_NOT_FOUND = "ClusterNodeNotFoundException";
 
+    /** The Constant BROADCAST_NOT_FOUND. */
+    public static final String BROADCAST_NOT_FOUND = "BroadcastNotFoundException";
+
+    /** The Constant BROADCAST_LIMIT_EXCEEDED. */
+    public static final String BROADCAST_LIMIT_EXCEEDED = "BroadcastLimitExceededException";
+
+    /** The Constant RATE_LIMIT_EXCEEDED. */
+    public static final String RATE_LIMIT_EXCEEDED = "RateLimitExceededException";
+
+    /** The Constant SERVICE_OVERLOADED. */
+    public static final String SERVICE_OVERLOADED = "ServiceOverloadedException";
+
+    /** The Constant API_KEY_NOT_FOUND. */
+    public static final String API_KEY_NOT_FOUND = "ApiKeyNotFoundException";
+
+    /** The Constant DATABASE_EXCEPTION. */
+    public static final String DATABASE_EXCEPTION = "DatabaseException";
+
     /**
      * Instantiates a new exception type.
      */
@@ -16,25 +16,58 @@
 
 package org.jivesoftware.openfire.plugin.rest.exceptions;
 
+import org.jivesoftware.openfire.stats.i18nStatistic;
+import org.jivesoftware.util.SystemProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nonnull;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.*;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.ext.ExceptionMapper;
 import javax.ws.rs.ext.Provider;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The Class RESTExceptionMapper.
+ *
+ * Exceptions with a status other than a server error are expected outcomes. These are logged at most once per
+ * {@link #LOG_INTERVAL} for every type of exception, together with the number of exceptions of that type that were not
+ * logged. The number of exceptions of every type is available as statistics.
  */
 @Provider
 public class RESTExceptionMapper implements ExceptionMapper<ServiceException> {
 
     /** The log. */
     private static Logger LOG = LoggerFactory.getLogger(RESTExceptionMapper.class);
-    
+
+    public static final SystemProperty<Duration> LOG_INTERVAL = SystemProperty.Builder.ofType(Duration.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.exceptions.log-interval")
+        .setDefaultValue(Duration.ofSeconds(10))
+        .setMinValue(Duration.ZERO)
+        .setChronoUnit(ChronoUnit.SECONDS)
+        .setDynamic(true)
+        .build();
+
+    /** Counter for exceptions of a type that is not defined in {@link ExceptionType}. */
+    private static final Counter OTHER = new Counter("other");
+
+    /** Counters for every type of exception that is defined in {@link ExceptionType}, by the value of the type. */
+    private static final Map<String, Counter> COUNTERS = createCounters();
+
     /** The headers. */
     @Context
     private HttpHeaders headers;
@@ -59,17 +92,22 @@ public class RESTExceptionMapper implements ExceptionMapper<ServiceException> {
         errorResponse.setMessage(exception.getMessage());
         errorResponse.setException(exception.getException());
 
+        final Counter counter = exception.getException() == null ? OTHER : COUNTERS.getOrDefault(exception.getException(), OTHER);
+        counter.count.increment();
+
         if (exception.getStatus() != null && exception.getStatus().getStatusCode() == 500) {
-            LOG.warn(
-                exception.getException() + ": " + exception.getMessage() + " with resource "
-                    + exception.getResource(), exception.getException());
+            LOG.warn("{}: {} with resource {}", exception.getException(), exception.getMessage(), exception.getResource(), exception);
         } else if (exception.getStatus().getStatusCode() == 404 && "HEAD".equalsIgnoreCase(request.getMethod())) {
             // This is an existence check that has a 'nope' answer that is perfectly valid. This should not be logged by default.
-            LOG.debug(exception.getException() + ": " + exception.getMessage() + " with resource " + exception.getResource());
-        } else {
-            LOG.info(
-                exception.getException() + ": " + exception.getMessage() + " with resource "
-                    + exception.getResource(), exception.getException());
+            LOG.debug("{}: {} with resource {}", exception.getException(), exception.getMessage(), exception.getResource());
+        } else if (LOG.isInfoEnabled()) {
+            final long suppressed = counter.sample(System.nanoTime(), LOG_INTERVAL.getValue().toNanos());
+            if (suppressed == 0) {
+                LOG.info("{}: {} with resource {}", exception.getException(), exception.getMessage(), exception.getResource());
+            } else if (suppressed > 0) {
+                LOG.info("{}: {} with resource {} ({} more of this type since the last one that was logged)",
+                    exception.getException(), exception.getMessage(), exception.getResource(), suppressed);
+            }
         }
         
         ResponseBuilder responseBuilder = Response.status(exception.getStatus()).entity(errorResponse);
@@ -93,4 +131,90 @@ public class RESTExceptionMapper implements ExceptionMapper<ServiceException> {
         return responseBuilder.build();
     }
 
+    private static Map<String, Counter> createCounters() {
+        final Map<String, Counter> result = new HashMap<>();
+        for (final Field field : ExceptionType.class.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class) {
+                try {
+                    result.put((String) field.get(null), new Counter(field.getName().toLowerCase(Locale.ENGLISH)));
+                } catch (IllegalAccessException e) {
+                    LOG.warn("Unable to read exception type {}", field.getName(), e);
+                }
+            }
+        }
+        return result;
+    }
+
+    public static Collection<ExceptionStatistic> generateAllStatisticInstances() {
+        final Collection<ExceptionStatistic> result = new ArrayList<>();
+        for (final Counter counter : COUNTERS.values()) {
+            result.add(new ExceptionStatistic(counter));
+        }
+        result.add(new ExceptionStatistic(OTHER));
+        return result;
+    }
+
+    /**
+     * Counts the exceptions of one type, and keeps track of when one was last logged.
+     */
+    private static final class Counter {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder suppressed = new LongAdder();
+        private final AtomicLong nextLogTime = new AtomicLong(System.nanoTime());
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Determines if an exception is to be logged.
+         *
+         * @param now the current time, in nanoseconds
+         * @param interval the minimum time between exceptions that are logged, in nanoseconds
+         * @return the number of exceptions that were not logged since the last one that was, or -1 if this exception
+         *         is not to be logged either.
+         */
+        private long sample(long now, long interval) {
+            final long next = nextLogTime.get();
+            if (now - next < 0 || !nextLogTime.compareAndSet(next, now + interval)) {
+                suppressed.increment();
+                return -1;
+            }
+            return suppressed.sumThenReset();
+        }
+    }
+
+    public static class ExceptionStatistic extends i18nStatistic
+    {
+        public static final String GROUP = "restapi_exceptions";
+
+        private final Counter counter;
+
+        private ExceptionStatistic(@Nonnull final Counter counter)
+        {
+            super(GROUP + "." + counter.name, "restapi", Type.rate);
+            this.counter = counter;
+        }
+
+        @Override
+        public double sample()
+        {
+            return counter.count.sumThenReset();
+        }
+
+        @Override
+        public boolean isPartialSample()
+        {
+            return true;
+        }
+
+        public String getGroupName() {
+            return GROUP;
+        }
+
+        public String getKeyName() {
+            return GROUP + "_" + counter.name;
+        }
+    }
 }
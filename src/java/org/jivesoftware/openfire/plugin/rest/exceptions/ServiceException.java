@@ -20,6 +20,10 @@ import javax.ws.rs.core.Response.Status;
 
 /**
  * The Class ServiceException.
+ *
+ * Exceptions with a 'Client Error' status (a code in the 4xx range) are expected outcomes, such as a user that does not
+ * exist, that are reported to the client but not logged with a stack trace. These do not capture a stack trace, which
+ * makes them cheap to create.
  */
 public class ServiceException extends Exception {
 
@@ -44,7 +48,7 @@ public class ServiceException extends Exception {
      * @param status the status
      */
     public ServiceException(String msg, String resource, String exception, Status status) {
-        super(msg);
+        super(msg, null, true, !isExpected(status));
         this.resource = resource;
         this.exception = exception;
         this.status = status;
@@ -60,12 +64,22 @@ public class ServiceException extends Exception {
      * @param cause the cause
      */
     public ServiceException(String msg, String resource, String exception, Status status, Throwable cause) {
-        super(msg, cause);
+        super(msg, cause, true, !isExpected(status));
         this.resource = resource;
         this.exception = exception;
         this.status = status;
     }
 
+    /**
+     * Checks if an exception with a particular status is an expected outcome, for which no stack trace is needed.
+     *
+     * @param status the status (can be null)
+     * @return true if the status is a client error
+     */
+    public static boolean isExpected(Status status) {
+        return status != null && status.getFamily() == Status.Family.CLIENT_ERROR;
+    }
+
     /**
      * Gets the resource.
      * 
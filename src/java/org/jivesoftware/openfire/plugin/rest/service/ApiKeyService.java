@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jivesoftware.openfire.plugin.rest.service;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.parameters.RequestBody;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.jivesoftware.openfire.plugin.rest.controller.ApiKeyController;
+import org.jivesoftware.openfire.plugin.rest.entity.ApiKeyEntities;
+import org.jivesoftware.openfire.plugin.rest.entity.ApiKeyEntity;
+import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+
+import javax.annotation.PostConstruct;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+@Path("restapi/v1/apikeys")
+@Tag(name = "API keys", description = "Managing the API keys that clients can use to authenticate.")
+public class ApiKeyService {
+
+    private ApiKeyController apiKeyController;
+
+    @PostConstruct
+    public void init() {
+        apiKeyController = ApiKeyController.getInstance();
+    }
+
+    @GET
+    @Operation( summary = "Get API keys",
+        description = "Retrieves all API keys. The keys themselves are not included.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "All API keys.", content = @Content(schema = @Schema(implementation = ApiKeyEntities.class))),
+        })
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    public ApiKeyEntities getApiKeys()
+    {
+        return apiKeyController.getApiKeys();
+    }
+
+    @POST
+    @Operation( summary = "Create API key",
+        description = "Creates a new API key, which can be used immediately. The key is only included in this response: store it safely, as it cannot be retrieved later.",
+        responses = {
+            @ApiResponse(responseCode = "201", description = "The API key has been created.", content = @Content(schema = @Schema(implementation = ApiKeyEntity.class))),
+            @ApiResponse(responseCode = "400", description = "No or unknown scopes are provided, or the expiry date is in the past."),
+        })
+    @Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    public Response createApiKey(@RequestBody(description = "The name, scopes and (optional) expiry date of the API key.", required = true) ApiKeyEntity apiKeyEntity)
+        throws ServiceException
+    {
+        return Response.status(Response.Status.CREATED).entity(apiKeyController.createApiKey(apiKeyEntity)).build();
+    }
+
+    @DELETE
+    @Path("/{id}")
+    @Operation( summary = "Delete API key",
+        description = "Deletes an API key, after which it can no longer be used. On other cluster nodes, this takes effect within the refresh interval.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "The API key has been deleted."),
+            @ApiResponse(responseCode = "404", description = "The API key does not exist."),
+        })
+    public Response deleteApiKey(@Parameter(description = "The identifier of the API key.", required = true) @PathParam("id") String id)
+        throws ServiceException
+    {
+        apiKeyController.deleteApiKey(id);
+        return Response.status(Response.Status.OK).build();
+    }
+}
@@ -27,10 +27,14 @@ import org.jivesoftware.openfire.plugin.rest.controller.GroupController;
 import org.jivesoftware.openfire.plugin.rest.entity.GroupEntities;
 import org.jivesoftware.openfire.plugin.rest.entity.GroupEntity;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+import org.jivesoftware.openfire.plugin.rest.utils.EntityTagUtils;
 
 import javax.annotation.PostConstruct;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
 @Path("restapi/v1/groups")
@@ -79,13 +83,21 @@ public class GroupService {
         description = "Get one specific user group by name.",
         responses = {
             @ApiResponse(responseCode = "200", description = "The group.", content = @Content(schema = @Schema(implementation = GroupEntity.class))),
+            @ApiResponse(responseCode = "304", description = "The group has not been modified since it was last retrieved (based on the provided ETag)."),
             @ApiResponse(responseCode = "404", description = "Group with this name not found.")
         })
     @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
-    public GroupEntity getGroup(@Parameter(description = "The name of the group that needs to be fetched.", example = "Colleagues", required = true) @PathParam("groupName") String groupName)
+    public Response getGroup(@Parameter(description = "The name of the group that needs to be fetched.", example = "Colleagues", required = true) @PathParam("groupName") String groupName,
+                             @Context Request request)
         throws ServiceException
     {
-        return groupController.getGroup(groupName);
+        final MediaType mediaType = EntityTagUtils.selectMediaType(request);
+        final EntityTag entityTag = groupController.getGroupEntityTag(groupName, mediaType);
+        final Response notModified = EntityTagUtils.evaluatePreconditions(request, entityTag);
+        if (notModified != null) {
+            return notModified;
+        }
+        return Response.ok(groupController.getGroup(groupName), mediaType).tag(entityTag).build();
     }
 
     @PUT
@@ -17,15 +17,22 @@
 package org.jivesoftware.openfire.plugin.rest.service;
 
 import org.glassfish.jersey.server.ResourceConfig;
+import org.jivesoftware.openfire.plugin.rest.AccessLogFilter;
 import org.jivesoftware.openfire.plugin.rest.AuthFilter;
 import org.jivesoftware.openfire.plugin.rest.CORSFilter;
+import org.jivesoftware.openfire.plugin.rest.CollectionXmlWriter;
 import org.jivesoftware.openfire.plugin.rest.CustomJacksonMapperProvider;
+import org.jivesoftware.openfire.plugin.rest.LoadSheddingFilter;
+import org.jivesoftware.openfire.plugin.rest.RateLimitFilter;
+import org.jivesoftware.openfire.plugin.rest.RouteClassifier;
 import org.jivesoftware.openfire.plugin.rest.StatisticsFilter;
 import org.jivesoftware.openfire.plugin.rest.exceptions.RESTExceptionMapper;
 import org.jivesoftware.util.JiveGlobals;
 
 import javax.servlet.ServletConfig;
 import javax.ws.rs.core.Context;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -46,6 +53,27 @@ public class JerseyWrapper extends ResourceConfig {
     /** The Constant JERSEY_LOGGER. */
     private final static Logger JERSEY_LOGGER = Logger.getLogger("org.glassfish.jersey");
     
+    /** The classes that implement the endpoints. */
+    private static final List<Class<?>> SERVICES = Arrays.asList(
+        ApiKeyService.class,
+        ClusteringService.class,
+        GroupService.class,
+        MessageService.class,
+        MsgArchiveService.class,
+        MUCRoomAffiliationsService.class,
+        MUCRoomService.class,
+        MUCServiceService.class,
+        SystemService.class,
+        SecurityAuditLogService.class,
+        SessionService.class,
+        StatisticsService.class,
+        UserGroupService.class,
+        UserLockoutService.class,
+        UserRosterService.class,
+        UserService.class,
+        UserServiceLegacy.class
+    );
+
     private static String loadingStatusMessage = null;
     
     static {
@@ -94,35 +122,29 @@ public class JerseyWrapper extends ResourceConfig {
     public JerseyWrapper(@Context ServletConfig servletConfig) {
 
         // Filters
+        register(new RouteClassifier(SERVICES));
         loadAuthenticationFilter();
+        register(RateLimitFilter.class);
+        register(RateLimitFilter.InFlightListener.class);
         register(CORSFilter.class);
         register(StatisticsFilter.class);
+        register(LoadSheddingFilter.class);
+        register(LoadSheddingFilter.PermitListener.class);
+        register(AccessLogFilter.class);
+        register(AccessLogFilter.Listener.class);
 
         // Services
-        registerClasses(
-            ClusteringService.class,
-            GroupService.class,
-            MessageService.class,
-            MsgArchiveService.class,
-            MUCRoomAffiliationsService.class,
-            MUCRoomService.class,
-            MUCServiceService.class,
-            SystemService.class,
-            SecurityAuditLogService.class,
-            SessionService.class,
-            StatisticsService.class,
-            UserGroupService.class,
-            UserLockoutService.class,
-            UserRosterService.class,
-            UserService.class,
-            UserServiceLegacy.class
-        );
+        registerClasses(SERVICES.toArray(new Class<?>[0]));
 
         // Exception mapper
         register(RESTExceptionMapper.class);
 
         // Jackson's Object Mapper
         register(CustomJacksonMapperProvider.class);
+        CustomJacksonMapperProvider.warmUp(SERVICES);
+
+        // XML representation of large lists
+        register(CollectionXmlWriter.class);
 
         // Documentation (Swagger)
         register( new CustomOpenApiResource() );
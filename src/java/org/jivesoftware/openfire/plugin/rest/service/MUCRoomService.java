@@ -24,16 +24,25 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.parameters.RequestBody;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.jivesoftware.openfire.plugin.rest.HeavyEndpoint;
 import org.jivesoftware.openfire.plugin.rest.controller.MUCRoomController;
 import org.jivesoftware.openfire.plugin.rest.entity.*;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ErrorResponse;
+import org.jivesoftware.openfire.plugin.rest.exceptions.ExceptionType;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+import org.jivesoftware.openfire.plugin.rest.utils.EntityTagUtils;
+import org.jivesoftware.openfire.plugin.rest.utils.StreamingUtils;
+import org.jivesoftware.util.XMPPDateTimeFormat;
 import org.xmpp.packet.JID;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import java.text.ParseException;
+import java.util.Date;
 
 @Path("restapi/v1/chatrooms")
 @Tag(name = "Chat room", description = "Managing Multi-User chat rooms.")
@@ -49,6 +58,7 @@ public class MUCRoomService {
             @ApiResponse(responseCode = "500", description = "Unexpected, generic error condition.", content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
         })
     @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    @HeavyEndpoint(whenTrue = "expandGroups")
     public MUCRoomEntities getMUCRooms(
             @Parameter(description = "The name of the MUC service for which to return all chat rooms.", example = "conference", required = false) @DefaultValue("conference") @QueryParam("servicename") String serviceName,
             @Parameter(description = "Room type-based filter: 'all' or 'public'", examples = { @ExampleObject(value = "public", description = "Only return rooms configured with 'List Room in Directory'"), @ExampleObject(value = "all", description = "Return all rooms")}, required = false) @DefaultValue(MUCChannelType.PUBLIC) @QueryParam("type") String channelType,
@@ -65,19 +75,37 @@ public class MUCRoomService {
         description = "Get information of a specific multi-user chat room.",
         responses = {
             @ApiResponse(responseCode = "200", description = "The chat room", content = @Content(schema = @Schema(implementation = MUCRoomEntity.class))),
+            @ApiResponse(responseCode = "304", description = "The chat room has not been modified since it was last retrieved (based on the provided ETag)."),
             @ApiResponse(responseCode = "401", description = "Web service authentication failed.", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "404", description = "The chat room (or its service) can not be found or is not accessible.", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "500", description = "Unexpected, generic error condition.", content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
         })
     @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
-    public MUCRoomEntity getMUCRoomJSON2(
+    public Response getMUCRoomJSON2(
             @Parameter(description = "The name of the MUC room to return.", example = "lobby", required = true) @PathParam("roomName") String roomName,
             @Parameter(description = "The name of the MUC service for which to return a chat room.", example = "conference", required = false) @DefaultValue("conference") @QueryParam("servicename") String serviceName,
-            @Parameter(description = "For all groups defined in owners, admins, members and outcasts, list individual members instead of the group name.", required = false) @DefaultValue("false") @QueryParam("expandGroups") Boolean expand)
+            @Parameter(description = "For all groups defined in owners, admins, members and outcasts, list individual members instead of the group name.", required = false) @DefaultValue("false") @QueryParam("expandGroups") Boolean expand,
+            @Parameter(description = "When 'false', the chat room may be returned from a recently taken snapshot, which does not require the room to be locked. Room events and changes made through this API discard snapshots immediately; other changes become visible within 'plugin.restapi.muc.snapshot-cache.ttl'.", required = false) @DefaultValue("true") @QueryParam("consistent") boolean consistent,
+            @Context Request request)
         throws ServiceException
     {
         roomName = JID.nodeprep(roomName);
-        return MUCRoomController.getInstance().getChatRoom(roomName, serviceName, expand);
+        final MediaType mediaType = EntityTagUtils.selectMediaType(request);
+        final MUCRoomController.TaggedChatRoom chatRoom;
+        if (!consistent) {
+            chatRoom = MUCRoomController.getInstance().getChatRoomSnapshot(roomName, serviceName, expand != null && expand, mediaType);
+            final Response notModified = EntityTagUtils.evaluatePreconditions(request, chatRoom.getEntityTag());
+            if (notModified != null) {
+                return notModified;
+            }
+        } else {
+            chatRoom = MUCRoomController.getInstance().getTaggedChatRoom(roomName, serviceName, expand != null && expand,
+                mediaType, entityTag -> EntityTagUtils.evaluatePreconditions(request, entityTag) != null);
+            if (chatRoom.getEntity() == null) {
+                return Response.notModified(chatRoom.getEntityTag()).build();
+            }
+        }
+        return Response.ok(chatRoom.getEntity(), mediaType).tag(chatRoom.getEntityTag()).build();
     }
 
     @Operation( summary = "Delete chat room",
@@ -143,6 +171,27 @@ public class MUCRoomService {
         return MUCRoomController.getInstance().createMultipleChatRooms(serviceName, mucRoomEntities, sendInvitations);
     }
 
+    @POST
+    @Path("/affiliations/batch")
+    @Operation( summary = "Change affiliations of multiple chat rooms",
+        description = "Adds and removes affiliations of any number of multi-user chat rooms. Changes are grouped per room: each room is modified once, and rooms are processed concurrently. When the changes to one room can not be applied, the changes to other rooms are still applied.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Request has been processed. Results are reported in the response, per room.", content = @Content(schema = @Schema(implementation = AffiliationChangeResultEntities.class))),
+            @ApiResponse(responseCode = "400", description = "Provided values cannot be parsed as JIDs, a provided 'affiliation' value is invalid, or the batch is too large. No changes have been applied.", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "401", description = "Web service authentication failed.", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "404", description = "MUC Service does not exist or is not accessible.", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "500", description = "Unexpected, generic error condition.", content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+        })
+    @Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    public AffiliationChangeResultEntities changeMUCRoomAffiliations(
+        @Parameter(description = "The name of the MUC service that contains the chat rooms.", example = "conference", required = false) @DefaultValue("conference") @QueryParam("servicename") String serviceName,
+        @RequestBody(description = "The affiliation changes that need to be applied.", required = true) AffiliationChangeEntities affiliationChangeEntities)
+        throws ServiceException
+    {
+        return MUCRoomController.getInstance().changeAffiliations(serviceName, affiliationChangeEntities);
+    }
+
     @PUT
     @Path("/{roomName}")
     @Operation( summary = "Update chat room",
@@ -221,11 +270,47 @@ public class MUCRoomService {
     @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
     public MUCRoomMessageEntities getMUCRoomHistory(
             @Parameter(description = "The name of the chat room for which to return message history", example = "lobby", required = true) @PathParam("roomName") String roomName,
-            @Parameter(description = "The name of the chat room's MUC service.", example = "conference", required = false) @DefaultValue("conference") @QueryParam("servicename") String serviceName)
+            @Parameter(description = "The name of the chat room's MUC service.", example = "conference", required = false) @DefaultValue("conference") @QueryParam("servicename") String serviceName,
+            @Parameter(description = "Only return messages sent at or after this moment (XMPP date/time format).", example = "2022-02-07T15:00:00Z", required = false) @QueryParam("since") String since,
+            @Parameter(description = "Only return messages sent before this moment (XMPP date/time format), or also at this moment when 'skip' is provided. Use the delay stamp of the oldest message that was received to retrieve the previous page.", example = "2022-02-07T16:00:00Z", required = false) @QueryParam("before") String before,
+            @Parameter(description = "The number of messages sent at the moment provided in 'before' that were already received, which are left out. Use the number of received messages that share the delay stamp of the oldest one, so that no message is missed when a page ends among messages with the same stamp. When not provided, all messages sent at that moment are left out.", example = "1", required = false) @QueryParam("skip") Integer skip,
+            @Parameter(description = "The maximum number of (most recent) messages to return. 0 for 'unlimited'.", example = "50", required = false) @DefaultValue("0") @QueryParam("max") int max)
         throws ServiceException
     {
         roomName = JID.nodeprep(roomName);
-        return MUCRoomController.getInstance().getRoomHistory(roomName, serviceName);
+        if (skip != null && skip < 0) {
+            throw new ServiceException("Value must not be negative: " + skip, "skip", ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION, Status.BAD_REQUEST);
+        }
+        return MUCRoomController.getInstance().getRoomHistory(roomName, serviceName, parseDate(since, "since"), parseDate(before, "before"), skip, max);
+    }
+
+    @GET
+    @Path("/{roomName}/chathistory/archive")
+    @Operation( summary = "Get archived room history",
+        description = "Streams messages from the conversation log of a specific multi-user chat room, as stored in the database, as newline delimited JSON ordered by the moment they were logged. Use the 'logTime' and 'messageID' values of the last message that was received as the cursor to obtain the next page.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "One message per line.", content = @Content(mediaType = StreamingUtils.APPLICATION_NDJSON, schema = @Schema(implementation = MUCRoomArchivedMessageEntity.class))),
+            @ApiResponse(responseCode = "400", description = "One of the provided parameters is invalid.", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "401", description = "Web service authentication failed.", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "404", description = "The chat room (or its service) can not be found or is not accessible.", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "500", description = "Unexpected, generic error condition.", content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @Produces(StreamingUtils.APPLICATION_NDJSON)
+    public Response getMUCRoomArchivedHistory(
+            @Parameter(description = "The name of the chat room for which to return message history", example = "lobby", required = true) @PathParam("roomName") String roomName,
+            @Parameter(description = "The name of the chat room's MUC service.", example = "conference", required = false) @DefaultValue("conference") @QueryParam("servicename") String serviceName,
+            @Parameter(description = "Oldest moment (inclusive, in milliseconds since the epoch) of the range of messages to retrieve.", required = false) @QueryParam("startTime") Long startTime,
+            @Parameter(description = "Most recent moment (exclusive, in milliseconds since the epoch) of the range of messages to retrieve.", required = false) @QueryParam("endTime") Long endTime,
+            @Parameter(description = "Only return messages after this cursor, formatted as 'logTime:messageID' of the last message received.", example = "1644246591517:1042", required = false) @QueryParam("after") String after,
+            @Parameter(description = "Maximum number of messages to retrieve. 0 for 'unlimited'.", example = "1000", required = false) @DefaultValue("1000") @QueryParam("limit") int limit,
+            @Parameter(description = "Whether to include the raw XMPP stanza of every message.", required = false) @DefaultValue("false") @QueryParam("includeStanza") boolean includeStanza)
+        throws ServiceException
+    {
+        roomName = JID.nodeprep(roomName);
+        final long[] cursor = StreamingUtils.parseCursor(after, "logTime:messageID");
+        return Response.ok(StreamingUtils.ndjson(
+            MUCRoomController.getInstance().getRoomConversationLog(roomName, serviceName, startTime, endTime, cursor, limit, includeStanza)
+        )).build();
     }
 
     @POST
@@ -280,4 +365,35 @@ public class MUCRoomService {
         return Response.status(Status.OK).build();
     }
 
+    @GET
+    @Path("/{roomName}/invitations")
+    @Operation( summary = "Invitation delivery progress",
+        description = "Reports the progress of invitations that are sent in the background, after a room was created or updated, or after affiliations were added, with 'sendInvitations' enabled. Jobs are reported until one hour after they finished.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "The invitation jobs of the room, oldest first.", content = @Content(schema = @Schema(implementation = InvitationJobEntities.class))),
+            @ApiResponse(responseCode = "401", description = "Web service authentication failed.", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "404", description = "The MUC service can not be found or is not accessible.", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "500", description = "Unexpected, generic error condition.", content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+        })
+    @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    public InvitationJobEntities getMUCRoomInvitationJobs(
+        @Parameter(description = "The name of the chat room for which to return invitation jobs", example = "lobby", required = true) @PathParam("roomName") String roomName,
+        @Parameter(description = "The name of the chat room's MUC service.", example = "conference", required = false) @DefaultValue("conference") @QueryParam("servicename") String serviceName)
+        throws ServiceException
+    {
+        roomName = JID.nodeprep(roomName);
+        return MUCRoomController.getInstance().getInvitationJobs(roomName, serviceName);
+    }
+
+
+    private static Date parseDate(String value, String parameterName) throws ServiceException {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return new XMPPDateTimeFormat().parse(value);
+        } catch (ParseException e) {
+            throw new ServiceException("Unable to parse value as a date/time: " + value, parameterName, ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION, Status.BAD_REQUEST, e);
+        }
+    }
 }
@@ -17,17 +17,28 @@
 package org.jivesoftware.openfire.plugin.rest.service;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.parameters.RequestBody;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.jivesoftware.openfire.plugin.rest.controller.MessageController;
+import org.jivesoftware.openfire.plugin.rest.entity.BroadcastEntity;
+import org.jivesoftware.openfire.plugin.rest.entity.BroadcastJobEntity;
+import org.jivesoftware.openfire.plugin.rest.entity.DirectMessageEntities;
 import org.jivesoftware.openfire.plugin.rest.entity.MessageEntity;
+import org.jivesoftware.openfire.plugin.rest.entity.MessageRoutingResultEntities;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
 
 import javax.annotation.PostConstruct;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -42,6 +53,21 @@ public class MessageService {
         messageController = MessageController.getInstance();
     }
 
+    @POST
+    @Operation( summary = "Send messages",
+        description = "Sends messages on behalf of local users (or the server itself) to one or more recipients. Every message is constructed once, and routed to each of its recipients.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Request has been processed. Results are reported per recipient in the response.", content = @Content(schema = @Schema(implementation = MessageRoutingResultEntities.class))),
+            @ApiResponse(responseCode = "400", description = "No messages are provided, or there are too many recipients."),
+        })
+    @Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    public MessageRoutingResultEntities sendMessages(@RequestBody(description = "The messages that are to be sent.", required = true) DirectMessageEntities messageEntities)
+        throws ServiceException
+    {
+        return messageController.sendMessages(messageEntities);
+    }
+
     @POST
     @Path("/users")
     @Operation( summary = "Broadcast",
@@ -57,4 +83,52 @@ public class MessageService {
         messageController.sendBroadcastMessage(messageEntity);
         return Response.status(Response.Status.CREATED).build();
     }
+
+    @POST
+    @Path("/broadcasts")
+    @Operation( summary = "Start broadcast",
+        description = "Starts sending a message to a selection of users in the background. The message is delivered in batches, at a configurable rate. The returned job id can be used to monitor or cancel the broadcast.",
+        responses = {
+            @ApiResponse(responseCode = "202", description = "The broadcast has been accepted.", content = @Content(schema = @Schema(implementation = BroadcastJobEntity.class))),
+            @ApiResponse(responseCode = "400", description = "The message content is empty or missing, or the node is invalid."),
+            @ApiResponse(responseCode = "404", description = "One of the groups does not exist."),
+            @ApiResponse(responseCode = "503", description = "Too many broadcasts are being delivered."),
+        })
+    @Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    public Response startBroadcast(@RequestBody(description = "The message that is to be broadcast, and its recipients.", required = true) BroadcastEntity broadcastEntity)
+        throws ServiceException
+    {
+        return Response.status(Response.Status.ACCEPTED).entity(messageController.startBroadcast(broadcastEntity)).build();
+    }
+
+    @GET
+    @Path("/broadcasts/{jobId}")
+    @Operation( summary = "Get broadcast",
+        description = "Retrieves the progress of a broadcast. Progress remains available for an hour after the broadcast finishes.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "The progress of the broadcast.", content = @Content(schema = @Schema(implementation = BroadcastJobEntity.class))),
+            @ApiResponse(responseCode = "404", description = "The broadcast does not exist (anymore)."),
+        })
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    public BroadcastJobEntity getBroadcast(@Parameter(description = "The identifier of the broadcast.", required = true) @PathParam("jobId") String jobId)
+        throws ServiceException
+    {
+        return messageController.getBroadcast(jobId);
+    }
+
+    @DELETE
+    @Path("/broadcasts/{jobId}")
+    @Operation( summary = "Cancel broadcast",
+        description = "Stops delivering a broadcast. Messages that have already been sent are not affected.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "The broadcast is cancelled."),
+            @ApiResponse(responseCode = "404", description = "The broadcast does not exist (anymore)."),
+        })
+    public Response cancelBroadcast(@Parameter(description = "The identifier of the broadcast.", required = true) @PathParam("jobId") String jobId)
+        throws ServiceException
+    {
+        messageController.cancelBroadcast(jobId);
+        return Response.status(Response.Status.OK).build();
+    }
 }
@@ -24,17 +24,25 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.jivesoftware.openfire.plugin.rest.controller.MsgArchiveController;
 import org.jivesoftware.openfire.plugin.rest.entity.MsgArchiveEntity;
+import org.jivesoftware.openfire.plugin.rest.entity.MsgArchiveMessageEntity;
+import org.jivesoftware.openfire.plugin.rest.exceptions.ExceptionType;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+import org.jivesoftware.openfire.plugin.rest.utils.StreamingUtils;
 import org.xmpp.packet.JID;
 
 import javax.annotation.PostConstruct;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.List;
 
-@Path("restapi/v1/archive/messages/unread/{jid}")
+@Path("restapi/v1/archive/messages")
 @Tag(name = "Message Archive", description = "Server-sided storage of chat messages.")
 public class MsgArchiveService {
 
@@ -46,6 +54,7 @@ public class MsgArchiveService {
     }
 
     @GET
+    @Path("/unread/{jid}")
     @Operation( summary = "Unread message count",
         description = "Gets a count of messages that haven't been delivered to the user yet.",
         responses = {
@@ -59,4 +68,37 @@ public class MsgArchiveService {
         int msgCount = archive.getUnReadMessagesCount(jid);
         return new MsgArchiveEntity(jidStr, msgCount);
     }
+
+    @GET
+    @Operation( summary = "Query archived messages",
+        description = "Streams archived messages as newline delimited JSON, ordered by the moment they were sent. Use the 'sentDate' and 'messageID' values of the last message that was received as the cursor to obtain the next page.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "One archived message per line.", content = @Content(mediaType = StreamingUtils.APPLICATION_NDJSON, schema = @Schema(implementation = MsgArchiveMessageEntity.class))),
+            @ApiResponse(responseCode = "400", description = "One of the provided parameters is invalid.")
+        })
+    @Produces(StreamingUtils.APPLICATION_NDJSON)
+    public Response getMessages(
+            @Parameter(description = "The (bare) JID of a user that sent or received the message. Can be provided more than once.", example = "john@example.org", required = false) @QueryParam("participant") List<String> participants,
+            @Parameter(description = "The identifier of the conversation that messages need to be part of.", example = "17", required = false) @QueryParam("conversationID") Long conversationID,
+            @Parameter(description = "Oldest moment (inclusive, in milliseconds since the epoch) of the range of messages to retrieve.", required = false) @QueryParam("startTime") Long startTime,
+            @Parameter(description = "Most recent moment (exclusive, in milliseconds since the epoch) of the range of messages to retrieve.", required = false) @QueryParam("endTime") Long endTime,
+            @Parameter(description = "Only return messages after this cursor, formatted as 'sentDate:messageID' of the last message received.", example = "1644246591517:1042", required = false) @QueryParam("after") String after,
+            @Parameter(description = "Maximum number of messages to retrieve. 0 for 'unlimited'.", example = "1000", required = false) @DefaultValue("1000") @QueryParam("limit") int limit,
+            @Parameter(description = "Whether to include the raw XMPP stanza of every message.", required = false) @DefaultValue("false") @QueryParam("includeStanza") boolean includeStanza)
+        throws ServiceException
+    {
+        final List<JID> participantJIDs = new ArrayList<>();
+        for (final String participant : participants) {
+            try {
+                participantJIDs.add(new JID(participant).asBareJID());
+            } catch (IllegalArgumentException e) {
+                throw new ServiceException("Unable to parse value as jid: " + participant, participant, ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION, Response.Status.BAD_REQUEST, e);
+            }
+        }
+        final long[] cursor = MsgArchiveController.parseCursor(after);
+
+        return Response.ok(StreamingUtils.<MsgArchiveMessageEntity>ndjson(consumer ->
+            archive.streamMessages(participantJIDs, conversationID, startTime, endTime, cursor, limit, includeStanza, consumer)
+        )).build();
+    }
 }
@@ -23,12 +23,17 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.jivesoftware.openfire.plugin.rest.controller.SecurityAuditLogController;
+import org.jivesoftware.openfire.plugin.rest.controller.SecurityAuditLogTailer;
+import org.jivesoftware.openfire.plugin.rest.entity.SecurityAuditLog;
 import org.jivesoftware.openfire.plugin.rest.entity.SecurityAuditLogs;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+import org.jivesoftware.openfire.plugin.rest.utils.StreamingUtils;
 
 import javax.annotation.PostConstruct;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 @Path("restapi/v1/logs/security")
 @Tag(name = "Security Audit Log", description = "Inspecting the security audit log.")
@@ -51,12 +56,92 @@ public class SecurityAuditLogService {
 	@Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
 	public SecurityAuditLogs getSecurityAuditLogs(
             @Parameter(description = "The name of a user for which to filter events.", example = "admin", required = false) @QueryParam("username") String username,
-            @Parameter(description = "Number of log entries to skip.", example = "0", required = false) @QueryParam("offset") int offset,
+            @Parameter(description = "Number of log entries to skip. Ignored when 'afterMsgID' is used.", example = "0", required = false) @QueryParam("offset") int offset,
             @Parameter(description = "Number of log entries to retrieve.", example = "100", required = false) @DefaultValue("100") @QueryParam("limit") int limit,
             @Parameter(description = "Oldest timestamp of range of logs to retrieve. 0 for 'forever'.", required = false) @QueryParam("startTime") long startTime,
-            @Parameter(description = "Most recent timestamp of range of logs to retrieve. 0 for 'now'.", required = false) @QueryParam("endTime") long endTime)
+            @Parameter(description = "Most recent timestamp of range of logs to retrieve. 0 for 'now'.", required = false) @QueryParam("endTime") long endTime,
+            @Parameter(description = "Only retrieve log entries with a higher log id than this one. Use the log id of the last entry that was received to incrementally retrieve new entries.", example = "1042", required = false) @QueryParam("afterMsgID") Long afterMsgID)
         throws ServiceException
     {
+		if (afterMsgID != null) {
+			return securityAuditLogController.getSecurityAuditLogsAfter(username, afterMsgID, limit, startTime, endTime);
+		}
 		return securityAuditLogController.getSecurityAuditLogs(username, offset, limit, startTime, endTime);
 	}
+
+	@GET
+	@Path("/export")
+	@Operation( summary = "Export log entries",
+		description = "Streams entries from the security audit log as newline delimited JSON, ordered by log id.",
+		responses = {
+			@ApiResponse(responseCode = "200", description = "One log entry per line.", content = @Content(mediaType = StreamingUtils.APPLICATION_NDJSON, schema = @Schema(implementation = SecurityAuditLog.class))),
+			@ApiResponse(responseCode = "403", description = "The audit log is not readable (configured to be write-only)."),
+			@ApiResponse(responseCode = "501", description = "The audit log is not stored by Openfire's default provider.")
+		})
+	@Produces(StreamingUtils.APPLICATION_NDJSON)
+	public Response exportSecurityAuditLogsAsJson(
+			@Parameter(description = "The name of a user for which to filter events.", example = "admin", required = false) @QueryParam("username") String username,
+			@Parameter(description = "Only export log entries with a higher log id than this one.", example = "1042", required = false) @QueryParam("afterMsgID") long afterMsgID,
+			@Parameter(description = "Number of log entries to export. 0 for 'unlimited'.", example = "1000", required = false) @QueryParam("limit") int limit,
+			@Parameter(description = "Oldest timestamp of range of logs to export. 0 for 'forever'.", required = false) @QueryParam("startTime") long startTime,
+			@Parameter(description = "Most recent timestamp of range of logs to export. 0 for 'now'.", required = false) @QueryParam("endTime") long endTime)
+		throws ServiceException
+	{
+		securityAuditLogController.checkCursorSupported();
+		return Response.ok(StreamingUtils.<SecurityAuditLog>ndjson(consumer ->
+			securityAuditLogController.streamSecurityAuditLogs(username, afterMsgID, limit, startTime, endTime, consumer)
+		)).build();
+	}
+
+	@GET
+	@Path("/export")
+	@Operation( summary = "Export log entries as CSV",
+		description = "Streams entries from the security audit log as comma separated values, ordered by log id.",
+		responses = {
+			@ApiResponse(responseCode = "200", description = "One log entry per record, preceded by a header record.", content = @Content(mediaType = StreamingUtils.TEXT_CSV)),
+			@ApiResponse(responseCode = "403", description = "The audit log is not readable (configured to be write-only)."),
+			@ApiResponse(responseCode = "501", description = "The audit log is not stored by Openfire's default provider.")
+		})
+	@Produces(StreamingUtils.TEXT_CSV)
+	public Response exportSecurityAuditLogsAsCsv(
+			@Parameter(description = "The name of a user for which to filter events.", example = "admin", required = false) @QueryParam("username") String username,
+			@Parameter(description = "Only export log entries with a higher log id than this one.", example = "1042", required = false) @QueryParam("afterMsgID") long afterMsgID,
+			@Parameter(description = "Number of log entries to export. 0 for 'unlimited'.", example = "1000", required = false) @QueryParam("limit") int limit,
+			@Parameter(description = "Oldest timestamp of range of logs to export. 0 for 'forever'.", required = false) @QueryParam("startTime") long startTime,
+			@Parameter(description = "Most recent timestamp of range of logs to export. 0 for 'now'.", required = false) @QueryParam("endTime") long endTime)
+		throws ServiceException
+	{
+		securityAuditLogController.checkCursorSupported();
+		return Response.ok(StreamingUtils.<SecurityAuditLog>csv(SecurityAuditLogController.COLUMNS, SecurityAuditLogController::toRecord, consumer ->
+			securityAuditLogController.streamSecurityAuditLogs(username, afterMsgID, limit, startTime, endTime, consumer)
+		)).build();
+	}
+
+	@GET
+	@Path("/tail")
+	@Operation( summary = "Tail log entries",
+		description = "Streams new entries of the security audit log as server-sent events, as they are written. Every event has the log id as its id, which allows clients to resume after a disconnect by providing it in the 'Last-Event-ID' header.",
+		responses = {
+			@ApiResponse(responseCode = "200", description = "A stream of events, of type 'log', with a log entry as data.", content = @Content(mediaType = MediaType.SERVER_SENT_EVENTS, schema = @Schema(implementation = SecurityAuditLog.class))),
+			@ApiResponse(responseCode = "403", description = "The audit log is not readable (configured to be write-only)."),
+			@ApiResponse(responseCode = "501", description = "The audit log is not stored by Openfire's default provider."),
+			@ApiResponse(responseCode = "503", description = "Too many clients are tailing the audit log.")
+		})
+	@Produces(MediaType.SERVER_SENT_EVENTS)
+	public Response tailSecurityAuditLogs(
+			@Parameter(description = "The name of a user for which to filter events.", example = "admin", required = false) @QueryParam("username") String username,
+			@Parameter(description = "Start after the log entry with this log id. When omitted, only entries that are written from now on are sent.", example = "1042", required = false) @QueryParam("afterMsgID") Long afterMsgID,
+			@Parameter(description = "The id of the last event that was received. Takes precedence over 'afterMsgID'.", required = false) @HeaderParam("Last-Event-ID") Long lastEventID)
+		throws ServiceException
+	{
+		securityAuditLogController.checkCursorSupported();
+		final long after = lastEventID != null ? lastEventID : afterMsgID != null ? afterMsgID : -1;
+		final SecurityAuditLogTailer tailer = SecurityAuditLogTailer.getInstance();
+		tailer.reserve();
+		final StreamingOutput stream = output -> tailer.tail(username, after, output);
+		return Response.ok(stream)
+			.header("Cache-Control", "no-cache")
+			.header("X-Accel-Buffering", "no")
+			.build();
+	}
 }
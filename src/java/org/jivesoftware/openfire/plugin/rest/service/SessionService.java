@@ -22,6 +22,7 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.jivesoftware.openfire.plugin.rest.HeavyEndpoint;
 import org.jivesoftware.openfire.plugin.rest.controller.SessionController;
 import org.jivesoftware.openfire.plugin.rest.entity.SessionEntities;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
@@ -49,6 +50,7 @@ public class SessionService {
             @ApiResponse(responseCode = "200", description = "The client sessions currently active in Openfire.", content = @Content(schema = @Schema(implementation = SessionEntities.class))),
         })
     @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @HeavyEndpoint
     public SessionEntities getAllSessions() throws ServiceException {
         return sessionController.getAllSessions();
     }
@@ -23,14 +23,19 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.parameters.RequestBody;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.jivesoftware.openfire.plugin.rest.HeavyEndpoint;
 import org.jivesoftware.openfire.plugin.rest.controller.UserServiceController;
 import org.jivesoftware.openfire.plugin.rest.entity.UserEntities;
 import org.jivesoftware.openfire.plugin.rest.entity.UserEntity;
 import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+import org.jivesoftware.openfire.plugin.rest.utils.EntityTagUtils;
 
 import javax.annotation.PostConstruct;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
 @Path("restapi/v1/users")
@@ -51,6 +56,7 @@ public class UserService {
             @ApiResponse(responseCode = "200", description = "A list of Openfire users.", content = @Content(schema = @Schema(implementation = UserEntities.class))),
         })
     @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    @HeavyEndpoint(unlessPresent = { "search", "propertyKey" })
     public UserEntities getUsers(
             @Parameter(description = "Search/Filter by username. This act like the wildcard search %String%", required = false) @QueryParam("search") String userSearch,
             @Parameter(description = "Filter by a user property name.", required = false) @QueryParam("propertyKey") String propertyKey,
@@ -81,14 +87,22 @@ public class UserService {
         description = "Retrieve a user that is defined in Openfire.",
         responses = {
             @ApiResponse(responseCode = "200", description = "A list of Openfire users.", content = @Content(schema = @Schema(implementation = UserEntity.class))),
+            @ApiResponse(responseCode = "304", description = "The user has not been modified since it was last retrieved (based on the provided ETag)."),
             @ApiResponse(responseCode = "404", description = "No user with that username was found."),
         })
     @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
-    public UserEntity getUser(
-            @Parameter(description = "The username of the user to return.", required = true) @PathParam("username") String username)
+    public Response getUser(
+            @Parameter(description = "The username of the user to return.", required = true) @PathParam("username") String username,
+            @Context Request request)
         throws ServiceException
     {
-        return plugin.getUserEntity(username);
+        final MediaType mediaType = EntityTagUtils.selectMediaType(request);
+        final EntityTag entityTag = plugin.getUserEntityTag(username, mediaType);
+        final Response notModified = EntityTagUtils.evaluatePreconditions(request, entityTag);
+        if (notModified != null) {
+            return notModified;
+        }
+        return Response.ok(plugin.getUserEntity(username), mediaType).tag(entityTag).build();
     }
 
     @PUT
@@ -73,23 +73,10 @@ public class UserServiceLegacy {
         // Printwriter for writing out responses to browser
         PrintWriter out = response.getWriter();
 
-        if (!plugin.getAllowedIPs().isEmpty()) {
-            // Get client's IP address
-            String ipAddress = request.getHeader("x-forwarded-for");
-            if (ipAddress == null) {
-                ipAddress = request.getHeader("X_FORWARDED_FOR");
-                if (ipAddress == null) {
-                    ipAddress = request.getHeader("X-Forward-For");
-                    if (ipAddress == null) {
-                        ipAddress = request.getRemoteAddr();
-                    }
-                }
-            }
-            if (!plugin.getAllowedIPs().contains(ipAddress)) {
-                LOG.warn("User service rejected service to IP address: " + ipAddress);
-                replyError("RequestNotAuthorised", response, out);
-                return Response.status(200).build();
-            }
+        if (!plugin.isAllowedClient(request)) {
+            LOG.warn("User service rejected service to IP address: " + plugin.getClientAddress(request));
+            replyError("RequestNotAuthorised", response, out);
+            return Response.status(200).build();
         }
 
         String username = request.getParameter("username");
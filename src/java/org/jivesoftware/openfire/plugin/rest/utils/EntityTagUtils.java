@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jivesoftware.openfire.plugin.rest.utils;
+
+import org.jivesoftware.util.SystemProperty;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Variant;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Utilities to support conditional requests, using entity tags that are derived from the modification date and the
+ * version (see {@link EntityVersions}) of an object, without first converting that object into its entity
+ * representation.
+ */
+public class EntityTagUtils {
+
+    public static final SystemProperty<Duration> LIFETIME = SystemProperty.Builder.ofType(Duration.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.entity-tags.lifetime")
+        .setDefaultValue(Duration.ofMinutes(5))
+        .setChronoUnit(ChronoUnit.SECONDS)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * Instantiates a new entity tag utils.
+     */
+    private EntityTagUtils() {
+        throw new AssertionError();
+    }
+
+    /** The representations of entities, in the order of preference of the endpoints that produce them. */
+    private static final List<Variant> VARIANTS = Arrays.asList(
+        new Variant(MediaType.APPLICATION_XML_TYPE, (String) null, null),
+        new Variant(MediaType.APPLICATION_JSON_TYPE, (String) null, null));
+
+    /**
+     * Identifies this instance of the plugin. Versions are kept in memory and start at zero, so the same version can
+     * identify different states of an object before and after the plugin is reloaded.
+     */
+    private static final String EPOCH = Long.toHexString(System.currentTimeMillis());
+
+    /**
+     * Selects the media type of the entity representation in a response, based on the <tt>Accept</tt> header of the
+     * request. Endpoints that return an entity tag respond with this media type, as the tag identifies it.
+     *
+     * @param request the request
+     * @return the media type (XML or JSON)
+     */
+    public static MediaType selectMediaType(Request request) {
+        final Variant variant = request.selectVariant(VARIANTS);
+        return (variant == null ? VARIANTS.get(0) : variant).getMediaType();
+    }
+
+    /**
+     * Creates a strong entity tag from the modification date and the version of an object, and the media type of its
+     * representation.
+     *
+     * Not every change raises an event (for example, changes made directly in an LDAP directory), so the tag also
+     * changes when its lifetime (a period that is the same for all tags) ends. Such changes are therefore reflected
+     * within the configured lifetime.
+     *
+     * @param mediaType the media type of the representation
+     * @param modificationDate the last modification date of the object (can be null)
+     * @param version the version of the object
+     * @return an entity tag
+     */
+    public static EntityTag createEntityTag(MediaType mediaType, Date modificationDate, long version) {
+        final long lifetime = LIFETIME.getValue().toMillis();
+        final long period = lifetime > 0 ? System.currentTimeMillis() / lifetime : 0;
+        final long modified = modificationDate == null ? 0 : modificationDate.getTime();
+        return new EntityTag(EPOCH + '-' + Long.toHexString(period) + '-' + Long.toHexString(modified) + '-'
+            + Long.toHexString(version) + '-' + mediaType.getSubtype());
+    }
+
+    /**
+     * Evaluates the preconditions of a request (such as <tt>If-None-Match</tt>) against the entity tag of the current
+     * state of the requested resource.
+     *
+     * @param request the request
+     * @param entityTag the entity tag of the current state of the resource (can be null)
+     * @return a response (eg: 304 Not Modified) if the preconditions were not met, otherwise null.
+     */
+    public static Response evaluatePreconditions(Request request, EntityTag entityTag) {
+        if (entityTag == null) {
+            return null;
+        }
+        final Response.ResponseBuilder builder = request.evaluatePreconditions(entityTag);
+        return builder == null ? null : builder.tag(entityTag).build();
+    }
+}
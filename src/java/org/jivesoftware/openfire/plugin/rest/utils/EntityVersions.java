@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jivesoftware.openfire.plugin.rest.utils;
+
+import org.jivesoftware.openfire.event.GroupEventListener;
+import org.jivesoftware.openfire.event.UserEventListener;
+import org.jivesoftware.openfire.group.Group;
+import org.jivesoftware.openfire.muc.MUCEventListener;
+import org.jivesoftware.openfire.user.User;
+import org.xmpp.packet.JID;
+import org.xmpp.packet.Message;
+
+import javax.annotation.Nonnull;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps versions of users, groups and chat rooms, which are incremented when an event signals that the entity
+ * representation of one of these might have changed. Entity tags are created from these versions (see
+ * {@link EntityTagUtils}), so that a conditional request can be answered without inspecting the state of an object.
+ *
+ * Objects are distributed over a fixed number of versions by their (lower-cased) name, so that memory usage does not
+ * depend on the number of objects. A change to one object therefore also changes the version of some others, which
+ * only causes their entity tags to change needlessly.
+ *
+ * Versions are kept in memory, and only reflect the events that are raised on this cluster node. Openfire does not
+ * raise events for all changes to chat rooms; changes that this plugin makes are recorded with {@link #roomModified(JID)}.
+ */
+public class EntityVersions implements UserEventListener, GroupEventListener, MUCEventListener {
+
+    /** The number of versions that objects of one type are distributed over. */
+    private static final int STRIPES = 1024;
+
+    private static final EntityVersions INSTANCE = new EntityVersions();
+
+    public static EntityVersions getInstance() {
+        return INSTANCE;
+    }
+
+    private final AtomicLongArray users = new AtomicLongArray(STRIPES);
+    private final AtomicLongArray groups = new AtomicLongArray(STRIPES);
+    private final AtomicLongArray rooms = new AtomicLongArray(STRIPES);
+
+    private EntityVersions() {
+    }
+
+    /**
+     * Returns the version of a user, which changes whenever the user (or one of its properties) is modified.
+     *
+     * @param username the name of the user
+     * @return the version
+     */
+    public long getUserVersion(@Nonnull final String username) {
+        return users.get(index(username));
+    }
+
+    /**
+     * Returns the version of a group, which changes whenever the group, its members or its properties are modified.
+     *
+     * @param groupName the name of the group
+     * @return the version
+     */
+    public long getGroupVersion(@Nonnull final String groupName) {
+        return groups.get(index(groupName));
+    }
+
+    /**
+     * Returns the version of a chat room, which changes whenever an event signals that the room was modified, and when
+     * this plugin modifies the room.
+     *
+     * @param roomJID the address of the room
+     * @return the version
+     */
+    public long getRoomVersion(@Nonnull final JID roomJID) {
+        return rooms.get(index(roomJID.toBareJID()));
+    }
+
+    /**
+     * Records that a chat room was modified. This method should be invoked while holding the room lock, so that the
+     * version changes before any other request can observe the modification.
+     *
+     * @param roomJID the address of the room
+     */
+    public void roomModified(@Nonnull final JID roomJID) {
+        increment(rooms, roomJID.toBareJID());
+    }
+
+    private static int index(@Nonnull final String name) {
+        return Math.floorMod(name.toLowerCase(Locale.ROOT).hashCode(), STRIPES);
+    }
+
+    private static void increment(@Nonnull final AtomicLongArray versions, @Nonnull final String name) {
+        versions.incrementAndGet(index(name));
+    }
+
+    @Override
+    public void userCreated(User user, Map params) {
+        increment(users, user.getUsername());
+    }
+
+    @Override
+    public void userDeleting(User user, Map params) {
+        increment(users, user.getUsername());
+    }
+
+    @Override
+    public void userModified(User user, Map params) {
+        increment(users, user.getUsername());
+    }
+
+    @Override
+    public void groupCreated(Group group, Map params) {
+        increment(groups, group.getName());
+    }
+
+    @Override
+    public void groupDeleting(Group group, Map params) {
+        increment(groups, group.getName());
+    }
+
+    @Override
+    public void groupModified(Group group, Map params) {
+        if (params != null && "nameModified".equals(params.get("type")) && params.get("originalValue") instanceof String) {
+            increment(groups, (String) params.get("originalValue"));
+        }
+        increment(groups, group.getName());
+    }
+
+    @Override
+    public void memberAdded(Group group, Map params) {
+        increment(groups, group.getName());
+    }
+
+    @Override
+    public void memberRemoved(Group group, Map params) {
+        increment(groups, group.getName());
+    }
+
+    @Override
+    public void adminAdded(Group group, Map params) {
+        increment(groups, group.getName());
+    }
+
+    @Override
+    public void adminRemoved(Group group, Map params) {
+        increment(groups, group.getName());
+    }
+
+    @Override
+    public void roomCreated(JID roomJID) {
+        roomModified(roomJID);
+    }
+
+    @Override
+    public void roomDestroyed(JID roomJID) {
+        roomModified(roomJID);
+    }
+
+    @Override
+    public void occupantJoined(JID roomJID, JID user, String nickname) {
+        // Occupants are not part of the entity representation of a room.
+    }
+
+    // Not annotated with @Override: the signature of this method differs between Openfire versions.
+    public void occupantLeft(JID roomJID, JID user) {
+        // Occupants are not part of the entity representation of a room.
+    }
+
+    // Not annotated with @Override: the signature of this method differs between Openfire versions.
+    public void occupantLeft(JID roomJID, JID user, String nickname) {
+        // Occupants are not part of the entity representation of a room.
+    }
+
+    // Not annotated with @Override: this method does not exist in all Openfire versions.
+    public void occupantNickKicked(JID roomJID, String nickname) {
+        // Occupants are not part of the entity representation of a room.
+    }
+
+    @Override
+    public void nicknameChanged(JID roomJID, JID user, String oldNickname, String newNickname) {
+        // Occupants are not part of the entity representation of a room.
+    }
+
+    @Override
+    public void messageReceived(JID roomJID, JID user, String nickname, Message message) {
+        // Messages are not part of the entity representation of a room.
+    }
+
+    @Override
+    public void privateMessageRecieved(JID toJID, JID fromJID, Message message) {
+        // Messages are not part of the entity representation of a room.
+    }
+
+    @Override
+    public void roomSubjectChanged(JID roomJID, JID user, String newSubject) {
+        roomModified(roomJID);
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jivesoftware.openfire.plugin.rest.utils;
+
+import org.jivesoftware.openfire.event.GroupEventListener;
+import org.jivesoftware.openfire.group.Group;
+import org.jivesoftware.openfire.group.GroupManager;
+import org.jivesoftware.openfire.group.GroupNotFoundException;
+import org.jivesoftware.util.SystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.JID;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Resolves JIDs and names to groups, and groups to their members, caching the results.
+ *
+ * Group events raised by Openfire invalidate the cached data of the affected group only. The creation (or renaming) of a
+ * group additionally invalidates all cached data that says that a name or JID does not represent a group. As not every
+ * group provider raises events for changes that are made outside of Openfire, cached data also expires after a
+ * configurable period.
+ *
+ * To quickly determine that a name is <em>not</em> the name of a group (which is the common case, as most names that
+ * are checked are usernames), the names of all groups are kept in memory. Names are stored in lower case, as group
+ * providers can be case-insensitive. A name that is found in this set is subsequently verified with the group provider.
+ * Groups that are created without Openfire raising an event (for example, directly in an LDAP directory) are not
+ * recognized as groups until the set is reloaded. Setting the refresh interval to zero disables the set.
+ */
+public class GroupResolver implements GroupEventListener {
+    private static final Logger LOG = LoggerFactory.getLogger(GroupResolver.class);
+
+    public static final SystemProperty<Duration> TTL = SystemProperty.Builder.ofType(Duration.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.groups.resolver-cache.ttl")
+        .setDefaultValue(Duration.ofMinutes(1))
+        .setChronoUnit(ChronoUnit.SECONDS)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Integer> MAX_SIZE = SystemProperty.Builder.ofType(Integer.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.groups.resolver-cache.max-size")
+        .setDefaultValue(10000)
+        .setMinValue(0)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Duration> NAME_SET_REFRESH_INTERVAL = SystemProperty.Builder.ofType(Duration.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.groups.name-set.refresh-interval")
+        .setDefaultValue(Duration.ofMinutes(1))
+        .setChronoUnit(ChronoUnit.SECONDS)
+        .setDynamic(true)
+        .build();
+
+    public static final SystemProperty<Integer> NAME_SET_MAX_SIZE = SystemProperty.Builder.ofType(Integer.class)
+        .setPlugin("REST API")
+        .setKey("plugin.restapi.groups.name-set.max-size")
+        .setDefaultValue(100000)
+        .setMinValue(0)
+        .setDynamic(true)
+        .build();
+
+    /** Cached value of a JID that does not represent a group. */
+    private static final String NOT_A_GROUP = "";
+
+    private static final GroupResolver INSTANCE = new GroupResolver();
+
+    public static GroupResolver getInstance() {
+        return INSTANCE;
+    }
+
+    /** Whether a group with a name exists, by name. */
+    private final Map<String, Entry<Boolean>> groupNames = new ConcurrentHashMap<>();
+
+    /** The name of the group that a JID represents (or {@link #NOT_A_GROUP}), by JID. */
+    private final Map<JID, Entry<String>> groupJIDs = new ConcurrentHashMap<>();
+
+    /** Members and admins of a group, by group name. */
+    private final Map<String, Entry<Collection<JID>>> members = new ConcurrentHashMap<>();
+
+    /** The number of versions that groups are distributed over. */
+    private static final int GROUP_VERSION_STRIPES = 64;
+
+    /**
+     * Incremented when data of a group is invalidated, so that values for that group that were looked up concurrently
+     * are not stored. Groups are distributed over the versions by their (lower-cased) name.
+     */
+    private final AtomicLongArray groupVersions = new AtomicLongArray(GROUP_VERSION_STRIPES);
+
+    /**
+     * Incremented when a group is created or renamed, so that the absence of a group that was looked up concurrently is
+     * not stored.
+     */
+    private final AtomicLong absenceVersion = new AtomicLong();
+
+    /** The lower-cased names of all groups, or null when these are not (yet) available. */
+    private volatile Set<String> lowerCaseGroupNames;
+
+    /** The moment at which the group names were last (attempted to be) loaded. */
+    private volatile long groupNamesLoaded;
+
+    /** Prevents more than one thread from loading the group names at the same time. */
+    private final AtomicBoolean loadingGroupNames = new AtomicBoolean();
+
+    /** Incremented when a group is created or renamed, so that names that were loaded concurrently are not used. */
+    private final AtomicLong groupNamesVersion = new AtomicLong();
+
+    private GroupResolver() {
+    }
+
+    /**
+     * Checks if a group with a particular name exists.
+     *
+     * @param groupName the name of the group
+     * @return true if the group exists, otherwise false.
+     */
+    public boolean isGroupName(@Nonnull final String groupName) {
+        final Set<String> names = getLowerCaseGroupNames();
+        if (names != null && !names.contains(groupName.toLowerCase(Locale.ROOT))) {
+            return false;
+        }
+        final Entry<Boolean> cached = get(groupNames, groupName);
+        if (cached != null) {
+            return cached.value;
+        }
+        final long groupVersionBefore = getGroupVersion(groupName);
+        final long absenceVersionBefore = absenceVersion.get();
+        boolean exists;
+        try {
+            GroupManager.getInstance().getGroup(groupName);
+            exists = true;
+        } catch (GroupNotFoundException e) {
+            exists = false;
+        }
+        final boolean result = exists;
+        put(groupNames, groupName, exists,
+            () -> getGroupVersion(groupName) == groupVersionBefore && (result || absenceVersion.get() == absenceVersionBefore));
+        return exists;
+    }
+
+    /**
+     * Returns the group that is represented by a JID (or a group name).
+     *
+     * @param maybeAGroupJIDOrAGroupName a JID that may or may not be a group JID or even just a group name
+     * @return the group, or null if the JID does not represent a group
+     */
+    @Nullable
+    public Group getGroup(@Nonnull final JID maybeAGroupJIDOrAGroupName) {
+        final Entry<String> cached = get(groupJIDs, maybeAGroupJIDOrAGroupName);
+        if (cached != null) {
+            return NOT_A_GROUP.equals(cached.value) ? null : getGroupByName(cached.value);
+        }
+        final long absenceVersionBefore = absenceVersion.get();
+        Group group;
+        try {
+            group = GroupManager.getInstance().getGroup(maybeAGroupJIDOrAGroupName);
+        } catch (GroupNotFoundException e) {
+            group = null;
+        }
+        // A cached group name is verified when it is used, so only the absence of a group can be outdated.
+        final boolean found = group != null;
+        put(groupJIDs, maybeAGroupJIDOrAGroupName, found ? group.getName() : NOT_A_GROUP,
+            () -> found || absenceVersion.get() == absenceVersionBefore);
+        return group;
+    }
+
+    /**
+     * Returns the members and admins of a group.
+     *
+     * @param group the group
+     * @return an unmodifiable collection of the addresses of all members and admins of the group
+     */
+    @Nonnull
+    public Collection<JID> getMembers(@Nonnull final Group group) {
+        final Entry<Collection<JID>> cached = get(members, group.getName());
+        if (cached != null) {
+            return cached.value;
+        }
+        final long versionBefore = getGroupVersion(group.getName());
+        final Collection<JID> result = Collections.unmodifiableList(new ArrayList<>(group.getAll()));
+        put(members, group.getName(), result, () -> getGroupVersion(group.getName()) == versionBefore);
+        return result;
+    }
+
+    /**
+     * Discards all cached data.
+     */
+    public void clear() {
+        absenceVersion.incrementAndGet();
+        for (int i = 0; i < GROUP_VERSION_STRIPES; i++) {
+            groupVersions.incrementAndGet(i);
+        }
+        groupNames.clear();
+        groupJIDs.clear();
+        members.clear();
+    }
+
+    /**
+     * Returns the lower-cased names of all groups, (re)loading them when needed.
+     *
+     * @return the names, or null if these are not available (in which case every name needs to be looked up).
+     */
+    @Nullable
+    private Set<String> getLowerCaseGroupNames() {
+        final long refreshInterval = NAME_SET_REFRESH_INTERVAL.getValue().toMillis();
+        if (refreshInterval <= 0) {
+            lowerCaseGroupNames = null;
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        if (now - groupNamesLoaded < refreshInterval || !loadingGroupNames.compareAndSet(false, true)) {
+            // Fresh enough, or another thread is already loading the names. Use what's there in the meantime.
+            return lowerCaseGroupNames;
+        }
+        try {
+            final long versionBefore = groupNamesVersion.get();
+            final GroupManager groupManager = GroupManager.getInstance();
+            if (groupManager.getGroupCount() > NAME_SET_MAX_SIZE.getValue()) {
+                lowerCaseGroupNames = null;
+            } else {
+                final Set<String> names = ConcurrentHashMap.newKeySet();
+                for (final String name : groupManager.getGroupNames()) {
+                    names.add(name.toLowerCase(Locale.ROOT));
+                }
+                if (groupNamesVersion.get() != versionBefore) {
+                    // A group was created while loading. Try again later, and look up names individually until then.
+                    return lowerCaseGroupNames;
+                }
+                lowerCaseGroupNames = names;
+            }
+            groupNamesLoaded = now;
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to load the names of all groups. Group names will be looked up individually.", e);
+            lowerCaseGroupNames = null;
+            groupNamesLoaded = now;
+        } finally {
+            loadingGroupNames.set(false);
+        }
+        return lowerCaseGroupNames;
+    }
+
+    private void addGroupName(@Nonnull final String groupName) {
+        groupNamesVersion.incrementAndGet();
+        final Set<String> names = lowerCaseGroupNames;
+        if (names != null) {
+            names.add(groupName.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    @Nullable
+    private static Group getGroupByName(@Nonnull final String groupName) {
+        try {
+            return GroupManager.getInstance().getGroup(groupName);
+        } catch (GroupNotFoundException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static <K, V> Entry<V> get(@Nonnull final Map<K, Entry<V>> cache, @Nonnull final K key) {
+        final Entry<V> entry = cache.get(key);
+        if (entry == null || entry.expires <= System.currentTimeMillis()) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Caches a value, unless the cache is full. The value is discarded again when it is no longer valid after it has
+     * been stored: invalidations first update versions, and then remove entries, so an invalidation that happens while
+     * a value is looked up is either detected here, or removes the value itself.
+     */
+    private static <K, V> void put(@Nonnull final Map<K, Entry<V>> cache, @Nonnull final K key, @Nonnull final V value, @Nonnull final BooleanSupplier stillValid) {
+        final int maxSize = MAX_SIZE.getValue();
+        if (cache.size() >= maxSize) {
+            final long now = System.currentTimeMillis();
+            cache.values().removeIf(e -> e.expires <= now);
+            if (cache.size() >= maxSize) {
+                return;
+            }
+        }
+        final Entry<V> entry = new Entry<>(value, System.currentTimeMillis() + TTL.getValue().toMillis());
+        cache.put(key, entry);
+        if (!stillValid.getAsBoolean()) {
+            cache.remove(key, entry);
+        }
+    }
+
+    private long getGroupVersion(@Nonnull final String groupName) {
+        return groupVersions.get(getGroupVersionIndex(groupName));
+    }
+
+    private static int getGroupVersionIndex(@Nonnull final String groupName) {
+        return Math.floorMod(groupName.toLowerCase(Locale.ROOT).hashCode(), GROUP_VERSION_STRIPES);
+    }
+
+    /**
+     * Discards all cached data that refers to a group. Names are compared case-insensitively, as group providers can
+     * be case-insensitive.
+     */
+    private void invalidateGroup(@Nonnull final String groupName) {
+        groupVersions.incrementAndGet(getGroupVersionIndex(groupName));
+        groupNames.keySet().removeIf(groupName::equalsIgnoreCase);
+        groupJIDs.values().removeIf(e -> groupName.equalsIgnoreCase(e.value));
+        members.keySet().removeIf(groupName::equalsIgnoreCase);
+    }
+
+    /**
+     * Discards all cached data that says that a name or JID does not represent a group, as that might no longer be true
+     * for a group that is created or renamed.
+     */
+    private void invalidateAbsence(@Nonnull final String groupName) {
+        absenceVersion.incrementAndGet();
+        addGroupName(groupName);
+        groupNames.values().removeIf(e -> !e.value);
+        groupJIDs.values().removeIf(e -> NOT_A_GROUP.equals(e.value));
+    }
+
+    private void invalidateMembers(@Nonnull final Group group) {
+        groupVersions.incrementAndGet(getGroupVersionIndex(group.getName()));
+        members.remove(group.getName());
+    }
+
+    @Override
+    public void groupCreated(Group group, Map params) {
+        // Names and JIDs that previously did not represent a group might do so now.
+        invalidateAbsence(group.getName());
+    }
+
+    @Override
+    public void groupDeleting(Group group, Map params) {
+        // The name is not removed from the set of names, as it can also represent another group in a case-insensitive
+        // provider. That only costs a lookup, until the next refresh.
+        invalidateGroup(group.getName());
+    }
+
+    @Override
+    public void groupModified(Group group, Map params) {
+        if (params != null && "nameModified".equals(params.get("type")) && params.get("originalValue") instanceof String) {
+            invalidateGroup((String) params.get("originalValue"));
+            invalidateAbsence(group.getName());
+        }
+        invalidateGroup(group.getName());
+    }
+
+    @Override
+    public void memberAdded(Group group, Map params) {
+        invalidateMembers(group);
+    }
+
+    @Override
+    public void memberRemoved(Group group, Map params) {
+        invalidateMembers(group);
+    }
+
+    @Override
+    public void adminAdded(Group group, Map params) {
+        invalidateMembers(group);
+    }
+
+    @Override
+    public void adminRemoved(Group group, Map params) {
+        invalidateMembers(group);
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expires;
+
+        private Entry(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+}
@@ -20,7 +20,11 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.jivesoftware.openfire.group.Group;
@@ -156,4 +160,50 @@ public class MUCRoomUtils {
             return null;
         }
     }
+
+    /**
+     * Selects a window of the history of a room, in chronological order. The history is iterated from the most recent
+     * message backwards, until the requested number of messages has been found, or a message older than 'since' is
+     * encountered.
+     *
+     * Messages that share a delay stamp are told apart by their position among the messages with that stamp, counted
+     * from the most recent one. To page backwards, a client passes the stamp of the oldest message that it received as
+     * 'before', and the number of received messages with that same stamp as 'skip'. Messages are only appended to the
+     * history, so these positions do not change, unless a message with that very same stamp is added later.
+     *
+     * @param history iterates the history backwards, starting after the most recent message
+     * @param stamps provides the delay stamp of a message (null when it has none, which includes the message regardless
+     *            of 'since' and 'before')
+     * @param since the oldest moment (inclusive) of messages to return (can be null)
+     * @param before the most recent moment of messages to return (can be null)
+     * @param skip the number of most recent messages that have 'before' as their stamp to leave out, or null to leave
+     *            out all of those (making 'before' exclusive)
+     * @param max the maximum number of (most recent) messages to return, 0 or less for 'unlimited'
+     * @param <T> the type of the messages
+     * @return the messages in the window, in chronological order
+     */
+    public static <T> List<T> getHistoryWindow(ListIterator<T> history, Function<T, Date> stamps, Date since, Date before,
+                                               Integer skip, int max) {
+        final List<T> result = new ArrayList<>();
+        final boolean filter = since != null || before != null;
+        int skipped = 0;
+        while (history.hasPrevious() && (max <= 0 || result.size() < max)) {
+            final T message = history.previous();
+            final Date stamp = filter ? stamps.apply(message) : null;
+            if (stamp != null) {
+                if (before != null) {
+                    final int order = stamp.compareTo(before);
+                    if (order > 0 || (order == 0 && (skip == null || skipped++ < skip))) {
+                        continue;
+                    }
+                }
+                if (since != null && stamp.before(since)) {
+                    break;
+                }
+            }
+            result.add(message);
+        }
+        Collections.reverse(result);
+        return result;
+    }
 }
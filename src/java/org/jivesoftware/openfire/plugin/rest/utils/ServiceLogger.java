@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jivesoftware.openfire.plugin.rest.utils;
+
+import org.jivesoftware.openfire.plugin.rest.RESTServicePlugin;
+import org.jivesoftware.util.SystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.Supplier;
+
+/**
+ * Logs the operations that are performed by services, when service logging is enabled.
+ *
+ * Whether service logging is enabled is read from a cached system property, and messages are only formatted when they
+ * are actually logged. Callers should pass a format with '{}' placeholders and its arguments, or a supplier for
+ * messages that are expensive to compute, rather than concatenating a message themselves.
+ */
+public final class ServiceLogger {
+
+    public static final SystemProperty<Boolean> ENABLED = SystemProperty.Builder.ofType(Boolean.class)
+        .setPlugin("REST API")
+        .setKey(RESTServicePlugin.SERVICE_LOGGING_ENABLED)
+        .setDefaultValue(false)
+        .setDynamic(true)
+        .build();
+
+    private final Logger logger;
+
+    private ServiceLogger(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Returns a service logger that writes to the logger of a class.
+     *
+     * @param clazz the class that performs the operations that are logged
+     * @return a service logger
+     */
+    public static ServiceLogger getLogger(Class<?> clazz) {
+        return new ServiceLogger(LoggerFactory.getLogger(clazz));
+    }
+
+    /**
+     * Returns whether messages are logged.
+     *
+     * @return true if service logging is enabled, and the underlying logger logs informational messages.
+     */
+    public boolean isEnabled() {
+        return ENABLED.getValue() && logger.isInfoEnabled();
+    }
+
+    public void log(String message) {
+        if (isEnabled()) {
+            logger.info(message);
+        }
+    }
+
+    public void log(String format, Object arg) {
+        if (isEnabled()) {
+            logger.info(format, arg);
+        }
+    }
+
+    public void log(String format, Object arg1, Object arg2) {
+        if (isEnabled()) {
+            logger.info(format, arg1, arg2);
+        }
+    }
+
+    public void log(String format, Object... args) {
+        if (isEnabled()) {
+            logger.info(format, args);
+        }
+    }
+
+    public void log(Supplier<String> message) {
+        if (isEnabled()) {
+            logger.info(message.get());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2022.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jivesoftware.openfire.plugin.rest.utils;
+
+import org.jivesoftware.openfire.plugin.rest.CustomJacksonMapperProvider;
+import org.jivesoftware.openfire.plugin.rest.exceptions.ExceptionType;
+import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Utilities to write (potentially very large) collections of entities to a response, one entity at a time, without
+ * first collecting them in memory.
+ */
+public class StreamingUtils {
+
+    /** Media type of newline delimited JSON: every line of the response body is a complete JSON document. */
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    /** Media type of comma separated values, as defined in RFC 4180. */
+    public static final String TEXT_CSV = "text/csv";
+
+    /** The number of entities after which the output is flushed to the client. */
+    private static final int FLUSH_INTERVAL = 100;
+
+    /**
+     * Instantiates a new streaming utils.
+     */
+    private StreamingUtils() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Receives entities, one at a time, as they are being produced.
+     *
+     * @param <T> the type of the entity
+     */
+    @FunctionalInterface
+    public interface EntityConsumer<T> {
+        void accept(T entity) throws IOException;
+    }
+
+    /**
+     * Produces entities, passing each of them to a consumer as soon as it is available.
+     *
+     * @param <T> the type of the entity
+     */
+    @FunctionalInterface
+    public interface EntityProducer<T> {
+        void produce(EntityConsumer<T> consumer) throws IOException;
+    }
+
+    /**
+     * Parses a pagination cursor that consists of two numeric values, separated by a colon. Typically, the first
+     * value is a timestamp and the second value an identifier that makes the cursor unique.
+     *
+     * @param cursor the cursor (can be null)
+     * @param format a description of the format of the cursor, used in the error message, eg: <tt>sentDate:messageID</tt>
+     * @return a two-element array containing both values, or null when no cursor was provided.
+     * @throws ServiceException when the cursor cannot be parsed
+     */
+    public static long[] parseCursor(String cursor, String format) throws ServiceException {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        final int index = cursor.indexOf(':');
+        try {
+            if (index > 0) {
+                return new long[] { Long.parseLong(cursor.substring(0, index)), Long.parseLong(cursor.substring(index + 1)) };
+            }
+        } catch (NumberFormatException e) {
+            // Handled below.
+        }
+        throw new ServiceException("Cursor must be formatted as '" + format + "'", cursor,
+                ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION, Response.Status.BAD_REQUEST);
+    }
+
+    /**
+     * Creates a response body that writes every entity that is produced as a single line of JSON.
+     *
+     * The output is flushed periodically, which allows clients to start processing data before all of it has been
+     * produced.
+     *
+     * @param producer the source of the entities to write
+     * @param <T> the type of the entities
+     * @return a response body in the newline delimited JSON format
+     */
+    public static <T> StreamingOutput ndjson(final EntityProducer<T> producer) {
+        return output -> {
+            final int[] count = {0};
+            producer.produce(entity -> {
+                output.write(toJson(entity));
+                output.write('\n');
+                if (++count[0] % FLUSH_INTERVAL == 0) {
+                    output.flush();
+                }
+            });
+            output.flush();
+        };
+    }
+
+    /**
+     * Serializes an entity to JSON, using the same configuration as the one used for regular JSON responses.
+     *
+     * @param entity the entity to serialize
+     * @return the UTF-8 encoded JSON representation of the entity
+     * @throws IOException when the entity cannot be serialized
+     */
+    public static byte[] toJson(Object entity) throws IOException {
+        return CustomJacksonMapperProvider.getWriter(entity.getClass()).writeValueAsBytes(entity);
+    }
+
+    /**
+     * Creates a response body that writes every entity that is produced as a single record of comma separated values,
+     * preceded by a header record.
+     *
+     * @param header the names of the columns
+     * @param toRecord converts an entity into the values of a record, in the same order as the header
+     * @param producer the source of the entities to write
+     * @param <T> the type of the entities
+     * @return a response body in the CSV format
+     */
+    public static <T> StreamingOutput csv(final String[] header, final Function<T, Object[]> toRecord, final EntityProducer<T> producer) {
+        return output -> {
+            writeCsvRecord(output, header);
+            final int[] count = {0};
+            producer.produce(entity -> {
+                writeCsvRecord(output, toRecord.apply(entity));
+                if (++count[0] % FLUSH_INTERVAL == 0) {
+                    output.flush();
+                }
+            });
+            output.flush();
+        };
+    }
+
+    private static void writeCsvRecord(OutputStream output, Object[] values) throws IOException {
+        final StringBuilder record = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                record.append(',');
+            }
+            if (values[i] == null) {
+                continue;
+            }
+            final String value = values[i].toString();
+            if (value.indexOf(',') != -1 || value.indexOf('"') != -1 || value.indexOf('\n') != -1 || value.indexOf('\r') != -1) {
+                record.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+                record.append(value);
+            }
+        }
+        record.append("\r\n");
+        output.write(record.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
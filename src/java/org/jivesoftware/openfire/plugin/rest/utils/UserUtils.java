@@ -27,9 +27,7 @@ import org.jivesoftware.openfire.plugin.rest.entity.UserProperty;
 import org.jivesoftware.openfire.user.User;
 import org.jivesoftware.openfire.user.UserAlreadyExistsException;
 import org.jivesoftware.openfire.group.Group;
-import org.jivesoftware.openfire.group.GroupManager;
 import org.jivesoftware.openfire.group.GroupJID;
-import org.jivesoftware.openfire.group.GroupNotFoundException;
 import org.xmpp.packet.JID;
 
 /**
@@ -132,14 +130,10 @@ public class UserUtils {
      *
      * @param groupname The groupname as a string
      * @return true, if the groupname exists
+     * @see GroupResolver
      */
     public static boolean isValidGroupName(String groupname) {
-        try {
-            GroupManager.getInstance().getGroup(groupname);
-        } catch(GroupNotFoundException e) {
-            return false;
-        }
-        return true;
+        return GroupResolver.getInstance().isGroupName(groupname);
     }
 
     /**
@@ -148,14 +142,9 @@ public class UserUtils {
      *          A JID that may or may not be a group JID or even just a group name
      * @return
      *          The group represented by the JID, or null if the JID does not represent a group
+     * @see GroupResolver
      */
     public static Group getGroupIfIsGroup(JID maybeAGroupJIDOrAGroupName) {
-        try {
-            return GroupManager.getInstance().getGroup(maybeAGroupJIDOrAGroupName);
-        } catch (GroupNotFoundException e) {
-            // Just return null
-        }
-
-        return null;
+        return GroupResolver.getInstance().getGroup(maybeAGroupJIDOrAGroupName);
     }
 }
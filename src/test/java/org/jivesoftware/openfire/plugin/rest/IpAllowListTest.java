@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2022 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.openfire.plugin.rest;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests that verify the parsing and matching of addresses and address ranges by {@link IpAllowList}.
+ */
+public class IpAllowListTest {
+
+    @Test
+    public void testNullAndEmptyEntriesGiveEmptyList() {
+        assertTrue(IpAllowList.parse(null).isEmpty());
+        assertTrue(IpAllowList.parse(Collections.emptyList()).isEmpty());
+        assertTrue(IpAllowList.parse(Arrays.asList("", "  ")).isEmpty());
+        assertFalse(IpAllowList.parse(null).matches("127.0.0.1"));
+    }
+
+    @Test
+    public void testInvalidEntriesAreIgnored() {
+        final IpAllowList list = IpAllowList.parse(Arrays.asList("not an address", "10.0.0.0/33", "300.1.1.1", "2001:db8::/129", "1.2.3", "10.0.0.0/8"));
+        assertEquals(1, list.size());
+        assertTrue(list.matches("10.1.2.3"));
+    }
+
+    @Test
+    public void testOnlyInvalidEntriesGiveEmptyList() {
+        assertTrue(IpAllowList.parse(Arrays.asList("not an address", "10.0.0.0/33")).isEmpty());
+    }
+
+    @Test
+    public void testSingleIPv4Address() {
+        final IpAllowList list = IpAllowList.parse(Collections.singletonList("192.0.2.10"));
+        assertTrue(list.matches("192.0.2.10"));
+        assertFalse(list.matches("192.0.2.11"));
+        assertFalse(list.matches("192.0.2.1"));
+    }
+
+    @Test
+    public void testIPv4Range() {
+        final IpAllowList list = IpAllowList.parse(Collections.singletonList("192.168.0.0/16"));
+        assertTrue(list.matches("192.168.0.0"));
+        assertTrue(list.matches("192.168.255.255"));
+        assertFalse(list.matches("192.169.0.0"));
+        assertFalse(list.matches("192.167.255.255"));
+    }
+
+    @Test
+    public void testIPv4RangeWithUnalignedPrefix() {
+        final IpAllowList list = IpAllowList.parse(Collections.singletonList("10.0.0.0/23"));
+        assertTrue(list.matches("10.0.1.255"));
+        assertFalse(list.matches("10.0.2.0"));
+    }
+
+    @Test
+    public void testAllIPv4AddressesDoNotIncludeIPv6() {
+        final IpAllowList list = IpAllowList.parse(Collections.singletonList("0.0.0.0/0"));
+        assertTrue(list.matches("203.0.113.7"));
+        assertFalse(list.matches("::1"));
+        assertFalse(list.matches("2001:db8::1"));
+    }
+
+    @Test
+    public void testIPv4AddressWithPort() {
+        final IpAllowList list = IpAllowList.parse(Collections.singletonList("10.0.0.1"));
+        assertTrue(list.matches("10.0.0.1:8080"));
+        assertTrue(list.matches(" 10.0.0.1 "));
+    }
+
+    @Test
+    public void testIPv6Range() {
+        final IpAllowList list = IpAllowList.parse(Collections.singletonList("2001:db8::/32"));
+        assertTrue(list.matches("2001:db8::1"));
+        assertTrue(list.matches("2001:0db8:ffff:ffff:ffff:ffff:ffff:ffff"));
+        assertTrue(list.matches("[2001:db8::1]"));
+        assertTrue(list.matches("2001:db8::1%eth0"));
+        assertFalse(list.matches("2001:db9::1"));
+        assertFalse(list.matches("10.0.0.1"));
+    }
+
+    @Test
+    public void testIPv6Loopback() {
+        final IpAllowList list = IpAllowList.parse(Collections.singletonList("::1"));
+        assertTrue(list.matches("::1"));
+        assertTrue(list.matches("0:0:0:0:0:0:0:1"));
+        assertFalse(list.matches("::2"));
+        assertFalse(list.matches("127.0.0.1"));
+    }
+
+    @Test
+    public void testIPv4MappedIPv6AddressMatchesIPv4Range() {
+        final IpAllowList list = IpAllowList.parse(Collections.singletonList("10.0.0.0/8"));
+        assertTrue(list.matches("::ffff:10.0.0.1"));
+        assertFalse(list.matches("::ffff:11.0.0.1"));
+    }
+
+    @Test
+    public void testInvalidAddressesDoNotMatch() {
+        final IpAllowList list = IpAllowList.parse(Collections.singletonList("0.0.0.0/0"));
+        assertFalse(list.matches(null));
+        assertFalse(list.matches(""));
+        assertFalse(list.matches("localhost"));
+        assertFalse(list.matches("1.2.3.4.5"));
+        assertFalse(list.matches("256.0.0.1"));
+    }
+
+    @Test
+    public void testCoveredRangeIsNotCounted() {
+        final IpAllowList list = IpAllowList.parse(Arrays.asList("10.0.0.0/8", "10.1.0.0/16", "10.0.0.0/8"));
+        assertEquals(1, list.size());
+    }
+
+    @Test
+    public void testMultipleRanges() {
+        final IpAllowList list = IpAllowList.parse(Arrays.asList("192.0.2.0/24", "198.51.100.7", "2001:db8::/48"));
+        assertEquals(3, list.size());
+        assertTrue(list.matches("192.0.2.200"));
+        assertTrue(list.matches("198.51.100.7"));
+        assertTrue(list.matches("2001:db8:0:1::"));
+        assertFalse(list.matches("198.51.100.8"));
+        assertFalse(list.matches("2001:db8:1::"));
+    }
+
+    @Test
+    public void testMatchingPartOfString() {
+        final IpAllowList list = IpAllowList.parse(Collections.singletonList("10.0.0.0/8"));
+        final String value = "203.0.113.7, 10.0.0.2";
+        assertTrue(list.matches(value, value.indexOf(',') + 1, value.length()));
+        assertFalse(list.matches(value, 0, value.indexOf(',')));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2022 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.openfire.plugin.rest;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests that verify which entry of an X-Forwarded-For header is used as the address of a client, and that clients
+ * can not bypass the allowed IP addresses with that header.
+ */
+public class RESTServicePluginTest {
+
+    private static final IpAllowList PROXIES = IpAllowList.parse(Collections.singletonList("10.0.0.0/8"));
+
+    /**
+     * Returns the (trimmed) entry of the header that is selected, or null if none is.
+     */
+    private static String locate(String forwardedFor, String remoteAddr, IpAllowList proxies) {
+        final long location = RESTServicePlugin.locateClientAddress(forwardedFor, remoteAddr, proxies);
+        return location < 0 ? null : forwardedFor.substring((int) (location >>> 32), (int) location).trim();
+    }
+
+    @Test
+    public void testWithoutHeader() {
+        assertNull(locate(null, "10.0.0.1", PROXIES));
+        assertNull(locate(" ", "10.0.0.1", PROXIES));
+    }
+
+    @Test
+    public void testWithoutTrustedProxiesHeaderIsIgnored() {
+        assertNull(locate("203.0.113.1, 198.51.100.2", "192.0.2.1", IpAllowList.EMPTY));
+    }
+
+    @Test
+    public void testHeaderFromUntrustedPeerIsIgnored() {
+        assertNull(locate("203.0.113.1", "192.0.2.1", PROXIES));
+    }
+
+    @Test
+    public void testTrustedProxiesAreSkipped() {
+        assertEquals("203.0.113.1", locate("203.0.113.1, 10.0.0.3, 10.0.0.2", "10.0.0.1", PROXIES));
+    }
+
+    @Test
+    public void testEntriesBeforeTheFirstUntrustedAddressAreIgnored() {
+        // The client can put anything in the header; only the entry that was added by a trusted proxy counts.
+        assertEquals("198.51.100.2", locate("10.0.0.5, 198.51.100.2, 10.0.0.2", "10.0.0.1", PROXIES));
+    }
+
+    @Test
+    public void testOnlyTrustedProxiesUsesFirstEntry() {
+        assertEquals("10.0.0.3", locate("10.0.0.3, 10.0.0.2", "10.0.0.1", PROXIES));
+    }
+
+    @Test
+    public void testSingleEntry() {
+        assertEquals("203.0.113.1", locate("203.0.113.1", "10.0.0.1", PROXIES));
+    }
+
+    @Test
+    public void testSpoofedHeaderWithoutTrustedProxiesIsRejected() {
+        final IpAllowList allowed = IpAllowList.parse(Collections.singletonList("192.0.2.10"));
+        assertFalse(RESTServicePlugin.isAllowedClient(allowed, "192.0.2.10", "203.0.113.1", IpAllowList.EMPTY));
+        assertTrue(RESTServicePlugin.isAllowedClient(allowed, "203.0.113.1", "192.0.2.10", IpAllowList.EMPTY));
+    }
+
+    @Test
+    public void testSpoofedHeaderFromUntrustedPeerIsRejected() {
+        final IpAllowList allowed = IpAllowList.parse(Collections.singletonList("192.0.2.10"));
+        assertFalse(RESTServicePlugin.isAllowedClient(allowed, "192.0.2.10", "203.0.113.1", PROXIES));
+        assertFalse(RESTServicePlugin.isAllowedClient(allowed, "192.0.2.10, 10.0.0.2", "203.0.113.1", PROXIES));
+    }
+
+    @Test
+    public void testHeaderFromTrustedProxyIsAllowed() {
+        final IpAllowList allowed = IpAllowList.parse(Collections.singletonList("192.0.2.10"));
+        assertTrue(RESTServicePlugin.isAllowedClient(allowed, "192.0.2.10", "10.0.0.1", PROXIES));
+        assertFalse(RESTServicePlugin.isAllowedClient(allowed, "192.0.2.10, 203.0.113.1", "10.0.0.1", PROXIES));
+    }
+
+    @Test
+    public void testWithoutAllowListAllClientsAreAllowed() {
+        assertTrue(RESTServicePlugin.isAllowedClient(null, "192.0.2.10", "203.0.113.1", PROXIES));
+    }
+}
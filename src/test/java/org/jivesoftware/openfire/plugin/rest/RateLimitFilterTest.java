@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2022 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.openfire.plugin.rest;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests that verify the token bucket (generic cell rate algorithm) that is used by {@link RateLimitFilter}.
+ */
+public class RateLimitFilterTest {
+
+    private static final long START = 1_000_000_000L;
+
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    public void testBurstIsAllowedImmediately() {
+        final RateLimitFilter.Bucket bucket = new RateLimitFilter.Bucket(START);
+        assertEquals(0, bucket.tryConsume(10, 3, START));
+        assertEquals(0, bucket.tryConsume(10, 3, START));
+        assertEquals(0, bucket.tryConsume(10, 3, START));
+    }
+
+    @Test
+    public void testRequestExceedingBurstIsRejectedUntilTokenIsAvailable() {
+        final RateLimitFilter.Bucket bucket = new RateLimitFilter.Bucket(START);
+        for (int i = 0; i < 3; i++) {
+            bucket.tryConsume(10, 3, START);
+        }
+        assertEquals(INTERVAL, bucket.tryConsume(10, 3, START));
+        assertEquals(INTERVAL / 2, bucket.tryConsume(10, 3, START + INTERVAL / 2));
+        assertEquals(0, bucket.tryConsume(10, 3, START + INTERVAL));
+        assertTrue(bucket.tryConsume(10, 3, START + INTERVAL) > 0);
+    }
+
+    @Test
+    public void testRejectedRequestDoesNotTakeToken() {
+        final RateLimitFilter.Bucket bucket = new RateLimitFilter.Bucket(START);
+        bucket.tryConsume(10, 1, START);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryConsume(10, 1, START) > 0);
+        }
+        assertEquals(0, bucket.tryConsume(10, 1, START + INTERVAL));
+    }
+
+    @Test
+    public void testSustainedRateIsAllowed() {
+        final RateLimitFilter.Bucket bucket = new RateLimitFilter.Bucket(START);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, bucket.tryConsume(10, 1, START + i * INTERVAL));
+        }
+    }
+
+    @Test
+    public void testIdleBucketRefillsToBurstOnly() {
+        final RateLimitFilter.Bucket bucket = new RateLimitFilter.Bucket(START);
+        final long later = START + TimeUnit.HOURS.toNanos(1);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryConsume(10, 3, later));
+        }
+        assertTrue(bucket.tryConsume(10, 3, later) > 0);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2022 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.openfire.plugin.rest;
+
+import org.junit.Test;
+
+import javax.ws.rs.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit tests that verify the classification of request paths by {@link RouteClassifier}.
+ */
+public class RouteClassifierTest {
+
+    @Path("restapi/v1/users")
+    private static class UserService {}
+
+    @Path("restapi/v1/chatrooms/{roomName}/members")
+    private static class MembersService {}
+
+    @Path("restapi/v1/{parameter}")
+    private static class ParameterService {}
+
+    @Path("restapi/v1/userservice")
+    private static class LegacyService {}
+
+    private static final RouteClassifier CLASSIFIER = new RouteClassifier(Arrays.asList(UserService.class, MembersService.class, ParameterService.class, LegacyService.class));
+
+    private static void assertRoute(RouteClassifier.Access access, String group, String path) {
+        final RouteClassifier.Route route = CLASSIFIER.classify(path);
+        assertSame(access, route.getAccess());
+        assertEquals(group, route.getGroup());
+    }
+
+    @Test
+    public void testOpenApiDocumentIsPublic() {
+        assertRoute(RouteClassifier.Access.PUBLIC, "openapi", "/plugins/restapi/v1/openapi.yaml");
+    }
+
+    @Test
+    public void testOpenApiDocumentDoesNotMatchSubPaths() {
+        assertRoute(RouteClassifier.Access.PROTECTED, "other", "/plugins/restapi/v1/openapi.yaml/x");
+    }
+
+    @Test
+    public void testStatusEndpointsArePublic() {
+        assertRoute(RouteClassifier.Access.PUBLIC, "system", "/plugins/restapi/v1/system/liveness");
+        assertRoute(RouteClassifier.Access.PUBLIC, "system", "/plugins/restapi/v1/system/readiness");
+        assertRoute(RouteClassifier.Access.PUBLIC, "system", "/plugins/restapi/v1/system/readiness/server-started");
+    }
+
+    @Test
+    public void testOtherSystemEndpointsAreProtected() {
+        assertRoute(RouteClassifier.Access.PROTECTED, "other", "/plugins/restapi/v1/system");
+        assertRoute(RouteClassifier.Access.PROTECTED, "other", "/plugins/restapi/v1/system/properties");
+        assertRoute(RouteClassifier.Access.PROTECTED, "other", "/plugins/restapi/v1/system/livenessx");
+    }
+
+    @Test
+    public void testUserServiceIsLegacy() {
+        assertRoute(RouteClassifier.Access.LEGACY, "userservice", "/plugins/restapi/v1/userservice");
+        assertRoute(RouteClassifier.Access.LEGACY, "userservice", "/plugins/restapi/v1/userservice/users");
+    }
+
+    @Test
+    public void testServicesAreProtected() {
+        assertRoute(RouteClassifier.Access.PROTECTED, "users", "/plugins/restapi/v1/users");
+        assertRoute(RouteClassifier.Access.PROTECTED, "users", "/plugins/restapi/v1/users/");
+        assertRoute(RouteClassifier.Access.PROTECTED, "users", "/plugins/restapi/v1/users/john/roster");
+        assertRoute(RouteClassifier.Access.PROTECTED, "chatrooms", "/plugins/restapi/v1/chatrooms/lobby/members");
+    }
+
+    @Test
+    public void testParameterIsNotRegisteredAsGroup() {
+        assertRoute(RouteClassifier.Access.PROTECTED, "other", "/plugins/restapi/v1/{parameter}");
+    }
+
+    @Test
+    public void testUnknownPathsAreProtected() {
+        assertRoute(RouteClassifier.Access.PROTECTED, "other", "/plugins/restapi/v1/unknown");
+        assertRoute(RouteClassifier.Access.PROTECTED, "other", "/plugins/restapi/v1");
+        assertRoute(RouteClassifier.Access.PROTECTED, "other", "/plugins/other/v1/users");
+        assertRoute(RouteClassifier.Access.PROTECTED, "other", "/");
+        assertRoute(RouteClassifier.Access.PROTECTED, "other", "");
+    }
+
+    @Test
+    public void testServicesAreUnknownToDefaultClassifier() {
+        final RouteClassifier.Route route = new RouteClassifier().classify("/plugins/restapi/v1/users/john");
+        assertSame(RouteClassifier.Access.PROTECTED, route.getAccess());
+        assertEquals("other", route.getGroup());
+    }
+
+    @Test
+    public void testEndpointClass() {
+        final RouteClassifier.Route route = CLASSIFIER.classify("/plugins/restapi/v1/users/john");
+        assertEquals("users:read", route.getEndpointClass("GET"));
+        assertEquals("users:read", route.getEndpointClass("HEAD"));
+        assertEquals("users:write", route.getEndpointClass("POST"));
+        assertEquals("users:write", route.getEndpointClass("DELETE"));
+    }
+}
@@ -17,6 +17,7 @@ package org.jivesoftware.openfire.plugin.rest.service;
 
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.test.JerseyTest;
+import org.jivesoftware.openfire.plugin.rest.CollectionXmlWriter;
 import org.jivesoftware.openfire.plugin.rest.CustomJacksonMapperProvider;
 import org.jivesoftware.openfire.plugin.rest.controller.ClusteringController;
 import org.jivesoftware.openfire.plugin.rest.controller.UserServiceController;
@@ -120,7 +121,7 @@ public class ClusteringServiceBackwardCompatibilityTest extends JerseyTest {
     @Override
     protected Application configure() {
         // Configures the Jersey web application. This should mimic JerseyWrapper's implementation.
-        return new ResourceConfig(ClusteringService.class, RESTExceptionMapper.class, CustomJacksonMapperProvider.class);
+        return new ResourceConfig(ClusteringService.class, RESTExceptionMapper.class, CustomJacksonMapperProvider.class, CollectionXmlWriter.class);
     }
 
     /**
@@ -19,6 +19,7 @@ import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.test.JerseyTest;
 import org.jivesoftware.openfire.XMPPServer;
 import org.jivesoftware.openfire.container.PluginManager;
+import org.jivesoftware.openfire.plugin.rest.CollectionXmlWriter;
 import org.jivesoftware.openfire.plugin.rest.CustomJacksonMapperProvider;
 import org.jivesoftware.openfire.plugin.rest.controller.MUCRoomController;
 import org.jivesoftware.openfire.plugin.rest.exceptions.RESTExceptionMapper;
@@ -88,7 +89,7 @@ public class MUCRoomMembersServiceBackwardCompatibilityTest extends JerseyTest {
     @Override
     protected Application configure() {
         // Configures the Jersey web application. This should mimic JerseyWrapper's implementation.
-        return new ResourceConfig(MUCRoomAffiliationsService.class, RESTExceptionMapper.class, CustomJacksonMapperProvider.class);
+        return new ResourceConfig(MUCRoomAffiliationsService.class, RESTExceptionMapper.class, CustomJacksonMapperProvider.class, CollectionXmlWriter.class);
     }
 
     /**
@@ -19,6 +19,7 @@ import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.test.JerseyTest;
 import org.jivesoftware.openfire.XMPPServer;
 import org.jivesoftware.openfire.container.PluginManager;
+import org.jivesoftware.openfire.plugin.rest.CollectionXmlWriter;
 import org.jivesoftware.openfire.plugin.rest.CustomJacksonMapperProvider;
 import org.jivesoftware.openfire.plugin.rest.controller.MUCRoomController;
 import org.jivesoftware.openfire.plugin.rest.entity.MUCRoomEntities;
@@ -107,6 +108,9 @@ public class MUCRoomServiceBackwardCompatibilityTest extends JerseyTest {
         doAnswer(invocationOnMock -> entity)
             .when(controller).getChatRoom(any(), any(), nullable(Boolean.class));
 
+        doAnswer(invocationOnMock -> new MUCRoomController.TaggedChatRoom(entity, null))
+            .when(controller).getTaggedChatRoom(any(), any(), anyBoolean(), any(), any());
+
         final OccupantEntity jane = new OccupantEntity();
         jane.setJid("lobby@conference.example.org/jane");
         jane.setUserAddress("jane@example.org/converse.js-131754909");
@@ -173,7 +177,7 @@ public class MUCRoomServiceBackwardCompatibilityTest extends JerseyTest {
     @Override
     protected Application configure() {
         // Configures the Jersey web application. This should mimic JerseyWrapper's implementation.
-        return new ResourceConfig(MUCRoomService.class, RESTExceptionMapper.class, CustomJacksonMapperProvider.class);
+        return new ResourceConfig(MUCRoomService.class, RESTExceptionMapper.class, CustomJacksonMapperProvider.class, CollectionXmlWriter.class);
     }
 
     /**
@@ -17,6 +17,7 @@ package org.jivesoftware.openfire.plugin.rest.service;
 
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.test.JerseyTest;
+import org.jivesoftware.openfire.plugin.rest.CollectionXmlWriter;
 import org.jivesoftware.openfire.plugin.rest.CustomJacksonMapperProvider;
 import org.jivesoftware.openfire.plugin.rest.controller.UserServiceController;
 import org.jivesoftware.openfire.plugin.rest.entity.RosterEntities;
@@ -80,7 +81,7 @@ public class UserRosterServiceBackwardCompatibilityTest extends JerseyTest {
     @Override
     protected Application configure() {
         // Configures the Jersey web application. This should mimic JerseyWrapper's implementation.
-        return new ResourceConfig(UserRosterService.class, RESTExceptionMapper.class, CustomJacksonMapperProvider.class);
+        return new ResourceConfig(UserRosterService.class, RESTExceptionMapper.class, CustomJacksonMapperProvider.class, CollectionXmlWriter.class);
     }
 
     /**
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2022 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.openfire.plugin.rest.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests that verify the selection of (pages of) the history of a MUC room.
+ */
+public class MUCRoomUtilsTest {
+
+    /**
+     * A message in the history: its stamp (in seconds), and a name to tell messages with the same stamp apart.
+     */
+    private static final class Message {
+        private final Date stamp;
+        private final String name;
+
+        private Message(long stamp, String name) {
+            this.stamp = stamp < 0 ? null : new Date(stamp * 1000);
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /** A history in which messages c, d, e and f were sent at the same moment. */
+    private static final List<Message> HISTORY = Arrays.asList(
+        new Message(1, "a"), new Message(2, "b"), new Message(3, "c"), new Message(3, "d"),
+        new Message(3, "e"), new Message(3, "f"), new Message(4, "g"));
+
+    private static String window(List<Message> history, Long since, Long before, Integer skip, int max) {
+        final List<Message> result = MUCRoomUtils.getHistoryWindow(history.listIterator(history.size()), m -> m.stamp,
+            since == null ? null : new Date(since * 1000), before == null ? null : new Date(before * 1000), skip, max);
+        final StringBuilder names = new StringBuilder();
+        result.forEach(names::append);
+        return names.toString();
+    }
+
+    @Test
+    public void testWholeHistory() {
+        assertEquals("abcdefg", window(HISTORY, null, null, null, 0));
+    }
+
+    @Test
+    public void testMostRecentMessages() {
+        assertEquals("efg", window(HISTORY, null, null, null, 3));
+    }
+
+    @Test
+    public void testSinceIsInclusive() {
+        assertEquals("cdefg", window(HISTORY, 3L, null, null, 0));
+    }
+
+    @Test
+    public void testBeforeWithoutSkipIsExclusive() {
+        assertEquals("ab", window(HISTORY, null, 3L, null, 0));
+    }
+
+    @Test
+    public void testBeforeWithSkipIncludesRemainingMessagesWithSameStamp() {
+        assertEquals("abcd", window(HISTORY, null, 3L, 2, 0));
+        assertEquals("abcdef", window(HISTORY, null, 3L, 0, 0));
+    }
+
+    @Test
+    public void testPagesThatEndAmongMessagesWithSameStampDoNotMissMessages() {
+        // The first page ends with two of the four messages that were sent at the same moment.
+        assertEquals("efg", window(HISTORY, null, null, null, 3));
+        // Those two messages are skipped, the other two (and those before them) are returned.
+        assertEquals("bcd", window(HISTORY, null, 3L, 2, 3));
+        // The page ended with two messages with the same stamp, both of which were now received.
+        assertEquals("a", window(HISTORY, null, 2L, 1, 3));
+    }
+
+    @Test
+    public void testMessagesWithoutStampAreAlwaysIncluded() {
+        final List<Message> history = new ArrayList<>(HISTORY);
+        history.add(2, new Message(-1, "x"));
+        assertEquals("xcdefg", window(history, 3L, null, null, 0));
+        assertEquals("abx", window(history, null, 3L, null, 0));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2022 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.openfire.plugin.rest.utils;
+
+import org.jivesoftware.openfire.plugin.rest.exceptions.ExceptionType;
+import org.jivesoftware.openfire.plugin.rest.exceptions.ServiceException;
+import org.junit.Test;
+
+import javax.ws.rs.core.Response;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests that verify the parsing of the cursors that are used to page through streamed results.
+ */
+public class StreamingUtilsTest {
+
+    private static final String FORMAT = "sentDate:messageID";
+
+    private static void assertInvalid(String cursor) {
+        try {
+            StreamingUtils.parseCursor(cursor, FORMAT);
+            fail("Expected cursor '" + cursor + "' to be rejected");
+        } catch (ServiceException e) {
+            assertEquals(Response.Status.BAD_REQUEST, e.getStatus());
+            assertEquals(ExceptionType.ILLEGAL_ARGUMENT_EXCEPTION, e.getException());
+            assertEquals(cursor, e.getResource());
+        }
+    }
+
+    @Test
+    public void testMissingCursor() throws Exception {
+        assertNull(StreamingUtils.parseCursor(null, FORMAT));
+        assertNull(StreamingUtils.parseCursor("", FORMAT));
+    }
+
+    @Test
+    public void testValidCursor() throws Exception {
+        assertArrayEquals(new long[] { 1648000000000L, 456 }, StreamingUtils.parseCursor("1648000000000:456", FORMAT));
+    }
+
+    @Test
+    public void testValidCursorWithZeroes() throws Exception {
+        assertArrayEquals(new long[] { 0, 0 }, StreamingUtils.parseCursor("0:0", FORMAT));
+    }
+
+    @Test
+    public void testCursorWithoutSeparator() {
+        assertInvalid("abc");
+        assertInvalid("12");
+    }
+
+    @Test
+    public void testCursorWithMissingPart() {
+        assertInvalid(":5");
+        assertInvalid("5:");
+    }
+
+    @Test
+    public void testCursorWithInvalidNumbers() {
+        assertInvalid("1:x");
+        assertInvalid("x:1");
+        assertInvalid("1:2:3");
+        assertInvalid("99999999999999999999:1");
+    }
+}
@@ -185,6 +185,12 @@
                     <input type="text" name="secret" value="<%=(secret != null ? secret : "")%>"
                         id="text_secret">
                     <br>
+                    <input type="radio" name="authtype" value="jwt"
+                        id="jwtAuth" <%=("jwt".equals(httpAuth) ? "checked" : "")%>>
+                    <label for="jwtAuth">Bearer token auth - REST API
+                        authentication with a signed JSON Web Token (JWT) of an Openfire admin account, verified with
+                        the keys configured in the plugin.restapi.jwt.* properties.</label>
+                    <br>
                     <input type="radio" name="authtype" value="custom"
                         id="customFilterAuth" <%=("custom".equals(httpAuth) ? "checked" : "")%>>
                     <label for="secretKeyAuth">Custom authentication filter classname - REST API